@@ -0,0 +1,86 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.system.Universe;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the engines on a dense, high-entropy 512x512 soup: the
+ * per-object {@link CellEngine}, the byte-per-cell {@link ByteGridEngine}
+ * and the 64-cells-per-word {@link BitBoardEngine}. The same soup is put
+ * back on the board before every invocation, which then loads it, steps
+ * it a fixed number of generations and stores the result, so every engine
+ * does the same work on the same cells.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DenseEngineBenchmark {
+
+  /**
+   * Blocks along each side of the board (8 cells each).
+   */
+  private static final int BLOCKS = 64;
+  /**
+   * Generations stepped per invocation, few enough that the soup is still
+   * dense at the end.
+   */
+  private static final int GENERATIONS = 8;
+
+  @Param({"CellEngine", "ByteGridEngine", "BitBoardEngine"})
+  private String engineName;
+
+  private Engine engine;
+
+  private Board board;
+
+  /**
+   * The soup, one entry per cell in row-major order.
+   */
+  private boolean[] soup;
+
+  @Setup
+  public void setUp() {
+    switch (engineName) {
+      case "CellEngine":
+        engine = new CellEngine();
+        break;
+      case "ByteGridEngine":
+        engine = new ByteGridEngine();
+        break;
+      default:
+        engine = new BitBoardEngine();
+        break;
+    }
+    board = new Universe(BLOCKS, engine).getBoard();
+    soup = new boolean[board.getWidth() * board.getHeight()];
+    Random random = new Random(1);
+    for (int i = 0; i < soup.length; i++) {
+      soup[i] = random.nextBoolean();
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    for (int i = 0; i < soup.length; i++) {
+      board.getResident(i).setAlive(soup[i]);
+    }
+  }
+
+  @Benchmark
+  public boolean run() {
+    engine.load(board);
+    boolean changed = engine.step(GENERATIONS);
+    engine.store(board);
+    return changed;
+  }
+}
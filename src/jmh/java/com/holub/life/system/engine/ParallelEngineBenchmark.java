@@ -0,0 +1,80 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.system.Universe;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * How {@link ParallelEngine} scales with the number of threads, stepping a
+ * 512x512 random soup. The 1-thread case is the baseline for the serial
+ * {@link CellEngine}. As in {@link DenseEngineBenchmark}, the same soup is
+ * put back before every invocation, so every thread count steps the same
+ * generations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParallelEngineBenchmark {
+
+  /**
+   * Blocks along each side of the board (8 cells each).
+   */
+  private static final int BLOCKS = 64;
+  /**
+   * Generations stepped per invocation.
+   */
+  private static final int GENERATIONS = 8;
+
+  @Param({"1", "2", "4", "8", "16"})
+  private int threads;
+
+  private ParallelEngine engine;
+
+  private Board board;
+
+  /**
+   * The soup, one entry per cell in row-major order.
+   */
+  private boolean[] soup;
+
+  @Setup
+  public void setUp() {
+    engine = new ParallelEngine(threads);
+    board = new Universe(BLOCKS, engine).getBoard();
+    soup = new boolean[board.getWidth() * board.getHeight()];
+    Random random = new Random(1);
+    for (int i = 0; i < soup.length; i++) {
+      soup[i] = random.nextInt(3) == 0;
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    for (int i = 0; i < soup.length; i++) {
+      board.getResident(i).setAlive(soup[i]);
+    }
+  }
+
+  @Benchmark
+  public boolean run() {
+    engine.load(board);
+    boolean changed = engine.step(GENERATIONS);
+    engine.store(board);
+    return changed;
+  }
+
+  @TearDown
+  public void tearDown() {
+    engine.close();
+  }
+}
@@ -1,6 +1,7 @@
 package com.holub.life;
 
 import com.holub.life.system.Universe;
+import com.holub.life.system.engine.AdaptiveEngine;
 import com.holub.life.ui.UniversePanel;
 import javax.swing.JFrame;
 
@@ -16,7 +17,7 @@ public final class Life extends JFrame {
   private Life() {
     super("The Game of Life. "
         + "(c)2003 Allen I. Holub <https://www.holub.com>");
-    Universe universe = new Universe();
+    Universe universe = new Universe(new AdaptiveEngine());
     UniversePanel universePanel = new UniversePanel(universe);
     setDefaultCloseOperation(EXIT_ON_CLOSE);
     universePanel.setFrame(this);
@@ -0,0 +1,52 @@
+package com.holub.life.model;
+
+/**
+ * What lies past the edge of a finite board. Engines don't test for the
+ * edge while stepping; they resolve the neighbors of edge cells once, when
+ * the board is wired or loaded, with {@link #wrap}.
+ */
+
+public enum Boundary {
+
+  /**
+   * Every cell past the edge is dead.
+   */
+  DEAD,
+  /**
+   * The board wraps around: the left edge touches the right edge and the
+   * top touches the bottom, so gliders fly around forever.
+   */
+  TORUS,
+  /**
+   * The board is reflected at its edges: the cell just past an edge is
+   * the edge cell itself.
+   */
+  MIRROR,
+  /**
+   * There is no edge: the board is a window onto an unbounded plane, and
+   * cells that leave it keep evolving out of sight. Only engines that keep
+   * cells off the board can run an open board; to the board's own wiring
+   * the cells past its edge look dead.
+   */
+  OPEN;
+
+  /**
+   * @param coordinate a row or column, at most one cell off the board.
+   * @param size number of rows or columns.
+   * @return the row or column on the board that stands in for
+   * <code>coordinate</code>, or -1 if it's dead.
+   */
+  public int wrap(final int coordinate, final int size) {
+    if (coordinate >= 0 && coordinate < size) {
+      return coordinate;
+    }
+    switch (this) {
+      case TORUS:
+        return coordinate < 0 ? size - 1 : 0;
+      case MIRROR:
+        return coordinate < 0 ? 0 : size - 1;
+      default:
+        return -1;
+    }
+  }
+}
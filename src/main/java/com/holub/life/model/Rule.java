@@ -0,0 +1,186 @@
+package com.holub.life.model;
+
+/**
+ * A life-like rule: the numbers of live neighbors for which a dead cell is
+ * born and for which a live cell survives. Rules are written as rulestrings
+ * such as <code>B3/S23</code> (Conway), <code>B36/S23</code> (HighLife),
+ * <code>B3678/S34678</code> (Day &amp; Night) or <code>B2/S</code> (Seeds).
+ * The older survival/birth form, <code>23/3</code>, is accepted too.
+ * <p>
+ * A rule is compiled into {@link #getBirths()} and {@link #getSurvivals()}
+ * masks (bit n is set if n neighbors give a live cell) and into a table
+ * indexed by state and neighbor count, so evaluating it never branches on
+ * the rule itself.
+ */
+
+public final class Rule {
+
+  /**
+   * Most neighbors a cell can have.
+   */
+  public static final int MAX_NEIGHBORS = 8;
+  /**
+   *
+   */
+  private static final int ALL_COUNTS = (1 << (MAX_NEIGHBORS + 1)) - 1;
+  /**
+   * Born with 3 neighbors, survives with 2 or 3.
+   */
+  public static final Rule CONWAY = parse("B3/S23");
+  /**
+   *
+   */
+  private final int births;
+  /**
+   *
+   */
+  private final int survivals;
+  /**
+   * Next state, indexed by (alive ? MAX_NEIGHBORS + 1 : 0) + neighbors.
+   */
+  private final boolean[] table = new boolean[2 * (MAX_NEIGHBORS + 1)];
+  /**
+   * True for B3/S23, which some engines have a faster formula for.
+   */
+  private final boolean conway;
+
+  /**
+   * @param b bit n is set if a dead cell with n live neighbors is born.
+   * @param s bit n is set if a live cell with n live neighbors survives.
+   */
+  public Rule(final int b, final int s) {
+    if ((b & ~ALL_COUNTS) != 0 || (s & ~ALL_COUNTS) != 0) {
+      throw new IllegalArgumentException("neighbor counts must be 0-8");
+    }
+    this.births = b;
+    this.survivals = s;
+    this.conway = b == 1 << 3 && s == (1 << 2 | 1 << 3);
+    for (int n = 0; n <= MAX_NEIGHBORS; ++n) {
+      table[n] = ((births >>> n) & 1) != 0;
+      table[MAX_NEIGHBORS + 1 + n] = ((survivals >>> n) & 1) != 0;
+    }
+  }
+
+  /**
+   * @param rulestring <code>B&lt;digits&gt;/S&lt;digits&gt;</code> (in
+   * either order, in either case) or <code>&lt;survival&gt;/&lt;birth&gt;
+   * </code>.
+   * @return the rule.
+   * @throws IllegalArgumentException if the rulestring can't be parsed.
+   */
+  public static Rule parse(final String rulestring) {
+    String[] parts = rulestring.trim().split("/", -1);
+    if (parts.length != 2) {
+      throw new IllegalArgumentException(
+          "Expected a rule like B3/S23: " + rulestring);
+    }
+
+    String first = parts[0].trim().toUpperCase();
+    String second = parts[1].trim().toUpperCase();
+    if (first.startsWith("B") && second.startsWith("S")) {
+      return new Rule(counts(first.substring(1), rulestring),
+          counts(second.substring(1), rulestring));
+    }
+    if (first.startsWith("S") && second.startsWith("B")) {
+      return new Rule(counts(second.substring(1), rulestring),
+          counts(first.substring(1), rulestring));
+    }
+    // Survival/birth form: "23/3".
+    return new Rule(counts(second, rulestring), counts(first, rulestring));
+  }
+
+  /**
+   * @param digits
+   * @param rulestring for the error message.
+   * @return a mask with bit n set for every digit n.
+   */
+  private static int counts(final String digits, final String rulestring) {
+    int mask = 0;
+    for (char c : digits.toCharArray()) {
+      if (c < '0' || c > '0' + MAX_NEIGHBORS) {
+        throw new IllegalArgumentException(
+            "Expected a rule like B3/S23: " + rulestring);
+      }
+      mask |= 1 << (c - '0');
+    }
+    return mask;
+  }
+
+  /**
+   * @param alive current state of the cell.
+   * @param neighbors number of live neighbors.
+   * @return true if the cell is alive in the next generation.
+   */
+  public boolean next(final boolean alive, final int neighbors) {
+    return table[(alive ? MAX_NEIGHBORS + 1 : 0) + neighbors];
+  }
+
+  /**
+   * @return bit n is set if a dead cell with n live neighbors is born.
+   */
+  public int getBirths() {
+    return births;
+  }
+
+  /**
+   * @return bit n is set if a live cell with n live neighbors survives.
+   */
+  public int getSurvivals() {
+    return survivals;
+  }
+
+  /**
+   * @return true if this is Conway's rule, B3/S23.
+   */
+  public boolean isConway() {
+    return conway;
+  }
+
+  /**
+   * A rule that gives birth to cells with no live neighbors fills all of an
+   * unbounded universe in one generation.
+   *
+   * @return true if dead cells with no live neighbors are born.
+   */
+  public boolean isBirthOnZero() {
+    return (births & 1) != 0;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof Rule)) {
+      return false;
+    }
+    Rule other = (Rule) o;
+    return births == other.births && survivals == other.survivals;
+  }
+
+  @Override
+  public int hashCode() {
+    return births << Integer.SIZE / 2 | survivals;
+  }
+
+  /**
+   * @return the rule in B/S notation.
+   */
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder("B");
+    appendCounts(b, births);
+    b.append("/S");
+    appendCounts(b, survivals);
+    return b.toString();
+  }
+
+  /**
+   * @param b
+   * @param mask
+   */
+  private static void appendCounts(final StringBuilder b, final int mask) {
+    for (int n = 0; n <= MAX_NEIGHBORS; ++n) {
+      if (((mask >>> n) & 1) != 0) {
+        b.append(n);
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.holub.life.model;
+
+/**
+ * Word-parallel (SWAR) evaluation of the rule. Every argument is a plane of
+ * 64 cells; bit i of each neighbor plane holds the corresponding neighbor of
+ * the cell in bit i of <code>center</code>. How cells are laid out in a word
+ * is up to the caller (a row segment, or an 8x8 block as in
+ * {@link #nextBlock}), as long as the planes are lined up.
+ * <p>
+ * Conway's rule has a hand-reduced formula. Any other rule is evaluated by
+ * matching the count against each of the nine possible values under masks
+ * built from the rule, so there's still no branching per cell.
+ */
+
+public final class Swar {
+
+  /**
+   * Width and height of a block, in cells.
+   */
+  public static final int BLOCK_SIZE = 8;
+  /**
+   *
+   */
+  private static final int LAST = BLOCK_SIZE - 1;
+  /**
+   *
+   */
+  private static final long FIRST_COLUMN = 0x0101010101010101L;
+  /**
+   *
+   */
+  private static final long LAST_COLUMN = 0x8080808080808080L;
+
+  /**
+   * Static helpers only.
+   */
+  private Swar() {
+  }
+
+  /**
+   * @param rule
+   * @return the next state of the 64 cells in <code>center</code>.
+   */
+  public static long next(final Rule rule, final long center,
+      final long northWest, final long north, final long northEast,
+      final long west, final long east,
+      final long southWest, final long south, final long southEast) {
+    // Add the eight one-bit neighbors in every bit position in parallel with
+    // a tree of full adders, giving a four-bit count (bit0..bit3).
+    long northOnes = northWest ^ north ^ northEast;
+    long northTwos = (northWest & north)
+        | (northEast & (northWest ^ north));
+    long middleOnes = west ^ east;
+    long middleTwos = west & east;
+    long southOnes = southWest ^ south ^ southEast;
+    long southTwos = (southWest & south)
+        | (southEast & (southWest ^ south));
+
+    long bit0 = northOnes ^ middleOnes ^ southOnes;
+    long carry = (northOnes & middleOnes)
+        | (southOnes & (northOnes ^ middleOnes));
+
+    long twos = northTwos ^ middleTwos ^ southTwos;
+    long fours = (northTwos & middleTwos)
+        | (southTwos & (northTwos ^ middleTwos));
+    long bit1 = twos ^ carry;
+    long moreFours = twos & carry;
+    long bit2 = fours ^ moreFours;
+    long bit3 = fours & moreFours;
+
+    if (rule.isConway()) {
+      // Born with exactly 3 neighbors, survives with 2 or 3.
+      return ~bit3 & ~bit2 & bit1 & (bit0 | center);
+    }
+    return apply(rule, center, bit0, bit1, bit2, bit3);
+  }
+
+  /**
+   * Compute the next state of an 8x8 block of cells packed into one word:
+   * bit <code>y * 8 + x</code> is the cell at (x, y) within the block. The
+   * other arguments are the adjacent blocks, in the same layout (0 for a
+   * block that's all dead or missing).
+   *
+   * @param rule
+   * @return the next generation of <code>center</code>.
+   */
+  public static long nextBlock(final Rule rule, final long center,
+      final long nw, final long n, final long ne,
+      final long w, final long e,
+      final long sw, final long s, final long se) {
+    // Shift whole rows to line up the row above (or below) with every cell,
+    // borrowing the missing row from the adjacent block.
+    int rowShift = LAST * BLOCK_SIZE;
+    long north = (center << BLOCK_SIZE) | (n >>> rowShift);
+    long south = (center >>> BLOCK_SIZE) | (s << rowShift);
+    long westNorth = (w << BLOCK_SIZE) | (nw >>> rowShift);
+    long westSouth = (w >>> BLOCK_SIZE) | (sw << rowShift);
+    long eastNorth = (e << BLOCK_SIZE) | (ne >>> rowShift);
+    long eastSouth = (e >>> BLOCK_SIZE) | (se << rowShift);
+
+    return next(rule, center,
+        shiftWest(north, westNorth), north, shiftEast(north, eastNorth),
+        shiftWest(center, w), shiftEast(center, e),
+        shiftWest(south, westSouth), south, shiftEast(south, eastSouth));
+  }
+
+  /**
+   * @param plane
+   * @param westPlane the same plane of the block to the west.
+   * @return plane with every cell's west neighbor moved into its position.
+   */
+  private static long shiftWest(final long plane, final long westPlane) {
+    return ((plane << 1) & ~FIRST_COLUMN)
+        | ((westPlane >>> LAST) & FIRST_COLUMN);
+  }
+
+  /**
+   * @param plane
+   * @param eastPlane the same plane of the block to the east.
+   * @return plane with every cell's east neighbor moved into its position.
+   */
+  private static long shiftEast(final long plane, final long eastPlane) {
+    return ((plane >>> 1) & ~LAST_COLUMN)
+        | ((eastPlane << LAST) & LAST_COLUMN);
+  }
+
+  /**
+   * Kept out of {@link #next} so that the Conway case stays small enough to
+   * be inlined into the callers' loops.
+   *
+   * @param rule
+   * @param center
+   * @return the next state of the 64 cells in <code>center</code>, whose
+   * neighbor counts are given bit by bit.
+   */
+  private static long apply(final Rule rule, final long center,
+      final long bit0, final long bit1, final long bit2, final long bit3) {
+    int births = rule.getBirths();
+    int survivals = rule.getSurvivals();
+    long born = 0L;
+    long survive = 0L;
+    for (int count = 0; count <= Rule.MAX_NEIGHBORS; ++count) {
+      // All ones where the four count bits equal those of count.
+      long matches = ~(bit0 ^ -(count & 1L))
+          & ~(bit1 ^ -((count >>> 1) & 1L))
+          & ~(bit2 ^ -((count >>> 2) & 1L))
+          & ~(bit3 ^ -((count >>> 3) & 1L));
+      born |= matches & -((births >>> count) & 1L);
+      survive |= matches & -((survivals >>> count) & 1L);
+    }
+    return (center & survive) | (~center & born);
+  }
+}
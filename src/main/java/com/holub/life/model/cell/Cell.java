@@ -3,6 +3,7 @@ package com.holub.life.model.cell;
 import com.holub.tools.Storable;
 import com.holub.life.model.Point;
 import com.holub.tools.Observable;
+import java.util.List;
 
 /***
  * This interface is the basic unit that comprises a life board.
@@ -116,6 +117,21 @@ public interface Cell extends Observable {
      * @return does cell exist on the location.
      */
     boolean isAlive(Point location);
+
+    /**
+     * @return the location of every cell marked as alive.
+     */
+    List<Point> getLiveCells();
+
+    /**
+     * @param corner upper-left cell of a square.
+     * @param width width of the square in cells.
+     * @return false if no cell in the square is alive; true if some may
+     * be.
+     */
+    default boolean overlaps(final Point corner, final int width) {
+      return true;
+    }
   }
 
 }
@@ -2,6 +2,8 @@ package com.holub.life.model.cell;
 
 import com.holub.asynch.ConditionVariable;
 import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
+import com.holub.life.model.Swar;
 import com.holub.tools.Observer;
 import com.holub.tools.Storable;
 import java.io.IOException;
@@ -9,8 +11,11 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.Setter;
@@ -27,6 +32,43 @@ import lombok.Setter;
  * the active edges in transistion() rather then figureNextState().
  * The original call is commented out and the new line is marked
  * with "(1)"
+ *
+ * <h3>Packed neighborhoods</h3>
+ * A neighborhood created by {@link #createPacked()} doesn't hold
+ * {@link Resident} objects at all. It's always 8x8, and it keeps the
+ * current and next state of its 64 cells as the bits of two
+ * <code>long</code>s (bit <code>row * 8 + column</code>). Whenever the
+ * Cell API asks for a resident (through {@link #getGrid()} or
+ * {@link #edge}), a transient view of the bit is handed out instead. A
+ * packed block steps all its cells at once. It reads the cells around its
+ * border from the eight adjacent blocks, which the board wires up once with
+ * {@link #setAdjacent}.
+ *
+ * <h3>Active edges</h3>
+ * Every neighborhood records which of its four edges and four corners
+ * changed in the last transition. A neighborhood that didn't change, and
+ * whose adjacent neighborhoods didn't change the edge or corner that faces
+ * it, can't change in the next generation either, so it skips both
+ * figureNextState() and transition() without looking at its cells. Cells
+ * changed from outside (other than through {@link #transfer} or
+ * {@link #clear}) must be reported with {@link #markChanged}.
+ *
+ * <h3>Live box</h3>
+ * Every neighborhood also knows the smallest rectangle of its subcells
+ * that holds all its live cells. It's worked out again whenever the
+ * neighborhood transitions or is marked changed, from the subcells' own
+ * boxes, so it costs no more than the transition itself. Stepping looks
+ * only at the box and a subcell around it (see {@link #stepRange}), and
+ * saving, clearing and drawing only inside it, so a small pattern on a
+ * big board is cheap no matter how big the board is.
+ *
+ * <h3>Captures</h3>
+ * Every neighborhood keeps the last {@link Snapshot} taken of it, and
+ * knows whether any of its cells changed since. A neighborhood whose cells
+ * didn't change hands the same snapshot out again without looking at
+ * them, so a snapshot (and the memento made from it by
+ * {@link #createMemento}) costs time in proportion to the blocks that
+ * changed, not to the size of the board or the number of live cells.
  */
 
 public final class Neighborhood implements Cell {
@@ -49,9 +91,66 @@ public final class Neighborhood implements Cell {
    */
   private static int nestingLevel = -1;
   /**
-   * The actual grid of Cells contained within this neighborhood.
+   * Adjacent blocks of a packed neighborhood that hasn't been wired.
+   */
+  private static final Neighborhood[] NO_ADJACENT = new Neighborhood[0];
+  /**
+   * Edge and corner bits, one per direction in the order of
+   * {@link #adjacent}.
+   */
+  private static final int NORTH_WEST = 1;
+  /**
+   *
+   */
+  private static final int NORTH = 1 << 1;
+  /**
+   *
+   */
+  private static final int NORTH_EAST = 1 << 2;
+  /**
+   *
+   */
+  private static final int WEST = 1 << 3;
+  /**
+   *
+   */
+  private static final int EAST = 1 << 4;
+  /**
+   *
+   */
+  private static final int SOUTH_WEST = 1 << 5;
+  /**
+   *
+   */
+  private static final int SOUTH = 1 << 6;
+  /**
+   *
+   */
+  private static final int SOUTH_EAST = 1 << 7;
+  /**
+   *
+   */
+  private static final int ALL_EDGES = 0xFF;
+  /**
+   * Packed only: the bits of each edge of a block.
+   */
+  private static final long FIRST_ROW = 0xFFL;
+  /**
+   *
+   */
+  private static final long LAST_ROW = 0xFF00000000000000L;
+  /**
+   *
+   */
+  private static final long FIRST_COLUMN = 0x0101010101010101L;
+  /**
+   *
+   */
+  private static final long LAST_COLUMN = 0x8080808080808080L;
+  /**
+   * The actual grid of Cells contained within this neighborhood. Null if the
+   * neighborhood is packed.
    */
-  @Getter
   private final Cell[][] grid;
   /**
    * The neighborhood is square, so gridSize is both the horizontal and
@@ -77,6 +176,89 @@ public final class Neighborhood implements Cell {
   @Getter
   @Setter
   private boolean oneLastRefreshRequired = false;
+  /**
+   * The edges and corners (see {@link #NORTH_WEST} and friends) that
+   * changed in the last transition. A new neighborhood counts as changed
+   * everywhere, so that it's figured at least once.
+   */
+  @Getter
+  private int changedEdges = ALL_EDGES;
+  /**
+   * Packed only: the current state of the cells.
+   */
+  @Getter
+  private long cells;
+  /**
+   * Packed only: the state of the cells after the next transition.
+   */
+  @Getter
+  @Setter
+  private long nextCells;
+  /**
+   * The adjacent neighborhoods of the same size, in row-major order around
+   * this one (northwest, north, northeast, west, east, southwest, south,
+   * southeast). A null entry is past the edge of the board. A neighborhood
+   * that hasn't been wired is never skipped.
+   */
+  private Neighborhood[] adjacent = NO_ADJACENT;
+  /**
+   * The live box: rows liveTop to liveBottom and columns liveLeft to
+   * liveRight of the grid hold every live subcell. Empty if liveBottom is
+   * less than liveTop. Not packed only; a packed neighborhood works it out
+   * from its bits.
+   */
+  private int liveTop;
+  /**
+   *
+   */
+  private int liveLeft;
+  /**
+   *
+   */
+  private int liveBottom = -1;
+  /**
+   *
+   */
+  private int liveRight = -1;
+  /**
+   * False if the subcells may have changed since the live box was worked
+   * out.
+   */
+  private boolean liveBoxKnown = false;
+  /**
+   * The neighborhood this one is a subcell of, or null if it's the
+   * outermost one. Cells set directly, rather than by a transition, are
+   * reported up through it (see {@link #cellsEdited}).
+   */
+  private Neighborhood parent;
+  /**
+   * The last snapshot taken of this neighborhood, null if it was empty.
+   */
+  private Snapshot captured;
+  /**
+   * False if no cell changed since {@link #captured} was taken.
+   */
+  private boolean dirty = true;
+  /**
+   * Number of times the snapshot was worked out again, rather than handed
+   * out as it was because no cell changed.
+   */
+  @Getter
+  private int recapturedCount;
+  /**
+   * The {@link #stepRange} the subcells were figured over, or null if they
+   * weren't figured by figureNextState() (an engine set their next states
+   * some other way), so that transition() visits the same subcells.
+   */
+  private int[] figuredRange;
+  /**
+   * The rule the cells live by. A packed neighborhood steps its cells by
+   * it; the others only need to know whether it gives birth to cells with
+   * no live neighbors (see {@link #stepRange}).
+   */
+  @Getter
+  @Setter
+  private Rule rule = Rule.CONWAY;
 
   /**
    * Create a new Neighborhood containing gridSize-by-gridSize clones of the
@@ -95,8 +277,473 @@ public final class Neighborhood implements Cell {
     for (int row = 0; row < gridSize; ++row) {
       for (int column = 0; column < gridSize; ++column) {
         grid[row][column] = prototype.create();
+        adopt(grid[row][column]);
+      }
+    }
+  }
+
+  /**
+   * @param subcell a cell just put in the grid.
+   */
+  private void adopt(final Cell subcell) {
+    if (subcell instanceof Neighborhood) {
+      ((Neighborhood) subcell).parent = this;
+    } else if (subcell instanceof Resident) {
+      ((Resident) subcell).setOwner(this);
+    }
+  }
+
+  /**
+   * @param center
+   * @return a new 3x3 neighborhood with center in the middle, surrounded by
+   * empty copies of it.
+   */
+  public static Neighborhood surround(final Neighborhood center) {
+    Neighborhood surrounding = new Neighborhood(3, center);
+    surrounding.grid[1][1] = center;
+    surrounding.adopt(center);
+    return surrounding;
+  }
+
+  /**
+   * Take this neighborhood out of the one it's a subcell of, so that it can
+   * be the outermost one.
+   */
+  public void detach() {
+    parent = null;
+  }
+
+  /**
+   * Create a packed 8x8 block.
+   */
+  private Neighborhood() {
+    this.gridSize = Swar.BLOCK_SIZE;
+    this.grid = null;
+    this.observers = new LinkedList<>();
+  }
+
+  /**
+   * @return a new, empty, packed 8x8 neighborhood.
+   */
+  public static Neighborhood createPacked() {
+    return new Neighborhood();
+  }
+
+  /**
+   * @return true if this neighborhood keeps its cells as bits rather than
+   * as Resident objects.
+   */
+  public boolean isPacked() {
+    return grid == null;
+  }
+
+  /**
+   * The subcells. A packed neighborhood returns a freshly made grid of views
+   * onto its bits.
+   *
+   * @return the grid of subcells.
+   */
+  public Cell[][] getGrid() {
+    if (!isPacked()) {
+      return grid;
+    }
+    Cell[][] views = new Cell[gridSize][gridSize];
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        views[row][column] = getResident(row, column);
+      }
+    }
+    return views;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param row
+   * @param column
+   * @return a view of the cell at (column, row).
+   */
+  public Resident getResident(final int row, final int column) {
+    return new Resident(this, row * gridSize + column);
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param bit row * 8 + column.
+   * @return the current state of the cell.
+   */
+  public boolean isAlive(final int bit) {
+    return (cells & (1L << bit)) != 0;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param bit row * 8 + column.
+   * @param alive
+   */
+  public void setAlive(final int bit, final boolean alive) {
+    long was = cells;
+    cells = alive ? cells | (1L << bit) : cells & ~(1L << bit);
+    if (cells != was) {
+      cellsEdited();
+    }
+  }
+
+  /**
+   * Report that cells of this neighborhood were set directly, rather than
+   * by a transition, so that it and every neighborhood it's inside work out
+   * their live boxes and snapshots again.
+   */
+  void cellsEdited() {
+    for (Neighborhood n = this; n != null; n = n.parent) {
+      n.liveBoxKnown = false;
+      n.dirty = true;
+    }
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param bit row * 8 + column.
+   * @return the state of the cell after the next transition.
+   */
+  public boolean isWillBeAlive(final int bit) {
+    return (nextCells & (1L << bit)) != 0;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param bit row * 8 + column.
+   * @param willBeAlive
+   */
+  public void setWillBeAlive(final int bit, final boolean willBeAlive) {
+    nextCells = willBeAlive
+        ? nextCells | (1L << bit) : nextCells & ~(1L << bit);
+  }
+
+  /**
+   * @param a the eight adjacent neighborhoods (see {@link #adjacent}).
+   */
+  public void setAdjacent(final Neighborhood[] a) {
+    this.adjacent = a;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param direction 0-7, in the order of {@link #setAdjacent}.
+   * @return the cells of the adjacent block; 0 past the edge of the board.
+   */
+  public long getAdjacentCells(final int direction) {
+    if (direction >= adjacent.length || adjacent[direction] == null) {
+      return 0L;
+    }
+    return adjacent[direction].cells;
+  }
+
+  /**
+   * @return true if neither this neighborhood nor the edges of the adjacent
+   * neighborhoods that face it changed in the last transition, so that
+   * this neighborhood won't change in the next one.
+   */
+  public boolean isQuiescent() {
+    if (amActive || changedEdges != 0 || adjacent == NO_ADJACENT) {
+      return false;
+    }
+    for (int direction = 0; direction < adjacent.length; ++direction) {
+      // The edge that faces this neighborhood is in the opposite direction.
+      int facing = 1 << (adjacent.length - 1 - direction);
+      if (adjacent[direction] != null
+          && (adjacent[direction].changedEdges & facing) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Report that cells of this neighborhood were changed from outside, so
+   * that it and its neighbors are figured on the next generation.
+   */
+  public void markChanged() {
+    changedEdges = ALL_EDGES;
+    liveBoxKnown = false;
+    dirty = true;
+  }
+
+  /**
+   * Report that subcells changed state without a transition, so that the
+   * live box is worked out again when it's next needed.
+   */
+  public void forgetLiveBox() {
+    liveBoxKnown = false;
+    dirty = true;
+  }
+
+  /**
+   * Work out the live boxes of this neighborhood and of every neighborhood
+   * inside it, unless they're known. Neighborhoods figured at the same time
+   * look at each other's live boxes (see {@link #stepRange}), so they must
+   * be worked out beforehand, while nothing else runs: figuring then only
+   * reads them.
+   */
+  public void findLiveBoxes() {
+    if (isPacked()) {
+      return;
+    }
+    for (Cell[] row : grid) {
+      for (Cell subcell : row) {
+        if (subcell instanceof Neighborhood) {
+          ((Neighborhood) subcell).findLiveBoxes();
+        }
+      }
+    }
+    findLiveBox();
+  }
+
+  /**
+   * Work the live box out, unless it's known.
+   */
+  private void findLiveBox() {
+    if (isPacked()) {
+      if (cells == 0L) {
+        liveTop = 0;
+        liveBottom = -1;
+        return;
+      }
+      long columns = cells;
+      columns |= columns >>> (Long.SIZE / 2);
+      columns |= columns >>> (Long.SIZE / 4);
+      columns |= columns >>> (Long.SIZE / 8);
+      liveTop = Long.numberOfTrailingZeros(cells) / gridSize;
+      liveBottom = (Long.SIZE - 1 - Long.numberOfLeadingZeros(cells))
+          / gridSize;
+      liveLeft = Long.numberOfTrailingZeros(columns & FIRST_ROW);
+      liveRight = Long.SIZE - 1
+          - Long.numberOfLeadingZeros(columns & FIRST_ROW);
+      return;
+    }
+    if (liveBoxKnown) {
+      return;
+    }
+    liveTop = gridSize;
+    liveLeft = gridSize;
+    liveBottom = -1;
+    liveRight = -1;
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        if (grid[row][column].isAlive()) {
+          liveTop = Math.min(liveTop, row);
+          liveLeft = Math.min(liveLeft, column);
+          liveBottom = Math.max(liveBottom, row);
+          liveRight = Math.max(liveRight, column);
+        }
+      }
+    }
+    liveBoxKnown = true;
+  }
+
+  /**
+   * Not packed only.
+   *
+   * @return the subcells that can change in the next generation, as {top
+   * row, left column, bottom row, right column}, inclusive: the live box
+   * and a subcell all around it, widened to the edges and corners that
+   * face adjacent neighborhoods with live cells. Under a rule that gives
+   * birth with no live neighbors, or if the neighborhood isn't wired, any
+   * subcell can change.
+   */
+  int[] stepRange() {
+    int last = gridSize - 1;
+    if (rule.isBirthOnZero() || adjacent == NO_ADJACENT) {
+      return new int[] {0, 0, last, last};
+    }
+    findLiveBox();
+    int[] range = {gridSize, gridSize, -1, -1};
+    if (liveTop <= liveBottom) {
+      include(range, liveTop - 1, liveLeft - 1, liveBottom + 1,
+          liveRight + 1);
+    }
+    for (int direction = 0; direction < adjacent.length; ++direction) {
+      if (adjacent[direction] == null || adjacent[direction].isEmpty()) {
+        continue;
+      }
+      // Skip the center of the 3x3 block of directions.
+      int position = direction < 4 ? direction : direction + 1;
+      int dy = position / 3 - 1;
+      int dx = position % 3 - 1;
+      include(range, dy > 0 ? last : 0, dx > 0 ? last : 0,
+          dy < 0 ? 0 : last, dx < 0 ? 0 : last);
+    }
+    range[0] = Math.max(range[0], 0);
+    range[1] = Math.max(range[1], 0);
+    range[2] = Math.min(range[2], last);
+    range[3] = Math.min(range[3], last);
+    return range;
+  }
+
+  /**
+   * Widen a range of subcells to take in another.
+   *
+   * @param range {top, left, bottom, right}.
+   * @param top
+   * @param left
+   * @param bottom
+   * @param right
+   */
+  private static void include(final int[] range, final int top,
+      final int left, final int bottom, final int right) {
+    range[0] = Math.min(range[0], top);
+    range[1] = Math.min(range[1], left);
+    range[2] = Math.max(range[2], bottom);
+    range[3] = Math.max(range[3], right);
+  }
+
+  /**
+   * @return true if no cell in this neighborhood is alive.
+   */
+  public boolean isEmpty() {
+    if (isPacked()) {
+      // Without writing the live box, which another thread may be reading.
+      return cells == 0L;
+    }
+    findLiveBox();
+    return liveBottom < liveTop;
+  }
+
+  /**
+   * Widen a rectangle to take in every live cell of this neighborhood.
+   * Only the subcells on the edges of the live box are looked into, since
+   * the ones inside it can't widen it any further.
+   *
+   * @param x column of the upper-left cell of this neighborhood.
+   * @param y row of the upper-left cell of this neighborhood.
+   * @param bounds {left, top, right, bottom} in cells, inclusive.
+   */
+  public void includeLiveCells(final int x, final int y,
+      final int[] bounds) {
+    if (isEmpty()) {
+      return;
+    }
+    if (isPacked()) {
+      findLiveBox();
+      bounds[0] = Math.min(bounds[0], x + liveLeft);
+      bounds[1] = Math.min(bounds[1], y + liveTop);
+      bounds[2] = Math.max(bounds[2], x + liveRight);
+      bounds[3] = Math.max(bounds[3], y + liveBottom);
+      return;
+    }
+    int subcellWidth = grid[0][0].widthInCells();
+    for (int row = liveTop; row <= liveBottom; ++row) {
+      boolean edgeRow = row == liveTop || row == liveBottom;
+      for (int column = liveLeft; column <= liveRight; ++column) {
+        if (!edgeRow && column != liveLeft && column != liveRight) {
+          continue;
+        }
+        Cell subcell = grid[row][column];
+        int subcellX = x + column * subcellWidth;
+        int subcellY = y + row * subcellWidth;
+        if (subcell instanceof Neighborhood) {
+          ((Neighborhood) subcell).includeLiveCells(subcellX, subcellY,
+              bounds);
+        } else if (subcell.isAlive()) {
+          bounds[0] = Math.min(bounds[0], subcellX);
+          bounds[1] = Math.min(bounds[1], subcellY);
+          bounds[2] = Math.max(bounds[2], subcellX + subcellWidth - 1);
+          bounds[3] = Math.max(bounds[3], subcellY + subcellWidth - 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param row
+   * @param column
+   * @param size
+   * @return the edges and corners of a size-by-size grid that the given
+   * position lies on.
+   */
+  private static int edgesAt(final int row, final int column,
+      final int size) {
+    boolean north = row == 0;
+    boolean south = row == size - 1;
+    boolean west = column == 0;
+    boolean east = column == size - 1;
+    int edges = 0;
+    edges |= north ? NORTH : 0;
+    edges |= south ? SOUTH : 0;
+    edges |= west ? WEST : 0;
+    edges |= east ? EAST : 0;
+    edges |= north && west ? NORTH_WEST : 0;
+    edges |= north && east ? NORTH_EAST : 0;
+    edges |= south && west ? SOUTH_WEST : 0;
+    edges |= south && east ? SOUTH_EAST : 0;
+    return edges;
+  }
+
+  /**
+   * @param changed the cells of a packed block that changed.
+   * @return the edges and corners they lie on.
+   */
+  private static int packedEdges(final long changed) {
+    int edges = 0;
+    edges |= (changed & FIRST_ROW) != 0 ? NORTH : 0;
+    edges |= (changed & LAST_ROW) != 0 ? SOUTH : 0;
+    edges |= (changed & FIRST_COLUMN) != 0 ? WEST : 0;
+    edges |= (changed & LAST_COLUMN) != 0 ? EAST : 0;
+    edges |= (int) (changed & 1L) * NORTH_WEST;
+    edges |= (int) ((changed >>> (Swar.BLOCK_SIZE - 1)) & 1L) * NORTH_EAST;
+    edges |= (int) ((changed >>> (Long.SIZE - Swar.BLOCK_SIZE)) & 1L)
+        * SOUTH_WEST;
+    edges |= (int) (changed >>> (Long.SIZE - 1)) * SOUTH_EAST;
+    return edges;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param bit row * 8 + column.
+   * @return the number of live neighbors of the cell, including those in
+   * adjacent blocks.
+   */
+  public int countLiveNeighbors(final int bit) {
+    int row = bit / gridSize;
+    int column = bit % gridSize;
+    int count = 0;
+    for (int dy = -1; dy <= 1; ++dy) {
+      for (int dx = -1; dx <= 1; ++dx) {
+        if ((dx != 0 || dy != 0) && isAliveAt(row + dy, column + dx)) {
+          ++count;
+        }
       }
     }
+    return count;
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param row -1 to 8.
+   * @param column -1 to 8.
+   * @return the state of the cell, which may be in an adjacent block.
+   */
+  private boolean isAliveAt(final int row, final int column) {
+    int blockRow = row < 0 ? 0 : row < gridSize ? 1 : 2;
+    int blockColumn = column < 0 ? 0 : column < gridSize ? 1 : 2;
+    long block;
+    if (blockRow == 1 && blockColumn == 1) {
+      block = cells;
+    } else {
+      int direction = blockRow * 3 + blockColumn;
+      // The center isn't in the adjacent list.
+      block = getAdjacentCells(direction > 4 ? direction - 1 : direction);
+    }
+    int bit = ((row + gridSize) % gridSize) * gridSize
+        + (column + gridSize) % gridSize;
+    return (block & (1L << bit)) != 0;
   }
 
   /**
@@ -112,6 +759,9 @@ public final class Neighborhood implements Cell {
    */
 
   public Cell create() {
+    if (isPacked()) {
+      return createPacked();
+    }
     return new Neighborhood(gridSize, grid[0][0]);
   }
 
@@ -135,23 +785,83 @@ public final class Neighborhood implements Cell {
   }
 
   /**
-   * Transition the neighborhood to the previously-computed state.
+   * Transition the neighborhood to the previously-computed state, and
+   * record which edges changed. An inactive neighborhood has nothing to
+   * transition.
    *
    * @return true if the transition actually changed anything.
    * @see #figureNextState
    */
   public boolean transition() {
+    if (!amActive) {
+      changedEdges = 0;
+      return false;
+    }
+    if (isPacked()) {
+      long changed = cells ^ nextCells;
+      cells = nextCells;
+      changedEdges = packedEdges(changed);
+      dirty |= changed != 0L;
+      return changed != 0L;
+    }
     boolean isChanged = false;
-    for (int r = 0; r < gridSize; r ++) {
-      for (int c = 0; c < gridSize; c ++) {
-        if (grid[r][c].transition()) {
+    int edges = 0;
+    // Nothing outside the range figured can change, or be alive.
+    int last = gridSize - 1;
+    int[] range = figuredRange != null ? figuredRange
+        : new int[] {0, 0, last, last};
+    figuredRange = null;
+    liveTop = gridSize;
+    liveLeft = gridSize;
+    liveBottom = -1;
+    liveRight = -1;
+    for (int r = range[0]; r <= range[2]; r ++) {
+      for (int c = range[1]; c <= range[3]; c ++) {
+        Cell subcell = grid[r][c];
+        if (subcell.transition()) {
           isChanged = true;
+          int subcellEdges = subcell instanceof Neighborhood
+              ? ((Neighborhood) subcell).changedEdges : ALL_EDGES;
+          edges |= subcellEdges & edgesAt(r, c, gridSize);
+        }
+        if (subcell.isAlive()) {
+          liveTop = Math.min(liveTop, r);
+          liveLeft = Math.min(liveLeft, c);
+          liveBottom = Math.max(liveBottom, r);
+          liveRight = Math.max(liveRight, c);
         }
       }
     }
+    changedEdges = edges;
+    liveBoxKnown = true;
+    dirty |= isChanged;
     return isChanged;
   }
 
+  /**
+   * Record whether any of the contained cells will change state on the next
+   * transition. A neighborhood that just became stable asks for one last
+   * refresh so that its active border is erased.
+   *
+   * @param willChange true if some contained cell will change state.
+   */
+  public void updateActivity(final boolean willChange) {
+    updateActivity(willChange, null);
+  }
+
+  /**
+   * @param willChange true if some contained cell will change state.
+   * @param figured the subcells that were figured, if not all of them:
+   * only they are transitioned.
+   */
+  void updateActivity(final boolean willChange, final int[] figured) {
+    figuredRange = figured;
+    if (amActive && !willChange) {
+      oneLastRefreshRequired = true;
+    }
+    amActive = willChange;
+  }
+
   /**
    * Return the edge cell in the indicated row and column.
    * @param row
@@ -165,20 +875,26 @@ public final class Neighborhood implements Cell {
       throw new AssertionError("central cell requested from edge()");
     }
 
+    if (isPacked()) {
+      return getResident(row, column);
+    }
     return grid[row][column];
   }
 
   /**
-   * @return always true
+   * @return true if any cell in this neighborhood is alive.
    */
   public boolean isAlive() {
-    return true;
+    return !isEmpty();
   }
 
   /**
    * @return total widthInCell
    */
   public int widthInCells() {
+    if (isPacked()) {
+      return gridSize;
+    }
     return gridSize * grid[0][0].widthInCells();
   }
 
@@ -186,12 +902,24 @@ public final class Neighborhood implements Cell {
    *
    */
   public void clear() {
+    changedEdges = ALL_EDGES;
+    dirty = true;
+    if (isPacked()) {
+      cells = 0L;
+      nextCells = 0L;
+      amActive = false;
+      return;
+    }
 
-    for (int row = 0; row < gridSize; ++row) {
-      for (int column = 0; column < gridSize; ++column) {
+    // Only the live box has anything to clear.
+    findLiveBox();
+    for (int row = liveTop; row <= liveBottom; ++row) {
+      for (int column = liveLeft; column <= liveRight; ++column) {
         grid[row][column].clear();
       }
     }
+    liveBottom = -1;
+    liveRight = -1;
 
     amActive = false;
   }
@@ -208,31 +936,260 @@ public final class Neighborhood implements Cell {
 
   public boolean transfer(final Storable memento, final Point corner,
       final boolean load) {
+    dirty |= load;
+    if (isPacked()) {
+      return transferPacked((Memento) memento, corner, load);
+    }
+    Memento m = (Memento) memento;
     int subcellWidth = grid[0][0].widthInCells();
-    int myWidth = widthInCells();
-    Point upperLeft = corner.toBuilder().build();
+    // A store needs only the live box, a load only the subcells the
+    // memento has live cells in.
+    int top = 0;
+    int left = 0;
+    int bottom = gridSize - 1;
+    int right = gridSize - 1;
+    if (!load) {
+      findLiveBox();
+      top = liveTop;
+      left = liveLeft;
+      bottom = liveBottom;
+      right = liveRight;
+    }
+    Point upperLeft = new Point(0, 0);
 
-    for (int row = 0; row < gridSize; ++row) {
-      for (int column = 0; column < gridSize; ++column) {
+    for (int row = top; row <= bottom; ++row) {
+      for (int column = left; column <= right; ++column) {
+        upperLeft.setX(corner.getX() + column * subcellWidth);
+        upperLeft.setY(corner.getY() + row * subcellWidth);
+        if (load && !m.overlaps(upperLeft, subcellWidth)) {
+          continue;
+        }
         if (grid[row][column].transfer(memento, upperLeft, load)) {
           amActive = true;
         }
-        upperLeft.translate(subcellWidth, 0);
       }
-      upperLeft.translate(-myWidth, subcellWidth);
+    }
+    if (load) {
+      liveBoxKnown = false;
     }
     return amActive;
   }
 
   /**
+   * transfer() for a packed neighborhood: the same as transferring every
+   * cell, one bit at a time.
+   *
+   * @param memento
+   * @param corner
+   * @param load
+   * @return next state
+   */
+  private boolean transferPacked(final Memento memento, final Point corner,
+      final boolean load) {
+    Point location = new Point(0, 0);
+    for (int bit = 0; bit < gridSize * gridSize; ++bit) {
+      location.setX(corner.getX() + bit % gridSize);
+      location.setY(corner.getY() + bit / gridSize);
+      if (load) {
+        if (memento.isAlive(location)) {
+          cells |= 1L << bit;
+        }
+      } else if (isAlive(bit)) {
+        memento.markAsAlive(location);
+      }
+    }
+    if (load) {
+      nextCells = cells;
+      if (cells != 0L) {
+        amActive = true;
+      }
+    }
+    return amActive;
+  }
+
+  /**
+   * The memento is made from a {@link #snapshot}, so only the blocks that
+   * changed since the last one are looked at. The live cells are copied
+   * out of the snapshot when the memento is first read or changed.
+   *
    * @return Neighborhood dedicated Memento
    */
   public Storable createMemento() {
+    if (canSnapshot()) {
+      return new NeighborhoodState(snapshot(null));
+    }
     Memento m = new NeighborhoodState();
     transfer(m, new Point(0, 0), Cell.STORE);
     return m;
   }
 
+  /**
+   * @return true if the innermost neighborhoods are blocks of at most 8x8
+   * cells, which is what a snapshot can be taken of.
+   */
+  private boolean canSnapshot() {
+    Neighborhood innermost = this;
+    while (!innermost.isBlock()) {
+      if (!(innermost.grid[0][0] instanceof Neighborhood)) {
+        return false;
+      }
+      innermost = (Neighborhood) innermost.grid[0][0];
+    }
+    return innermost.gridSize <= Swar.BLOCK_SIZE;
+  }
+
+  /**
+   * Take an immutable snapshot of this neighborhood. The neighborhoods in
+   * which no cell changed since the last snapshot was taken of them hand
+   * that one out again.
+   *
+   * @param previous a snapshot taken of this neighborhood earlier, or
+   * null. Every part of it whose cells are still the same is shared rather
+   * than copied, if this neighborhood has no snapshot of its own yet.
+   * @return the snapshot.
+   * @throws IllegalArgumentException if the blocks of residents are
+   * bigger than 8x8.
+   */
+  public Snapshot snapshot(final Snapshot previous) {
+    Snapshot before = previous != null
+        && previous.widthInCells() == widthInCells() ? previous : null;
+    Snapshot snapshot = capture(before);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    return before != null && before.isEmpty() ? before
+        : isBlock() ? Snapshot.block(0L, gridSize)
+        : Snapshot.node(new Snapshot[gridSize][gridSize], widthInCells());
+  }
+
+  /**
+   * @param previous a snapshot of the same shape, or null.
+   * @return a snapshot sharing what it can with the last one taken of this
+   * neighborhood, or else with previous. Null if this neighborhood is
+   * empty.
+   */
+  private Snapshot capture(final Snapshot previous) {
+    if (!dirty) {
+      return captured;
+    }
+    captured = isEmpty() ? null
+        : recapture(captured != null ? captured : previous);
+    dirty = false;
+    ++recapturedCount;
+    return captured;
+  }
+
+  /**
+   * @param before a snapshot of the same shape, or null.
+   * @return a snapshot of this neighborhood, which mustn't be empty,
+   * sharing what it can with before.
+   */
+  private Snapshot recapture(final Snapshot before) {
+    if (isBlock()) {
+      long bits = blockCells();
+      return before != null && before.getCells() == bits ? before
+          : Snapshot.block(bits, gridSize);
+    }
+    Snapshot[][] children = new Snapshot[gridSize][gridSize];
+    boolean same = before != null;
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        Snapshot was = before == null ? null : before.child(row, column);
+        if (row >= liveTop && row <= liveBottom
+            && column >= liveLeft && column <= liveRight) {
+          children[row][column] =
+              ((Neighborhood) grid[row][column]).capture(was);
+        }
+        same &= children[row][column] == was;
+      }
+    }
+    return same ? before : Snapshot.node(children, widthInCells());
+  }
+
+  /**
+   * @return true if this neighborhood is a packed block or a block of
+   * residents.
+   */
+  private boolean isBlock() {
+    return isPacked() || grid[0][0] instanceof Resident;
+  }
+
+  /**
+   * Blocks only.
+   *
+   * @return bit (row * 8 + column) is set for each live cell.
+   */
+  private long blockCells() {
+    if (isPacked()) {
+      return cells;
+    }
+    if (gridSize > Swar.BLOCK_SIZE) {
+      throw new IllegalArgumentException(
+          "can't take a snapshot of " + gridSize + "x" + gridSize
+              + " blocks");
+    }
+    long bits = 0L;
+    for (int row = liveTop; row <= liveBottom; ++row) {
+      for (int column = liveLeft; column <= liveRight; ++column) {
+        if (grid[row][column].isAlive()) {
+          bits |= 1L << (row * Swar.BLOCK_SIZE + column);
+        }
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Make the cells of this neighborhood what they were when the snapshot
+   * was taken.
+   *
+   * @param snapshot of a neighborhood of the same shape.
+   * @throws IllegalArgumentException if the snapshot is of a neighborhood
+   * of another size.
+   */
+  public void restore(final Snapshot snapshot) {
+    if (snapshot.widthInCells() != widthInCells()) {
+      throw new IllegalArgumentException("snapshot is "
+          + snapshot.widthInCells() + " cells wide, not " + widthInCells());
+    }
+    clear();
+    fill(snapshot);
+  }
+
+  /**
+   * Bring the live cells of a snapshot to life in this (empty)
+   * neighborhood, and mark the neighborhoods they're in active.
+   *
+   * @param snapshot
+   */
+  private void fill(final Snapshot snapshot) {
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    if (isPacked()) {
+      cells = snapshot.getCells();
+      nextCells = cells;
+    } else if (isBlock()) {
+      for (long bits = snapshot.getCells(); bits != 0L; bits &= bits - 1) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        Cell resident = grid[bit / Swar.BLOCK_SIZE][bit % Swar.BLOCK_SIZE];
+        ((Resident) resident).setAlive(true);
+        ((Resident) resident).setWillBeAlive(true);
+      }
+    } else {
+      for (int row = 0; row < gridSize; ++row) {
+        for (int column = 0; column < gridSize; ++column) {
+          Snapshot child = snapshot.child(row, column);
+          if (child != null) {
+            ((Neighborhood) grid[row][column]).fill(child);
+          }
+        }
+      }
+    }
+    amActive = true;
+    markChanged();
+  }
+
   /**
    *
    */
@@ -273,6 +1230,21 @@ public final class Neighborhood implements Cell {
      *
      */
     private List<Point> liveCells = new LinkedList<>();
+    /**
+     * The live cells again, for fast lookups by {@link #isAlive}. Built
+     * when it's first needed.
+     */
+    private Set<Point> index;
+    /**
+     * The smallest rectangle that holds every live cell: {left, top,
+     * right, bottom}, inclusive.
+     */
+    private final int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE,
+        Integer.MIN_VALUE, Integer.MIN_VALUE};
+    /**
+     * The snapshot the live cells haven't been copied out of yet, or null.
+     */
+    private Snapshot captured;
 
     NeighborhoodState(final InputStream in) throws IOException {
       load(in);
@@ -281,14 +1253,40 @@ public final class Neighborhood implements Cell {
     NeighborhoodState() {
     }
 
+    /**
+     * @param snapshot the live cells, relative to the upper-left corner.
+     */
+    NeighborhoodState(final Snapshot snapshot) {
+      captured = snapshot;
+    }
+
+    /**
+     * Copy the live cells out of the snapshot, if that hasn't been done.
+     */
+    private void expand() {
+      if (captured != null) {
+        List<Point> cells = captured.getLiveCells();
+        captured = null;
+        for (Point p : cells) {
+          liveCells.add(p);
+          include(p);
+        }
+      }
+    }
+
     public void load(final InputStream in) throws IOException {
       try {
         ObjectInputStream source = new ObjectInputStream(in);
         Object sourceObject = source.readObject();
         if (sourceObject instanceof List) {
+          captured = null;
           /* 하위 호환성 유지 */
             liveCells = (List<Point>) ((List) sourceObject).stream()
                 .map(Point::new).collect(Collectors.toList());
+            index = null;
+            for (Point p : liveCells) {
+              include(p);
+            }
         }
       } catch (ClassNotFoundException e) {
         // This exception shouldn't be rethrown as
@@ -303,21 +1301,56 @@ public final class Neighborhood implements Cell {
     }
 
     public void flush(final OutputStream out) throws IOException {
+      expand();
       ObjectOutputStream sink = new ObjectOutputStream(out);
       sink.writeObject(liveCells);
     }
 
     public void markAsAlive(final Point location) {
-      liveCells.add(location.toBuilder().build());
+      expand();
+      Point p = location.toBuilder().build();
+      liveCells.add(p);
+      include(p);
+      if (index != null) {
+        index.add(p);
+      }
+    }
+
+    /**
+     * @param p
+     */
+    private void include(final Point p) {
+      bounds[0] = Math.min(bounds[0], p.getX());
+      bounds[1] = Math.min(bounds[1], p.getY());
+      bounds[2] = Math.max(bounds[2], p.getX());
+      bounds[3] = Math.max(bounds[3], p.getY());
     }
 
     public boolean isAlive(final Point location) {
-      return liveCells.contains(location);
+      expand();
+      if (index == null) {
+        index = new HashSet<>(liveCells);
+      }
+      return index.contains(location);
+    }
+
+    @Override
+    public boolean overlaps(final Point corner, final int width) {
+      expand();
+      return corner.getX() <= bounds[2] && corner.getY() <= bounds[3]
+          && corner.getX() + width > bounds[0]
+          && corner.getY() + width > bounds[1];
+    }
+
+    public List<Point> getLiveCells() {
+      expand();
+      return Collections.unmodifiableList(liveCells);
     }
 
     public String toString() {
       StringBuilder b = new StringBuilder();
 
+      expand();
       b.append("NeighborhoodState:\n");
       for (Point p : liveCells) {
         b.append(p.toString()).append("\n");
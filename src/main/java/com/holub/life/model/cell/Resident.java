@@ -1,6 +1,7 @@
 package com.holub.life.model.cell;
 
 import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
 import com.holub.tools.Observer;
 import com.holub.tools.Storable;
 import java.util.LinkedList;
@@ -11,22 +12,158 @@ import lombok.Setter;
 /*** ****************************************************************
  * The Resident class implements a single cell---a "resident" of a
  * block.
+ * <p>
+ * A resident either holds its own state or is a lightweight view of one
+ * cell of a packed {@link Neighborhood}, which keeps the state of all its
+ * cells in a single word. Views are created on demand and read and write
+ * the block's bits, so any number of them can exist for the same cell.
  */
 
 public final class Resident implements Cell {
+  /**
+   * Neighbors of a resident that hasn't been wired into a board.
+   */
+  private static final Resident[] NO_NEIGHBORS = new Resident[0];
   private List<Observer> observers;
-  @Getter @Setter
+  /**
+   * The packed block this resident is a view of, or null if the resident
+   * holds its own state.
+   */
+  private final Neighborhood block;
+  /**
+   * Bit (row * 8 + column) of the cell within {@link #block}.
+   */
+  private final int bit;
+  /**
+   * The neighborhood whose grid holds this resident, told when it's set
+   * directly rather than by a transition. Null for a view, or a resident
+   * that isn't in a grid.
+   */
+  private Neighborhood owner;
   private boolean alive = false;
-  @Getter @Setter
   private boolean willBeAlive = false;
+  /**
+   * The eight surrounding residents, wired once when the board is built so
+   * that counting live neighbors needs no coordinate lookups.
+   */
+  private Resident[] neighbors = NO_NEIGHBORS;
+  /**
+   * Position of this resident in the coordinate index of the universe it
+   * belongs to, or -1 if it isn't registered.
+   */
+  @Getter @Setter
+  private int index = -1;
+  /**
+   * The rule this resident lives by. Every resident of a board shares the
+   * same instance.
+   */
+  private Rule rule = Rule.CONWAY;
 
   public Resident() {
+    this(null, 0);
+  }
+
+  /**
+   * @param b the packed block to view.
+   * @param position bit (row * 8 + column) of the cell within the block.
+   */
+  Resident(final Neighborhood b, final int position) {
     super();
+    this.block = b;
+    this.bit = position;
     this.observers = new LinkedList<>();
   }
 
+  /**
+   * @param n the neighborhood whose grid holds this resident.
+   */
+  void setOwner(final Neighborhood n) {
+    owner = n;
+  }
+
+  /**
+   * @return current state.
+   */
+  public boolean isAlive() {
+    return block == null ? alive : block.isAlive(bit);
+  }
+
+  /**
+   * @param a
+   */
+  public void setAlive(final boolean a) {
+    if (block == null) {
+      if (alive != a && owner != null) {
+        owner.cellsEdited();
+      }
+      alive = a;
+    } else {
+      block.setAlive(bit, a);
+    }
+  }
+
+  /**
+   * @return the state after the next transition().
+   */
+  public boolean isWillBeAlive() {
+    return block == null ? willBeAlive : block.isWillBeAlive(bit);
+  }
+
+  /**
+   * @param a
+   */
+  public void setWillBeAlive(final boolean a) {
+    if (block == null) {
+      willBeAlive = a;
+    } else {
+      block.setWillBeAlive(bit, a);
+    }
+  }
+
+  /**
+   * @return the rule this resident lives by.
+   */
+  public Rule getRule() {
+    return block == null ? rule : block.getRule();
+  }
+
+  /**
+   * @param r
+   */
+  public void setRule(final Rule r) {
+    if (block == null) {
+      rule = r;
+    } else {
+      block.setRule(r);
+    }
+  }
+
+  /**
+   * @param n the surrounding residents. Residents outside the board should
+   * be represented by a resident that is never alive.
+   */
+  public void setNeighbors(final Resident[] n) {
+    this.neighbors = n;
+  }
+
+  /**
+   * @return number of live residents among the wired neighbors.
+   */
+  public int countLiveNeighbors() {
+    if (block != null) {
+      return block.countLiveNeighbors(bit);
+    }
+    int count = 0;
+    for (Resident neighbor : neighbors) {
+      if (neighbor.alive) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
   public void toggle() {
-    alive = !alive;
+    setAlive(!isAlive());
   }
 
   /**
@@ -34,7 +171,7 @@ public final class Resident implements Cell {
    * @return currentState equals nextState
    */
   private boolean isStable() {
-    return alive == willBeAlive;
+    return isAlive() == isWillBeAlive();
   }
 
   /**
@@ -66,11 +203,16 @@ public final class Resident implements Cell {
 
   /**
    *
-   * @return changed state
+   * @return true if the state changed
    */
   public boolean transition() {
-    boolean changed = isStable();
-    alive = willBeAlive;
+    boolean changed = !isStable();
+    if (block == null) {
+      // Whoever transitions the resident keeps its neighborhoods up to date.
+      alive = willBeAlive;
+    } else {
+      setAlive(isWillBeAlive());
+    }
     return changed;
   }
 
@@ -78,8 +220,8 @@ public final class Resident implements Cell {
    *
    */
   public void clear() {
-    alive = false;
-    willBeAlive = false;
+    setAlive(false);
+    setWillBeAlive(false);
   }
 
   /**
@@ -109,12 +251,13 @@ public final class Resident implements Cell {
       final Point upperLeft, final boolean doLoad) {
     Memento memento = (Memento) blob;
     if (doLoad) {
-      alive = alive || memento.isAlive(upperLeft);
-      willBeAlive = alive;
-      if (alive) {
+      boolean loaded = isAlive() || memento.isAlive(upperLeft);
+      setAlive(loaded);
+      setWillBeAlive(loaded);
+      if (loaded) {
         return true;
       }
-    } else if (alive) {
+    } else if (isAlive()) {
       memento.markAsAlive(upperLeft);
     }
     update();
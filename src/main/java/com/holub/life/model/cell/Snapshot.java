@@ -0,0 +1,307 @@
+package com.holub.life.model.cell;
+
+import com.holub.life.model.Point;
+import com.holub.life.model.Swar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable copy of a {@link Neighborhood} tree, taken by
+ * {@link Neighborhood#snapshot}. It has the same shape as the tree: a
+ * snapshot of a block of residents holds the block's cells as bits, and a
+ * snapshot of a larger neighborhood holds a snapshot of each subcell.
+ * Empty subcells are left out.
+ * <p>
+ * Since nothing in a snapshot ever changes, the parts that are the same in
+ * two snapshots can be shared: taking a snapshot of a neighborhood that a
+ * previous snapshot was taken of reuses every part of the previous one
+ * whose cells haven't changed, so each new snapshot costs memory only for
+ * the blocks that changed and the neighborhoods that contain them. Handing
+ * a snapshot on, say to start another universe from, costs nothing at all.
+ */
+
+public final class Snapshot {
+
+  /**
+   * Room for this many cells is made up front when the live cells are
+   * listed by row.
+   */
+  private static final int INITIAL_CELLS = 1024;
+
+  /**
+   * The snapshots of the subcells, by row and column, with null for an
+   * empty subcell. Null for a block.
+   */
+  private final Snapshot[][] children;
+  /**
+   * A block only: bit (row * 8 + column) is set for each live cell.
+   */
+  private final long cells;
+  /**
+   *
+   */
+  private final int width;
+
+  /**
+   * @param c
+   * @param bits
+   * @param w
+   */
+  private Snapshot(final Snapshot[][] c, final long bits, final int w) {
+    this.children = c;
+    this.cells = bits;
+    this.width = w;
+  }
+
+  /**
+   * @param bits bit (row * 8 + column) is set for each live cell.
+   * @param w width of the block in cells.
+   * @return a snapshot of a block.
+   */
+  static Snapshot block(final long bits, final int w) {
+    return new Snapshot(null, bits, w);
+  }
+
+  /**
+   * @param c the subcells' snapshots, null for the empty ones. The array
+   * must not be changed afterwards.
+   * @param w width of the neighborhood in cells.
+   * @return a snapshot of a neighborhood of subcells.
+   */
+  static Snapshot node(final Snapshot[][] c, final int w) {
+    return new Snapshot(c, 0L, w);
+  }
+
+  /**
+   * @return true if this is a snapshot of a block of residents.
+   */
+  boolean isBlock() {
+    return children == null;
+  }
+
+  /**
+   * Block only.
+   *
+   * @return bit (row * 8 + column) is set for each live cell.
+   */
+  long getCells() {
+    return cells;
+  }
+
+  /**
+   * Not a block.
+   *
+   * @param row
+   * @param column
+   * @return the snapshot of the subcell, or null if it's empty.
+   */
+  Snapshot child(final int row, final int column) {
+    return children[row][column];
+  }
+
+  /**
+   * @return width in cells.
+   */
+  public int widthInCells() {
+    return width;
+  }
+
+  /**
+   * @return true if no cell is alive.
+   */
+  public boolean isEmpty() {
+    if (isBlock()) {
+      return cells == 0L;
+    }
+    for (Snapshot[] row : children) {
+      for (Snapshot child : row) {
+        if (child != null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return true if the cell at (x, y) was alive.
+   */
+  public boolean isAlive(final int x, final int y) {
+    if (isBlock()) {
+      return (cells & (1L << (y * Swar.BLOCK_SIZE + x))) != 0;
+    }
+    int subcellWidth = width / children.length;
+    Snapshot child = children[y / subcellWidth][x / subcellWidth];
+    return child != null
+        && child.isAlive(x % subcellWidth, y % subcellWidth);
+  }
+
+  /**
+   * @return the positions of the live cells.
+   */
+  public List<Point> getLiveCells() {
+    List<Point> liveCells = new ArrayList<>();
+    addLiveCells(0, 0, liveCells);
+    return liveCells;
+  }
+
+  /**
+   * @return the live cells in row-major order, each packed as
+   * <code>(y &lt;&lt; 32) + x</code>.
+   */
+  public long[] getLiveCellsByRow() {
+    long[][] liveCells = {new long[INITIAL_CELLS]};
+    int count = addRows(new Snapshot[] {this}, new int[] {0}, 1, 0,
+        liveCells, 0);
+    return Arrays.copyOf(liveCells[0], count);
+  }
+
+  /**
+   * Add the live cells of a band of snapshots of the same size that lie
+   * side by side, row by row. Each row of subcells of the band is a band
+   * of its own.
+   *
+   * @param band the snapshots, from left to right.
+   * @param columns the column of each one's upper-left cell.
+   * @param count number of snapshots in the band.
+   * @param y row of the band's top cells.
+   * @param liveCells the one array the cells go in, which is replaced by a
+   * bigger one when it fills up.
+   * @param added number of cells in the array so far.
+   * @return number of cells in the array now.
+   */
+  private static int addRows(final Snapshot[] band, final int[] columns,
+      final int count, final int y, final long[][] liveCells,
+      final int added) {
+    int total = added;
+    if (band[0].isBlock()) {
+      for (int row = 0; row < Swar.BLOCK_SIZE; ++row) {
+        long top = (long) (y + row) << 32;
+        for (int i = 0; i < count; ++i) {
+          long bits = (band[i].cells >>> (row * Swar.BLOCK_SIZE)) & 0xFF;
+          if (total + Long.bitCount(bits) > liveCells[0].length) {
+            liveCells[0] = Arrays.copyOf(liveCells[0],
+                2 * liveCells[0].length + Swar.BLOCK_SIZE);
+          }
+          for (; bits != 0L; bits &= bits - 1) {
+            liveCells[0][total++] =
+                top + columns[i] + Long.numberOfTrailingZeros(bits);
+          }
+        }
+      }
+      return total;
+    }
+    int gridSize = band[0].children.length;
+    int subcellWidth = band[0].width / gridSize;
+    Snapshot[] subcells = new Snapshot[count * gridSize];
+    int[] subcellColumns = new int[subcells.length];
+    for (int row = 0; row < gridSize; ++row) {
+      int found = 0;
+      for (int i = 0; i < count; ++i) {
+        for (int column = 0; column < gridSize; ++column) {
+          if (band[i].children[row][column] != null) {
+            subcells[found] = band[i].children[row][column];
+            subcellColumns[found++] = columns[i] + column * subcellWidth;
+          }
+        }
+      }
+      if (found > 0) {
+        total = addRows(subcells, subcellColumns, found,
+            y + row * subcellWidth, liveCells, total);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @param other a snapshot of a neighborhood of the same size, usually of
+   * the same one taken at another time.
+   * @return the cells that are alive in one snapshot and dead in the
+   * other, each packed as <code>(y &lt;&lt; 32) + x</code>, in no
+   * particular order. Only the parts the two don't share are looked at.
+   * @throws IllegalArgumentException if the other snapshot is of another
+   * size.
+   */
+  public long[] getDifferences(final Snapshot other) {
+    if (other.width != width) {
+      throw new IllegalArgumentException("snapshot is " + other.width
+          + " cells wide, not " + width);
+    }
+    long[][] differences = {new long[INITIAL_CELLS]};
+    int count = addDifferences(this, other, 0, 0, differences, 0);
+    return Arrays.copyOf(differences[0], count);
+  }
+
+  /**
+   * @param a a snapshot, or null if it's empty.
+   * @param b a snapshot of the same size, or null if it's empty.
+   * @param x column of the upper-left cell.
+   * @param y row of the upper-left cell.
+   * @param differences the one array the cells go in, which is replaced by
+   * a bigger one when it fills up.
+   * @param added number of cells in the array so far.
+   * @return number of cells in the array now.
+   */
+  private static int addDifferences(final Snapshot a, final Snapshot b,
+      final int x, final int y, final long[][] differences,
+      final int added) {
+    if (a == b) {
+      return added;
+    }
+    Snapshot either = a != null ? a : b;
+    int total = added;
+    if (either.isBlock()) {
+      long bits = (a == null ? 0L : a.cells) ^ (b == null ? 0L : b.cells);
+      if (total + Long.bitCount(bits) > differences[0].length) {
+        differences[0] = Arrays.copyOf(differences[0],
+            2 * differences[0].length + Long.SIZE);
+      }
+      for (; bits != 0L; bits &= bits - 1) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        differences[0][total++] = ((long) (y + bit / Swar.BLOCK_SIZE) << 32)
+            + x + bit % Swar.BLOCK_SIZE;
+      }
+      return total;
+    }
+    int gridSize = either.children.length;
+    int subcellWidth = either.width / gridSize;
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        total = addDifferences(a == null ? null : a.children[row][column],
+            b == null ? null : b.children[row][column],
+            x + column * subcellWidth, y + row * subcellWidth, differences,
+            total);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @param x column of the upper-left cell.
+   * @param y row of the upper-left cell.
+   * @param liveCells
+   */
+  private void addLiveCells(final int x, final int y,
+      final List<Point> liveCells) {
+    if (isBlock()) {
+      for (long bits = cells; bits != 0L; bits &= bits - 1) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        liveCells.add(new Point(x + bit % Swar.BLOCK_SIZE,
+            y + bit / Swar.BLOCK_SIZE));
+      }
+      return;
+    }
+    int subcellWidth = width / children.length;
+    for (int row = 0; row < children.length; ++row) {
+      for (int column = 0; column < children.length; ++column) {
+        if (children[row][column] != null) {
+          children[row][column].addLiveCells(x + column * subcellWidth,
+              y + row * subcellWidth, liveCells);
+        }
+      }
+    }
+  }
+}
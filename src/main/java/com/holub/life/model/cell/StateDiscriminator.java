@@ -1,8 +1,8 @@
 package com.holub.life.model.cell;
 
 
+import com.holub.life.model.Swar;
 import com.holub.life.model.cell.NearestCellsDTO.NearestCellsDTOBuilder;
-import com.holub.life.system.ResidentService;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,22 +12,19 @@ import java.util.List;
  */
 
 public class StateDiscriminator {
-  private static StateDiscriminator instance;
-  private ResidentService residentService;
+  /**
+   * Created eagerly so that getInstance() needn't be synchronized: it's
+   * called for every cell, possibly from several stepping threads at once.
+   */
+  private static final StateDiscriminator INSTANCE = new StateDiscriminator();
 
-  public static synchronized StateDiscriminator getInstance() {
-    if (instance == null) {
-      instance = new StateDiscriminator(ResidentService.getInstance());
-    }
-    return instance;
+  public static StateDiscriminator getInstance() {
+    return INSTANCE;
   }
 
-  private StateDiscriminator(ResidentService residentService) {
-    this.residentService = residentService;
+  private StateDiscriminator() {
   }
 
-  private static final int ALIVE_NEIGHBOR_NUM = 2;
-  private static final int GENERATING_NEIGHBOR_NUM = 3;
   /**
    * Resident 인스턴스에 대한 메소드.
    *
@@ -36,49 +33,57 @@ public class StateDiscriminator {
    * transition().
    */
   public boolean figureNextState(final Resident resident) {
-    int[] dr = {-1, -1, -1, 0, 0, 1, 1, 1};
-    int[] dc = {-1, 0, 1, -1, 1, -1, 0, 1};
-
-    int neighbors = 0;
+    int neighbors = resident.countLiveNeighbors();
 
-    for (int i = 0; i < dr.length; i ++) {
-      Resident neighbor = residentService.getResident(resident, dc[i], dr[i]);
-      if (neighbor != null && neighbor.isAlive()) {
-        ++neighbors;
-      }
-    }
-
-    resident.setWillBeAlive ((neighbors == GENERATING_NEIGHBOR_NUM
-        || (resident.isAlive() && neighbors == ALIVE_NEIGHBOR_NUM))
-    );
+    resident.setWillBeAlive(
+        resident.getRule().next(resident.isAlive(), neighbors));
 
     return resident.isAlive() != resident.isWillBeAlive();
   }
 
   /**
-   * Neighborhood 인스턴스에 대한 메소드
+   * Neighborhood 인스턴스에 대한 메소드. A quiescent neighborhood is skipped.
    *
    * @param neighborhood
    * @return
    */
   public boolean figureNextState(final Neighborhood neighborhood) {
+    if (neighborhood.isQuiescent()) {
+      return false;
+    }
+    if (neighborhood.isPacked()) {
+      return figurePackedNextState(neighborhood);
+    }
     final Cell[][] grid = neighborhood.getGrid();
-    final int gridSize = neighborhood.getGridSize();
+    final int[] range = neighborhood.stepRange();
     boolean nothingHappened = true;
 
-    for (int r = 0; r < gridSize; r ++) {
-      for (int c = 0; c < gridSize; c ++) {
+    for (int r = range[0]; r <= range[2]; r ++) {
+      for (int c = range[1]; c <= range[3]; c ++) {
         if (grid[r][c].figureNextState()) {
           nothingHappened = false;
         }
       }
     }
 
-    if (neighborhood.isAmActive() && nothingHappened) {
-      neighborhood.setOneLastRefreshRequired(true);
-    }
-
-    neighborhood.setAmActive(!nothingHappened);
+    neighborhood.updateActivity(!nothingHappened, range);
     return neighborhood.isAmActive();
   }
+
+  /**
+   * A packed block figures all 64 of its cells at once.
+   *
+   * @param block
+   * @return true if any cell of the block will change state.
+   */
+  private boolean figurePackedNextState(final Neighborhood block) {
+    long next = Swar.nextBlock(block.getRule(), block.getCells(),
+        block.getAdjacentCells(0), block.getAdjacentCells(1),
+        block.getAdjacentCells(2), block.getAdjacentCells(3),
+        block.getAdjacentCells(4), block.getAdjacentCells(5),
+        block.getAdjacentCells(6), block.getAdjacentCells(7));
+    block.setNextCells(next);
+    block.updateActivity(next != block.getCells());
+    return block.isAmActive();
+  }
 }
@@ -0,0 +1,803 @@
+package com.holub.life.system;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * The generations a {@link Universe} can roll back to, oldest first.
+ * <p>
+ * A generation is a sorted array of live cells, each packed into a
+ * <code>long</code> by {@link #cell}. Most generations are kept only as
+ * the cells that were born or died since the one before (the symmetric
+ * difference of the two sets), so a pattern that changes little costs
+ * little to remember. Every so often a keyframe holds a whole generation
+ * instead, so that any generation can be rebuilt from a nearby keyframe.
+ * The newest generation is also kept whole, and popping it rebuilds the
+ * one before by applying the newest delta in reverse.
+ * <p>
+ * Cell arrays are stored as varints: the number of cells, then for each
+ * cell the rows skipped since the one before and either the gap since the
+ * one before in the same row or the column in a new row. Small negative
+ * numbers are zigzag-encoded so that they stay short too.
+ * <p>
+ * The generations held in memory are kept within a budget of encoded
+ * bytes and of generations. Past it, the oldest generations are evicted:
+ * dropped, or appended to a spill file if there is one. A spilled
+ * generation is rebuilt straight from the file when it's looked up, and
+ * read back into memory when undo pops its way to it.
+ */
+
+public final class History {
+
+  /**
+   * The most deltas in a row between keyframes, which bounds the work of
+   * {@link #get}.
+   */
+  private static final int MAX_RUN = 256;
+  /**
+   * An empty cell array, and its encoding.
+   */
+  private static final long[] NO_CELLS = new long[0];
+  /**
+   *
+   */
+  private static final byte[] NOTHING = {0};
+  /**
+   * 7 bits of a varint per byte.
+   */
+  private static final int VARINT_BITS = 7;
+  /**
+   *
+   */
+  private static final int VARINT_MASK = 0x7f;
+  /**
+   *
+   */
+  private static final int VARINT_MORE = 0x80;
+  /**
+   * Initial length of the ring.
+   */
+  private static final int MIN_RING = 16;
+  /**
+   * Default budget of encoded bytes held in memory.
+   */
+  public static final long DEFAULT_BYTE_BUDGET = 64L << 20;
+  /**
+   * Default budget of generations held in memory.
+   */
+  public static final int DEFAULT_GENERATION_BUDGET = 1 << 16;
+  /**
+   * Initial length of the index of spilled entries.
+   */
+  private static final int MIN_SPILLED = 64;
+
+  /**
+   * A generation, either whole or as a delta from the one before.
+   */
+  private static final class Entry {
+    /**
+     *
+     */
+    private final long generation;
+    /**
+     * The encoded cell array.
+     */
+    private final byte[] data;
+    /**
+     * True if {@link #data} is the whole generation.
+     */
+    private final boolean keyframe;
+    /**
+     * The delta this keyframe was made from when the entry before it was
+     * evicted, or null. It's what gets spilled, since the entry before is
+     * in the spill file too.
+     */
+    private final byte[] delta;
+
+    Entry(final long g, final byte[] d, final boolean k) {
+      this(g, d, k, null);
+    }
+
+    Entry(final long g, final byte[] d, final boolean k, final byte[] was) {
+      this.generation = g;
+      this.data = d;
+      this.keyframe = k;
+      this.delta = was;
+    }
+
+    /**
+     * @return encoded bytes held.
+     */
+    int size() {
+      return data.length + (delta == null ? 0 : delta.length);
+    }
+  }
+
+  /**
+   * The generations held in memory, as a ring of {@link #count} entries
+   * starting at {@link #head}. The oldest is always a keyframe. The length
+   * is a power of two.
+   */
+  private Entry[] ring = new Entry[MIN_RING];
+  /**
+   * Index in {@link #ring} of the oldest entry.
+   */
+  private int head;
+  /**
+   * Number of entries in {@link #ring}.
+   */
+  private int count;
+  /**
+   * The newest generation, whole.
+   */
+  private long[] newest = NO_CELLS;
+  /**
+   * Number of deltas since the last keyframe.
+   */
+  private int run;
+  /**
+   * Bytes of delta since the last keyframe.
+   */
+  private long runBytes;
+  /**
+   * Bytes of encoded cells held in memory.
+   */
+  @Getter
+  private long byteCount;
+  /**
+   * The most encoded bytes to hold in memory.
+   */
+  @Getter
+  private long byteBudget = DEFAULT_BYTE_BUDGET;
+  /**
+   * The most generations to hold in memory.
+   */
+  @Getter
+  private int generationBudget = DEFAULT_GENERATION_BUDGET;
+  /**
+   * Number of generations evicted from memory, whether they were dropped
+   * or spilled.
+   */
+  @Getter
+  private long evictedCount;
+  /**
+   * The file older generations are spilled to, or null to drop them.
+   */
+  @Getter
+  private File spillFile;
+  /**
+   *
+   */
+  private RandomAccessFile spill;
+  /**
+   * Length of the spilled records. Records read back are cut off the end.
+   */
+  private long spillEnd;
+  /**
+   * Number of generations in the spill file.
+   */
+  @Getter
+  private int spilledCount;
+  /**
+   * Where each spilled entry starts in the file. A record is the entry's
+   * keyframe flag, the length of its data and the data.
+   */
+  private long[] spilledOffsets = new long[MIN_SPILLED];
+  /**
+   * The number of each spilled generation, so that finding one doesn't
+   * read the file.
+   */
+  private long[] spilledGenerations = new long[MIN_SPILLED];
+  /**
+   * Which spilled entries are keyframes.
+   */
+  private final BitSet spilledKeyframes = new BitSet();
+
+  /**
+   * @param x
+   * @param y
+   * @return the cell at (x, y), packed so that cells sort by row, then by
+   * column.
+   */
+  static long cell(final int x, final int y) {
+    return ((long) y << Integer.SIZE) + x;
+  }
+
+  /**
+   * @param cell
+   * @return the row of a packed cell.
+   */
+  static int y(final long cell) {
+    return (int) ((cell - Integer.MIN_VALUE) >> Integer.SIZE);
+  }
+
+  /**
+   * @param cell
+   * @return the column of a packed cell.
+   */
+  static int x(final long cell) {
+    return (int) (cell - ((long) y(cell) << Integer.SIZE));
+  }
+
+  /**
+   * @param bytes the most encoded bytes to hold in memory.
+   * @param generations the most generations to hold in memory. The newest
+   * is held whatever the budget.
+   * @throws IllegalArgumentException if either is negative.
+   */
+  void setBudget(final long bytes, final int generations) {
+    if (bytes < 0 || generations < 0) {
+      throw new IllegalArgumentException("negative history budget");
+    }
+    byteBudget = bytes;
+    generationBudget = generations;
+    evict();
+  }
+
+  /**
+   * Spill evicted generations to a file, or stop spilling. The file is
+   * emptied, so the generations spilled to an earlier file are lost.
+   *
+   * @param file created or overwritten, or null to drop evicted
+   * generations.
+   * @throws UncheckedIOException if the file can't be opened.
+   */
+  void setSpillFile(final File file) {
+    try {
+      if (spill != null) {
+        spill.close();
+        spill = null;
+      }
+      spillFile = file;
+      spillEnd = 0;
+      spilledCount = 0;
+      spilledKeyframes.clear();
+      if (file != null) {
+        spill = new RandomAccessFile(file, "rw");
+        spill.setLength(0);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @param cells the live cells of a new generation, sorted.
+   * @param generation its number.
+   */
+  void push(final long[] cells, final long generation) {
+    push(cells, null, generation);
+  }
+
+  /**
+   * @param cells the live cells of a new generation, sorted.
+   * @param flips the cells born or died since the newest generation,
+   * sorted, or null to work them out from the two generations.
+   * @param generation its number.
+   */
+  void push(final long[] cells, final long[] flips, final long generation) {
+    byte[] delta = count == 0 || run >= MAX_RUN ? null
+        : encode(flips != null ? flips : symmetricDifference(newest, cells));
+    // Every cell takes at least two bytes, so there's no need to encode the
+    // whole generation until the deltas come near that.
+    byte[] whole = delta == null
+        || runBytes + delta.length > 1 + 2L * cells.length
+        ? encode(cells) : null;
+    // Start a keyframe once rebuilding from the last one would cost more.
+    if (whole != null
+        && (delta == null || runBytes + delta.length > whole.length)) {
+      addLast(new Entry(generation, whole, true));
+      run = 0;
+      runBytes = 0;
+    } else {
+      addLast(new Entry(generation, delta, false));
+      ++run;
+      runBytes += delta.length;
+    }
+    newest = cells;
+    evict();
+  }
+
+  /**
+   * Remove the newest generation.
+   *
+   * @return its live cells.
+   */
+  long[] pop() {
+    if (count == 1 && spilledCount > 0) {
+      unspill();
+    }
+    Entry entry = removeLast();
+    long[] cells = newest;
+    if (count == 0) {
+      newest = NO_CELLS;
+    } else if (entry.keyframe) {
+      newest = rebuild(count - 1);
+    } else {
+      newest = symmetricDifference(cells, decode(entry.data));
+    }
+    recountRun();
+    return cells;
+  }
+
+  /**
+   * Find the length of the run of deltas at the end.
+   */
+  private void recountRun() {
+    run = 0;
+    runBytes = 0;
+    for (int i = count - 1; i >= 0 && !entry(i).keyframe; --i) {
+      ++run;
+      runBytes += entry(i).data.length;
+    }
+  }
+
+  /**
+   * @param index 0 for the oldest generation, spilled or not.
+   * @return its live cells, rebuilt backward from the newest generation
+   * if there's no keyframe in between, or forward from the keyframe before
+   * it.
+   */
+  long[] get(final int index) {
+    if (index < spilledCount) {
+      return readSpilled(index);
+    }
+    int i = index - spilledCount;
+    int last = count - 1;
+    if (i < last - run) {
+      return rebuild(i);
+    }
+    List<byte[]> deltas = new ArrayList<>(last - i);
+    for (int j = last; j > i; --j) {
+      deltas.add(entry(j).data);
+    }
+    return apply(newest, deltas);
+  }
+
+  /**
+   * @param i index in memory.
+   * @return the generation at i, rebuilt forward from the nearest keyframe
+   * before it.
+   */
+  private long[] rebuild(final int i) {
+    int keyframe = i;
+    while (!entry(keyframe).keyframe) {
+      --keyframe;
+    }
+    List<byte[]> deltas = new ArrayList<>(i - keyframe);
+    for (int j = keyframe + 1; j <= i; ++j) {
+      deltas.add(entry(j).data);
+    }
+    return apply(decode(entry(keyframe).data), deltas);
+  }
+
+  /**
+   * @param index 0 for the oldest generation, spilled or not.
+   * @return its number.
+   */
+  long getGeneration(final int index) {
+    return index < spilledCount ? spilledGenerations[index]
+        : entry(index - spilledCount).generation;
+  }
+
+  /**
+   * @param generation
+   * @return the index of the newest generation remembered that's no newer
+   * than the given one, found by binary search, or -1 if they're all
+   * newer.
+   */
+  int find(final long generation) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (getGeneration(middle) <= generation) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * Forget the newest generations.
+   *
+   * @param size number of generations to keep.
+   */
+  void truncate(final int size) {
+    if (size >= size()) {
+      return;
+    }
+    while (count > 0 && count + spilledCount > size) {
+      removeLast();
+    }
+    if (count == 0) {
+      spilledCount = size;
+      spillEnd = spilledOffsets[size];
+      spilledKeyframes.clear(size, Math.max(size, spilledKeyframes.length()));
+      if (size > 0) {
+        unspill();
+      }
+    }
+    newest = count == 0 ? NO_CELLS : rebuild(count - 1);
+    recountRun();
+  }
+
+  /**
+   * @return number of generations remembered, in memory or spilled.
+   */
+  public int size() {
+    return count + spilledCount;
+  }
+
+  /**
+   * @return number of generations held in memory.
+   */
+  public int getHeldCount() {
+    return count;
+  }
+
+  /**
+   * Evict the oldest generations until the ones held are within budget.
+   */
+  private void evict() {
+    if (count <= 1
+        || (byteCount <= byteBudget && count <= generationBudget)) {
+      return;
+    }
+    while (count > 1
+        && (byteCount > byteBudget || count > generationBudget)) {
+      Entry oldest = removeFirst();
+      Entry next = entry(0);
+      if (!next.keyframe) {
+        // The new oldest entry must stand on its own.
+        long[] cells = symmetricDifference(decode(oldest.data),
+            decode(next.data));
+        byteCount -= next.size();
+        ring[head] = new Entry(next.generation, encode(cells), true,
+            next.data);
+        byteCount += ring[head].size();
+      }
+      if (spill != null) {
+        boolean whole = oldest.delta == null || spilledCount == 0;
+        write(oldest.generation, whole ? oldest.data : oldest.delta, whole);
+      }
+      ++evictedCount;
+    }
+    recountRun();
+  }
+
+  /**
+   * Append an entry to the spill file.
+   *
+   * @param generation
+   * @param data
+   * @param keyframe
+   */
+  private void write(final long generation, final byte[] data,
+      final boolean keyframe) {
+    if (spilledCount + 1 >= spilledOffsets.length) {
+      spilledOffsets = Arrays.copyOf(spilledOffsets,
+          2 * spilledOffsets.length);
+      spilledGenerations = Arrays.copyOf(spilledGenerations,
+          2 * spilledGenerations.length);
+    }
+    try {
+      spill.seek(spillEnd);
+      spill.writeBoolean(keyframe);
+      spill.writeInt(data.length);
+      spill.write(data);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    spilledOffsets[spilledCount] = spillEnd;
+    spilledGenerations[spilledCount] = generation;
+    spilledKeyframes.set(spilledCount, keyframe);
+    ++spilledCount;
+    spillEnd += 1 + Integer.BYTES + data.length;
+    spilledOffsets[spilledCount] = spillEnd;
+  }
+
+  /**
+   * Read spilled entries from the file.
+   *
+   * @param first index of the first entry to read.
+   * @param last index of the last entry to read.
+   * @return the entries.
+   */
+  private List<Entry> read(final int first, final int last) {
+    List<Entry> read = new ArrayList<>(last - first + 1);
+    try {
+      spill.seek(spilledOffsets[first]);
+      for (int i = first; i <= last; ++i) {
+        boolean keyframe = spill.readBoolean();
+        byte[] data = new byte[spill.readInt()];
+        spill.readFully(data);
+        read.add(new Entry(spilledGenerations[i], data, keyframe));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return read;
+  }
+
+  /**
+   * @param index of a spilled generation.
+   * @return its live cells, rebuilt forward from the spilled keyframe
+   * before it. Nothing is read back into memory.
+   */
+  private long[] readSpilled(final int index) {
+    int keyframe = spilledKeyframes.previousSetBit(index);
+    List<Entry> read = read(keyframe, index);
+    List<byte[]> deltas = new ArrayList<>(read.size() - 1);
+    for (Entry entry : read.subList(1, read.size())) {
+      deltas.add(entry.data);
+    }
+    return apply(decode(read.get(0).data), deltas);
+  }
+
+  /**
+   * Apply a run of deltas to a generation. Rather than merge each delta
+   * into the whole generation in turn, the deltas are merged with each
+   * other first: a cell that flips an even number of times doesn't change.
+   * So the work is proportional to the size of the generation plus the
+   * size of the deltas, not to their product.
+   *
+   * @param cells sorted.
+   * @param deltas encoded deltas, in any order.
+   * @return the cells with every delta applied.
+   */
+  private static long[] apply(final long[] cells, final List<byte[]> deltas) {
+    if (deltas.size() == 1) {
+      return symmetricDifference(cells, decode(deltas.get(0)));
+    }
+    long[][] decoded = new long[deltas.size()][];
+    int total = 0;
+    for (int i = 0; i < decoded.length; ++i) {
+      decoded[i] = decode(deltas.get(i));
+      total += decoded[i].length;
+    }
+    long[] flips = new long[total];
+    int length = 0;
+    for (long[] delta : decoded) {
+      System.arraycopy(delta, 0, flips, length, delta.length);
+      length += delta.length;
+    }
+    Arrays.sort(flips);
+    int odd = 0;
+    for (int i = 0; i < total;) {
+      int j = i;
+      while (j < total && flips[j] == flips[i]) {
+        ++j;
+      }
+      if (((j - i) & 1) != 0) {
+        flips[odd++] = flips[i];
+      }
+      i = j;
+    }
+    return symmetricDifference(cells, Arrays.copyOf(flips, odd));
+  }
+
+  /**
+   * Read the newest spilled entries back into memory, back to the newest
+   * spilled keyframe, so that the oldest entry held is a keyframe again.
+   */
+  private void unspill() {
+    int keyframe = spilledKeyframes.previousSetBit(spilledCount - 1);
+    List<Entry> read = read(keyframe, spilledCount - 1);
+    for (int i = read.size() - 1; i >= 0; --i) {
+      addFirst(read.get(i));
+    }
+    spilledKeyframes.clear(keyframe, spilledCount);
+    spilledCount = keyframe;
+    spillEnd = spilledOffsets[keyframe];
+  }
+
+  /**
+   * @param i
+   * @return the entry i places after the oldest held.
+   */
+  private Entry entry(final int i) {
+    return ring[(head + i) & (ring.length - 1)];
+  }
+
+  /**
+   * @param entry
+   */
+  private void addLast(final Entry entry) {
+    grow();
+    ring[(head + count) & (ring.length - 1)] = entry;
+    ++count;
+    byteCount += entry.size();
+  }
+
+  /**
+   * @param entry
+   */
+  private void addFirst(final Entry entry) {
+    grow();
+    head = (head - 1) & (ring.length - 1);
+    ring[head] = entry;
+    ++count;
+    byteCount += entry.size();
+  }
+
+  /**
+   * @return the oldest entry, which is removed.
+   */
+  private Entry removeFirst() {
+    Entry entry = ring[head];
+    ring[head] = null;
+    head = (head + 1) & (ring.length - 1);
+    --count;
+    byteCount -= entry.size();
+    return entry;
+  }
+
+  /**
+   * @return the newest entry, which is removed.
+   */
+  private Entry removeLast() {
+    int i = (head + count - 1) & (ring.length - 1);
+    Entry entry = ring[i];
+    ring[i] = null;
+    --count;
+    byteCount -= entry.size();
+    return entry;
+  }
+
+  /**
+   * Double the ring if it's full.
+   */
+  private void grow() {
+    if (count < ring.length) {
+      return;
+    }
+    Entry[] larger = new Entry[2 * ring.length];
+    for (int i = 0; i < count; ++i) {
+      larger[i] = entry(i);
+    }
+    ring = larger;
+    head = 0;
+  }
+
+  /**
+   * @param a sorted cells.
+   * @param b sorted cells.
+   * @return the cells in a or b but not both, sorted.
+   */
+  static long[] symmetricDifference(final long[] a, final long[] b) {
+    if (b.length == 0) {
+      return a;
+    }
+    if (a.length == 0) {
+      return b;
+    }
+    long[] result = new long[a.length + b.length];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        result[count++] = a[i++];
+      } else if (a[i] > b[j]) {
+        result[count++] = b[j++];
+      } else {
+        ++i;
+        ++j;
+      }
+    }
+    while (i < a.length) {
+      result[count++] = a[i++];
+    }
+    while (j < b.length) {
+      result[count++] = b[j++];
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * @param cells sorted.
+   * @return the cells as varints.
+   */
+  static byte[] encode(final long[] cells) {
+    if (cells.length == 0) {
+      return NOTHING;
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeVarint(out, cells.length);
+    long previousX = 0;
+    long previousY = 0;
+    for (int i = 0; i < cells.length; ++i) {
+      long x = x(cells[i]);
+      long y = y(cells[i]);
+      writeVarint(out, zigzag(y - previousY));
+      writeVarint(out, i > 0 && y == previousY
+          ? x - previousX - 1 : zigzag(x));
+      previousX = x;
+      previousY = y;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @param data written by {@link #encode}.
+   * @return the cells.
+   */
+  static long[] decode(final byte[] data) {
+    int[] position = {0};
+    int count = (int) readVarint(data, position);
+    if (count == 0) {
+      return NO_CELLS;
+    }
+    long[] cells = new long[count];
+    long x = 0;
+    long y = 0;
+    for (int i = 0; i < count; ++i) {
+      long dy = unzigzag(readVarint(data, position));
+      long column = readVarint(data, position);
+      x = i > 0 && dy == 0 ? x + column + 1 : unzigzag(column);
+      y += dy;
+      cells[i] = cell((int) x, (int) y);
+    }
+    return cells;
+  }
+
+  /**
+   * @param value
+   * @return the value with its sign in the lowest bit, so that small
+   * negative values make short varints too.
+   */
+  private static long zigzag(final long value) {
+    return (value << 1) ^ (value >> (Long.SIZE - 1));
+  }
+
+  /**
+   * @param value
+   * @return the inverse of {@link #zigzag}.
+   */
+  private static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * @param out
+   * @param value treated as unsigned.
+   */
+  private static void writeVarint(final ByteArrayOutputStream out,
+      final long value) {
+    long v = value;
+    while ((v & ~VARINT_MASK) != 0) {
+      out.write((int) (v & VARINT_MASK) | VARINT_MORE);
+      v >>>= VARINT_BITS;
+    }
+    out.write((int) v);
+  }
+
+  /**
+   * @param data
+   * @param position index of the next byte to read, advanced past the
+   * varint.
+   * @return the varint.
+   */
+  private static long readVarint(final byte[] data, final int[] position) {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = data[position[0]++];
+      value |= (long) (b & VARINT_MASK) << shift;
+      shift += VARINT_BITS;
+    } while ((b & VARINT_MORE) != 0);
+    return value;
+  }
+}
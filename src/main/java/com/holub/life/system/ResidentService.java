@@ -2,26 +2,71 @@ package com.holub.life.system;
 
 import com.holub.life.model.Point;
 import com.holub.life.model.cell.Resident;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Arrays;
+
+/**
+ * Finds the {@link Resident} at a given (x, y) position on a
+ * {@link Universe}'s board, and the position of a given resident.
+ * <p>
+ * Positions are packed into a single <code>long</code> (x in the high word,
+ * y in the low word) and kept in an open-addressing hash table of primitive
+ * keys, so there's no boxed key, entry object or Point per cell. The table
+ * maps a position to a dense index; residents and their positions are kept
+ * in plain arrays under that index, and each resident remembers its own
+ * index for the reverse lookup.
+ */
 
 public class ResidentService {
-  private static ResidentService instance;
 
-  private Map<Point, Resident> mappingTable;
-  private Map<Resident, Point> inverseMappingTable;
+  /**
+   * Marks an unused slot of the hash table.
+   */
+  private static final int EMPTY = -1;
+  /**
+   *
+   */
+  private static final int MIN_CAPACITY = 16;
+  /**
+   * Fibonacci hashing multiplier (2^64 divided by the golden ratio).
+   */
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+  /**
+   * Packed positions, by slot.
+   */
+  private long[] keys;
+  /**
+   * Dense index of the resident at each slot, or EMPTY.
+   */
+  private int[] slots;
+  /**
+   * 64 - log2(slots.length): the hash uses the top bits of the product.
+   */
+  private int shift;
+  /**
+   * Registered residents, by dense index.
+   */
+  private Resident[] residents;
+  /**
+   * Packed positions, by dense index.
+   */
+  private long[] positions;
+  /**
+   * Number of registered residents.
+   */
+  private int size;
 
-  public static synchronized ResidentService getInstance() {
-    if (instance == null) {
-      instance = new ResidentService();
-    }
-    return instance;
+  public ResidentService() {
+    this(MIN_CAPACITY);
   }
 
-  private ResidentService() {
-    mappingTable = new HashMap<>();
-    inverseMappingTable = new HashMap<>();
+  /**
+   * @param expected the number of residents that will be registered. The
+   * index grows if more are, but it's cheaper to size it right up front.
+   */
+  public ResidentService(final int expected) {
+    residents = new Resident[Math.max(expected, MIN_CAPACITY)];
+    positions = new long[residents.length];
+    allocateTable(residents.length);
   }
 
   /**
@@ -32,8 +77,41 @@ public class ResidentService {
    *         otherwise, return true.
    */
   public boolean register(final Resident r, final Point p) {
-    mappingTable.put(p, r);
-    inverseMappingTable.put(r, p);
+    return register(r, p.getX(), p.getY());
+  }
+
+  /**
+   * Register the resident at (x, y), replacing whatever was there.
+   *
+   * @param r
+   * @param x
+   * @param y
+   * @return if (x, y) already exists, return false; otherwise, return true.
+   */
+  public boolean register(final Resident r, final int x, final int y) {
+    long key = key(x, y);
+    int slot = find(key);
+    int index = slots[slot];
+    if (index != EMPTY) {
+      residents[index].setIndex(EMPTY);
+      residents[index] = r;
+      r.setIndex(index);
+      return false;
+    }
+
+    if (size == residents.length) {
+      residents = Arrays.copyOf(residents, size * 2);
+      positions = Arrays.copyOf(positions, size * 2);
+    }
+    index = size++;
+    residents[index] = r;
+    positions[index] = key;
+    r.setIndex(index);
+    keys[slot] = key;
+    slots[slot] = index;
+    if (size * 2 > slots.length) {
+      rehash();
+    }
     return true;
   }
 
@@ -43,7 +121,17 @@ public class ResidentService {
    * @return get resident on a specific point.
    */
   public Resident getResident(final Point p) {
-    return mappingTable.get(p);
+    return getResident(p.getX(), p.getY());
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the resident at (x, y), or null if there isn't one.
+   */
+  public Resident getResident(final int x, final int y) {
+    int index = slots[find(key(x, y))];
+    return index == EMPTY ? null : residents[index];
   }
 
   /**
@@ -54,15 +142,100 @@ public class ResidentService {
    * @return get resident using offset.
    */
   public Resident getResident(final Resident resident, final int dx, final int dy) {
-    Point p = inverseMappingTable.get(resident);
-    if (p == null) {
+    if (!contains(resident)) {
+      return null;
+    }
+    long position = positions[resident.getIndex()];
+    return getResident(x(position) + dx, y(position) + dy);
+  }
+
+  /**
+   * @param resident
+   * @return the position of the resident, or null if it isn't registered.
+   */
+  public Point getPoint(final Resident resident) {
+    if (!contains(resident)) {
       return null;
     }
+    long position = positions[resident.getIndex()];
+    return new Point(x(position), y(position));
+  }
+
+  /**
+   * @return the number of registered residents.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param resident
+   * @return true if the resident is registered here.
+   */
+  private boolean contains(final Resident resident) {
+    int index = resident.getIndex();
+    return index >= 0 && index < size && residents[index] == resident;
+  }
+
+  /**
+   * @param key
+   * @return the slot that holds key, or the empty slot where it belongs.
+   */
+  private int find(final long key) {
+    int mask = slots.length - 1;
+    int slot = (int) ((key * MULTIPLIER) >>> shift);
+    while (slots[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
 
-    return getResident(
-        Point.builder()
-            .x(p.getX() + dx)
-            .y(p.getY() + dy)
-            .build());
+  /**
+   * Double the hash table and put every registered position back in it.
+   */
+  private void rehash() {
+    allocateTable(slots.length);
+    for (int index = 0; index < size; ++index) {
+      int slot = find(positions[index]);
+      keys[slot] = positions[index];
+      slots[slot] = index;
+    }
+  }
+
+  /**
+   * @param entries the table is sized to hold this many entries at most
+   * half full.
+   */
+  private void allocateTable(final int entries) {
+    int capacity = Integer.highestOneBit(entries * 2 - 1) << 1;
+    keys = new long[capacity];
+    slots = new int[capacity];
+    Arrays.fill(slots, EMPTY);
+    shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return (x, y) packed into a single key.
+   */
+  private static long key(final int x, final int y) {
+    return ((long) x << Integer.SIZE) | (y & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param key
+   * @return the x coordinate of a packed key.
+   */
+  private static int x(final long key) {
+    return (int) (key >> Integer.SIZE);
+  }
+
+  /**
+   * @param key
+   * @return the y coordinate of a packed key.
+   */
+  private static int y(final long key) {
+    return (int) key;
   }
 }
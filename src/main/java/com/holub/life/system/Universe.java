@@ -1,19 +1,27 @@
 package com.holub.life.system;
 
 import com.holub.io.Files;
+import com.holub.life.model.Boundary;
 import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
 import com.holub.life.model.cell.Cell;
 import com.holub.life.model.cell.Neighborhood;
 import com.holub.life.model.cell.Resident;
+import com.holub.life.model.cell.Snapshot;
+import com.holub.life.system.engine.Board;
+import com.holub.life.system.engine.CellEngine;
+import com.holub.life.system.engine.Engine;
 import com.holub.tools.Observable;
 import com.holub.tools.Observer;
 import com.holub.tools.Storable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Stack;
 import lombok.Getter;
 
 public class Universe implements Observable {
@@ -24,71 +32,971 @@ public class Universe implements Observable {
    * small, you have too many blocks to check. I've found that 8 is a good compromise.
    */
   private static final int DEFAULT_GRID_SIZE = 8;
-  @Getter
-  private final Neighborhood outermostCell;
+  /**
+   * The longest cycle that's detected, in generations.
+   */
+  private static final int MAX_PERIOD = 64;
+  /**
+   * A growing board checks whether it can shrink again this often, in
+   * generations.
+   */
+  private static final int SHRINK_INTERVAL = 64;
+  /**
+   * The origin of saved files.
+   */
+  private static final Point ORIGIN = new Point(0, 0);
+  /**
+   * The outermost neighborhood. It's replaced when the board grows or
+   * shrinks.
+   */
+  private Neighborhood outermostCell;
   @Getter
   private final Clock clock;
   private final List<Observer> observers;
-  private final ResidentService residentService;
-  private Stack<Storable> pastTickStore = new Stack<>();
+  /**
+   * Finds residents by their (x, y) position on the board.
+   */
+  private ResidentService residentService;
+  /**
+   * Flat view of the residents in {@link #outermostCell}.
+   */
+  private Board board;
+  /**
+   * Computes each new generation of the board.
+   */
+  @Getter
+  private final Engine engine;
+  /**
+   * The generations {@link #doRollback} goes back to, in cells relative
+   * to the {@link #origin}, so that they don't depend on how much the
+   * board has grown since.
+   */
+  private final History history = new History();
+  /**
+   * The last {@link #snapshot}, which the next one shares what hasn't
+   * changed with.
+   */
+  private Snapshot lastSnapshot;
+  /**
+   * The snapshot the newest generation in the {@link #history} was read
+   * from, or null if the history has changed since.
+   */
+  private Snapshot remembered;
+  /**
+   * The {@link #origin} when {@link #remembered} was taken.
+   */
+  private Point rememberedOrigin;
+  /**
+   * Index in {@link #history} of the generation shown while looking back
+   * through it, or -1 while the board is live. Going back keeps the newer
+   * generations, so they can be redone, until the board moves on or is
+   * edited.
+   */
+  private int cursor = -1;
+  /**
+   * If true, the board grows when live cells reach its edge and shrinks
+   * back when the space around them empties.
+   */
+  @Getter
+  private boolean growing;
+  /**
+   * Where the upper-left cell of the board the universe started with is
+   * now. Saved files are relative to it, so they don't depend on how much
+   * the board has grown.
+   */
+  @Getter
+  private Point origin = new Point(0, 0);
+  /**
+   * Number of times the board the universe started with has been
+   * surrounded by a new outermost level.
+   */
+  @Getter
+  private int grownLevels;
+  /**
+   * Number of generations computed since the board was last cleared or
+   * loaded.
+   */
+  @Getter
+  private long generation;
+  /**
+   * Hashes of the last generations computed, indexed by generation modulo
+   * MAX_PERIOD.
+   */
+  private final long[] recentHashes = new long[MAX_PERIOD];
+  /**
+   * Number of valid entries in {@link #recentHashes}: the board hasn't been
+   * edited during the last hashedCount generations.
+   */
+  private int hashedCount;
+  /**
+   * Period of the cycle the board has settled into (1 for a still life or
+   * an empty board), or 0 if it isn't known to repeat.
+   */
+  @Getter
+  private int period;
+  /**
+   * The generations of the cycle, replayed instead of computed.
+   */
+  private List<long[]> cycle;
+  /**
+   * The board's {@link Board#hash} at each generation of the cycle.
+   */
+  private long[] cycleHashes;
+  /**
+   * Index in {@link #cycle} of the current generation.
+   */
+  private int phase;
   @Getter
   private TickSystem tickSystem;
+  /**
+   * The board of a {@link #fork} that hasn't been drawn, edited or stepped
+   * yet, which is built only then. Null once it's built.
+   */
+  private volatile Fork pending;
 
   public Universe() {
+    this(new CellEngine());
+  }
+
+  /**
+   * @param e the engine that computes each new generation.
+   */
+  public Universe(final Engine e) {
+    this(DEFAULT_GRID_SIZE, e);
+  }
+
+  /**
+   * @param blocks the number of blocks along each side of the board. Each
+   * block is DEFAULT_GRID_SIZE cells wide.
+   * @param e the engine that computes each new generation.
+   */
+  public Universe(final int blocks, final Engine e) {
+    this(blocks, e, false);
+  }
+
+  /**
+   * @param blocks the number of blocks along each side of the board. Each
+   * block is DEFAULT_GRID_SIZE cells wide.
+   * @param e the engine that computes each new generation.
+   * @param packed if true, each block keeps its cells in a single word
+   * instead of one Resident object per cell. The resident service is left
+   * empty, since residents of a packed board are created on demand.
+   */
+  public Universe(final int blocks, final Engine e, final boolean packed) {
+    this(new Neighborhood(blocks, packed
+        ? Neighborhood.createPacked()
+        : new Neighborhood(DEFAULT_GRID_SIZE, new Resident())), e);
+  }
+
+  /**
+   * @param outermost the board.
+   * @param e the engine that computes each new generation.
+   */
+  private Universe(final Neighborhood outermost, final Engine e) {
+    this(e, null);
+    setOutermostCell(outermost);
+    if (!e.supports(Boundary.DEAD) && e.supports(Boundary.OPEN)) {
+      board.setBoundary(Boundary.OPEN);
+    }
+    remember();
+  }
+
+  /**
+   * @param e the engine that computes each new generation.
+   * @param f the fork to build the board from when it's first needed, or
+   * null if the caller sets the board up.
+   */
+  private Universe(final Engine e, final Fork f) {
     this.observers = new LinkedList<>();
     this.clock =  new Clock();
     this.tickSystem = new TickSystem(clock);
-    this.residentService = ResidentService.getInstance();
-    outermostCell = new Neighborhood(DEFAULT_GRID_SIZE,
-            new Neighborhood(DEFAULT_GRID_SIZE, new Resident()));
-
-    Cell[][] neighborhood = outermostCell.getGrid();
-    for (int x = 0; x < DEFAULT_GRID_SIZE; x ++) {
-      for (int y = 0; y < DEFAULT_GRID_SIZE; y ++) {
-        Cell[][] residents = ((Neighborhood)neighborhood[y][x]).getGrid();
-        for (int innerX = 0; innerX < DEFAULT_GRID_SIZE; innerX ++) {
-          for (int innerY = 0; innerY < DEFAULT_GRID_SIZE; innerY ++) {
-            residentService.register((Resident)residents[innerY][innerX],
-                Point.builder().x(x * DEFAULT_GRID_SIZE + innerX)
-                    .y(y * DEFAULT_GRID_SIZE + innerY).build());
+    this.engine = e;
+    this.pending = f;
+
+    clock.addClockListener(() -> {
+      synchronized (this) {
+        build();
+        resume();
+        remember();
+        boolean changed = growing && fitBoard();
+        checkCycle();
+        if (period > 0) {
+          if (period > 1) {
+            changed = true;
+            replay((phase + 1) % period);
           }
+          ++generation;
+        } else {
+          engine.load(board);
+          changed |= engine.step();
+          engine.store(board);
+          ++generation;
+          detectCycle();
+        }
+        if (changed) {
+          update();
         }
       }
+    });
+  }
+
+  /**
+   * @return the outermost neighborhood.
+   */
+  public Neighborhood getOutermostCell() {
+    build();
+    return outermostCell;
+  }
+
+  /**
+   * @return the service that finds residents by their (x, y) position.
+   */
+  public ResidentService getResidentService() {
+    build();
+    return residentService;
+  }
+
+  /**
+   * @return a flat view of the residents in the outermost neighborhood.
+   */
+  public Board getBoard() {
+    build();
+    return board;
+  }
+
+  /**
+   * @return the generations {@link #doRollback} goes back to.
+   */
+  public History getHistory() {
+    build();
+    return history;
+  }
+
+  /**
+   * @return false while this is a {@link #fork} whose board hasn't been
+   * built yet.
+   */
+  boolean isBuilt() {
+    return pending == null;
+  }
+
+  /**
+   * Build the board of a {@link #fork} the first time it's needed: a
+   * composite of cells of its own, restored from the shared snapshot, and
+   * the first generation of its history.
+   */
+  private void build() {
+    if (pending == null) {
+      return;
+    }
+    synchronized (this) {
+      Fork f = pending;
+      if (f == null) {
+        return;
+      }
+      Neighborhood outermost = (Neighborhood) f.prototype.create();
+      outermost.restore(f.cells);
+      setOutermostCell(outermost);
+      board.setRule(f.rule);
+      if (f.boundary != Boundary.DEAD) {
+        board.setBoundary(f.boundary);
+      }
+      pending = null;
+      remember();
     }
-    pastTickStore.push(outermostCell.createMemento());
+  }
 
-    clock.addClockListener(() -> {
-      boolean nextState = outermostCell.figureNextState();
-      pastTickStore.push(outermostCell.createMemento());
-      if (nextState && outermostCell.transition()) {
-        update();
+  /**
+   * Make the given neighborhood the outermost one, and index its residents.
+   * The rule and boundary of the current board carry over.
+   *
+   * @param outermost
+   */
+  private void setOutermostCell(final Neighborhood outermost) {
+    Board previous = board;
+    outermostCell = outermost;
+    board = new Board(outermost);
+    if (previous != null) {
+      board.setRule(previous.getRule());
+      if (previous.getBoundary() != Boundary.DEAD) {
+        board.setBoundary(previous.getBoundary());
       }
-    });
+    }
+    if (board.isPacked()) {
+      residentService = new ResidentService();
+      return;
+    }
+    residentService =
+        new ResidentService(board.getWidth() * board.getHeight());
+    for (int y = 0; y < board.getHeight(); y ++) {
+      for (int x = 0; x < board.getWidth(); x ++) {
+        residentService.register(board.getResident(x, y), x, y);
+      }
+    }
+  }
+
+  /**
+   * @param g if true, the board grows when live cells reach its edge, so
+   * patterns behave as they would on an unbounded plane, and shrinks back
+   * when the space around them empties.
+   * @throws IllegalArgumentException if the board wraps or is mirrored.
+   */
+  public synchronized void setGrowing(final boolean g) {
+    if (g && !canGrow(getBoundary())) {
+      throw new IllegalArgumentException(
+          "only a board with dead or open edges can grow");
+    }
+    growing = g;
   }
 
   /**
+   * @param boundary
+   * @return true if a board with the given edges can grow: a board that
+   * grows before cells reach its edges never sees what lies past them.
+   */
+  private static boolean canGrow(final Boundary boundary) {
+    return boundary == Boundary.DEAD || boundary == Boundary.OPEN;
+  }
+
+  /**
+   * Grow the board if a live cell is on its edge, since the next generation
+   * could have a cell past it. Every so often, shrink a grown board if the
+   * space around its center has emptied.
    *
+   * @return true if the board changed size.
+   */
+  private boolean fitBoard() {
+    if (board.margin(1) == 0) {
+      grow();
+      return true;
+    }
+    if (grownLevels > 0 && generation % SHRINK_INTERVAL == 0) {
+      int shift = outermostCell.widthInCells() / 3;
+      // The center's own edge must be empty too, or it would grow back
+      // straight away.
+      if (board.margin(shift + 1) > shift) {
+        shrink();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Surround the board with a new outermost level, three times as wide,
+   * that has the current board at its center. Cells aren't copied, and the
+   * empty space costs nothing to step until something moves into it.
    */
-  public void clear() {
+  private void grow() {
+    int shift = outermostCell.widthInCells();
+    setOutermostCell(Neighborhood.surround(outermostCell));
+    moveOrigin(shift);
+    ++grownLevels;
+  }
+
+  /**
+   * Undo the last {@link #grow}: the center of the outermost level becomes
+   * the board again. Every live cell must be in the center.
+   */
+  private void shrink() {
+    int shift = outermostCell.widthInCells() / 3;
+    Neighborhood center = (Neighborhood) outermostCell.getGrid()[1][1];
+    center.detach();
+    setOutermostCell(center);
+    moveOrigin(-shift);
+    --grownLevels;
+  }
+
+  /**
+   * @param shift the cell that was at (x, y) is now at (x + shift,
+   * y + shift).
+   */
+  private void moveOrigin(final int shift) {
+    origin = new Point(origin.getX() + shift, origin.getY() + shift);
+    engine.moveOrigin(shift, shift);
+    // The positions of the generations that were hashed have all changed.
+    forgetCycle();
+  }
+
+  /**
+   * Look the new generation's hash up among the last generations'. If it's
+   * there (and the boards really are equal), the board has settled into a
+   * cycle: remember it so that it can be replayed, idle the clock if
+   * nothing moves any more, and tell the observers. An open board that
+   * doesn't grow is only a window: cells off it may still come back, so
+   * it's never taken to have settled.
+   */
+  private void detectCycle() {
+    if (board.getBoundary() == Boundary.OPEN && !growing) {
+      return;
+    }
+    long hash = board.hash();
+    int limit = Math.min(hashedCount, MAX_PERIOD);
+    for (int p = 1; p <= limit; ++p) {
+      if (recentHashes[(int) ((generation - p) % MAX_PERIOD)] == hash
+          && repeats(p)) {
+        startCycle(p, hash);
+        break;
+      }
+    }
+    recentHashes[(int) (generation % MAX_PERIOD)] = hash;
+    hashedCount = Math.min(hashedCount + 1, MAX_PERIOD);
+  }
+
+  /**
+   * @param p
+   * @return true if the board is the same as it was p generations ago.
+   */
+  private boolean repeats(final int p) {
+    int size = history.size();
+    return size >= p && Arrays.equals(history.get(size - p), liveCells());
+  }
+
+  /**
+   * @param p period of the cycle that ends with the current generation.
+   * @param hash the current generation's hash.
+   */
+  private void startCycle(final int p, final long hash) {
+    int size = history.size();
+    cycle = new ArrayList<>(p);
+    cycleHashes = new long[p];
+    for (int k = p - 1; k > 0; --k) {
+      cycle.add(history.get(size - k));
+      cycleHashes[p - 1 - k] =
+          recentHashes[(int) ((generation - k) % MAX_PERIOD)];
+    }
+    cycle.add(liveCells());
+    cycleHashes[p - 1] = hash;
+    phase = p - 1;
+    period = p;
+    if (p == 1) {
+      tickSystem.stop();
+    }
+    update();
+  }
+
+  /**
+   * Show another generation of the cycle. Only the cells that differ from
+   * the generation shown are flipped, so the blocks that don't change
+   * between the two stay as they are.
+   *
+   * @param newPhase index in {@link #cycle} of the generation to show.
+   */
+  private void replay(final int newPhase) {
+    long[] from = cycle.get(phase);
+    long[] to = cycle.get(newPhase);
+    phase = newPhase;
+    // Both are sorted, so the cells that differ are found by merging them.
+    int i = 0;
+    int j = 0;
+    while (i < from.length || j < to.length) {
+      if (j == to.length || i < from.length && from[i] < to[j]) {
+        setAlive(from[i++], false);
+      } else if (i == from.length || to[j] < from[i]) {
+        setAlive(to[j++], true);
+      } else {
+        ++i;
+        ++j;
+      }
+    }
+  }
+
+  /**
+   * @param cell packed by {@link History#cell}, relative to the
+   * {@link #origin}.
+   * @param alive
+   */
+  private void setAlive(final long cell, final boolean alive) {
+    Point p = new Point(History.x(cell) + origin.getX(),
+        History.y(cell) + origin.getY());
+    Resident resident = findResident(p);
+    if (resident != null) {
+      resident.setAlive(alive);
+      resident.setWillBeAlive(alive);
+      board.markActive(p.getX(), p.getY());
+    }
+  }
+
+  /**
+   * Forget the cycle if the board isn't the generation of it that was
+   * shown last: it was edited behind the universe's back, say through the
+   * composite. The board's hash is kept up to date, so this looks only at
+   * the blocks that changed since the last tick.
+   */
+  private void checkCycle() {
+    if (period > 0 && board.hash() != cycleHashes[phase]) {
+      forgetCycle();
+    }
+  }
+
+  /**
+   * The board was edited, so whatever cycle it was in is gone.
+   */
+  private void forgetCycle() {
+    period = 0;
+    cycle = null;
+    cycleHashes = null;
+    hashedCount = 0;
+  }
+
+  /**
+   * Save the current generation for {@link #doRollback}.
+   */
+  private void remember() {
+    Snapshot before = remembered;
+    long[] cells = liveCells();
+    long[] flips = null;
+    // The origin is replaced, never changed, whenever the board grows.
+    if (before != null && rememberedOrigin == origin) {
+      flips = lastSnapshot.getDifferences(before);
+      long shift = History.cell(origin.getX(), origin.getY());
+      for (int i = 0; i < flips.length; ++i) {
+        flips[i] -= shift;
+      }
+      Arrays.sort(flips);
+    }
+    history.push(cells, flips, generation);
+    remembered = lastSnapshot;
+    rememberedOrigin = origin;
+  }
+
+  /**
+   * @return the live cells, relative to the {@link #origin} and packed by
+   * {@link History#cell}, in the order History keeps them. They're read
+   * from a {@link #snapshot}, so only the blocks that changed since the
+   * last generation are looked at.
+   */
+  private long[] liveCells() {
+    long[] cells = snapshot().getLiveCellsByRow();
+    // Packing is linear, so moving every cell is a single subtraction.
+    long shift = History.cell(origin.getX(), origin.getY());
+    for (int i = 0; i < cells.length; ++i) {
+      cells[i] -= shift;
+    }
+    return cells;
+  }
+
+  /**
+   * Bound the memory the undo history holds. Older generations are
+   * dropped, or spilled if there's a {@link #setHistorySpillFile spill
+   * file}.
+   *
+   * @param bytes the most encoded bytes of cells to hold.
+   * @param generations the most generations to hold.
+   * @throws IllegalArgumentException if either is negative.
+   */
+  public synchronized void setHistoryBudget(final long bytes,
+      final int generations) {
+    history.setBudget(bytes, generations);
+  }
+
+  /**
+   * @param file the file undo history past its budget is appended to, so
+   * that undo can still reach it, or null to drop it. The file is emptied.
+   * @throws java.io.UncheckedIOException if the file can't be opened.
+   */
+  public synchronized void setHistorySpillFile(final File file) {
+    history.setSpillFile(file);
+  }
+
+  /**
+   * Show a past generation. The generations after it are kept, so they
+   * can be {@link #redo redone}, until the board moves on or is edited.
+   * Any generation is rebuilt from the keyframe before it, so the cost
+   * doesn't depend on how far back it is.
+   *
+   * @param target the generation to show.
+   * @return the generation shown: the target, or if it was never saved
+   * because {@link #advance} jumped over it, the last one saved before it.
+   * @throws IllegalArgumentException if the target hasn't been reached, or
+   * is older than any generation remembered.
+   */
+  public synchronized long seek(final long target) {
+    build();
+    long latest = cursor < 0 ? generation
+        : history.getGeneration(history.size() - 1);
+    if (target > latest) {
+      throw new IllegalArgumentException(
+          "generation " + target + " hasn't been reached");
+    }
+    clock.stop();
+    if (cursor < 0) {
+      if (target == generation) {
+        return generation;
+      }
+      // Keep the live generation so that it can be redone.
+      remember();
+    }
+    int index = history.find(target);
+    if (index < 0) {
+      throw new IllegalArgumentException(
+          "generation " + target + " is no longer remembered");
+    }
+    show(index);
+    return generation;
+  }
+
+  /**
+   * Move forward one generation after a {@link #seek} or
+   * {@link #doRollback}, to where the board was.
+   *
+   * @return false if there's nothing to redo.
+   */
+  public synchronized boolean redo() {
+    build();
+    if (cursor < 0 || cursor >= history.size() - 1) {
+      return false;
+    }
+    show(cursor + 1);
+    return true;
+  }
+
+  /**
+   * @return true while the board shows a generation from the history
+   * rather than the newest one.
+   */
+  public synchronized boolean isLookingBack() {
+    return cursor >= 0 && cursor < history.size() - 1;
+  }
+
+  /**
+   * @param index the generation in the {@link #history} to put on the
+   * board.
+   */
+  private void show(final int index) {
     outermostCell.clear();
+    engine.reset();
+    restore(history.get(index));
+    generation = history.getGeneration(index);
+    cursor = index;
+    forgetCycle();
+    update();
+  }
+
+  /**
+   * The board is about to move on from, or has been edited at, the
+   * generation {@link #seek} showed: forget the generations after it. The
+   * one shown is forgotten too, since it's about to be saved again.
+   */
+  private void resume() {
+    if (cursor >= 0) {
+      history.truncate(cursor);
+      remembered = null;
+      cursor = -1;
+    }
+  }
+
+  /**
+   * @return an immutable snapshot of the board. It shares every block
+   * that hasn't changed since the last snapshot with that one, so taking
+   * one costs memory only for the blocks that changed.
+   */
+  public synchronized Snapshot snapshot() {
+    if (pending == null) {
+      lastSnapshot = outermostCell.snapshot(lastSnapshot);
+    }
+    return lastSnapshot;
+  }
+
+  /**
+   * Start a what-if branch: a new universe with the board, rule, boundary
+   * and growth of this one at the generation shown, which goes its own way
+   * from then on. {@link #seek} first to branch off an earlier generation.
+   * <p>
+   * Forking takes constant time. The branch is copy-on-write: it holds a
+   * {@link #snapshot} of the board, which is shared rather than copied,
+   * and builds a composite of cells of its own from it only when it's
+   * first drawn, edited or stepped. Until then its snapshot is this one,
+   * and forking it again shares that, too.
+   *
+   * @param e the branch's engine. Engines are stateful, so it must not be
+   * this universe's.
+   * @return the branch.
+   * @throws IllegalArgumentException if the engine can't run the rule or
+   * the boundary.
+   */
+  public synchronized Universe fork(final Engine e) {
+    check(e, getRule());
+    check(e, getBoundary());
+    Fork f = pending;
+    Neighborhood prototype = f != null ? f.prototype : outermostCell;
+    Universe branch = new Universe(e,
+        new Fork(prototype, snapshot(), getRule(), getBoundary()));
+    branch.lastSnapshot = lastSnapshot;
+    branch.growing = growing;
+    branch.origin = origin;
+    branch.grownLevels = grownLevels;
+    branch.generation = generation;
+    return branch;
+  }
+
+  /**
+   * Compute the given number of generations in one go. Unlike ticking the
+   * clock that many times, nothing is saved for undo and nobody is notified
+   * until the last generation is done, so the cost is just the engine's.
+   * The whole jump is undone by a single {@link #doRollback}. Once the
+   * board stops changing, the remaining generations are skipped, since
+   * they'd all be the same.
+   * <p>
+   * A growing board is stepped in stretches that live cells can't cross
+   * the edge in, since they travel at most one cell per generation, and is
+   * grown in between.
+   *
+   * @param generations number of generations to compute.
+   */
+  public synchronized void advance(final long generations) {
+    if (generations <= 0) {
+      return;
+    }
+    build();
+    resume();
+    remember();
+    checkCycle();
+    if (period > 0) {
+      // Just pick the right generation of the cycle.
+      replay((int) ((phase + generations) % period));
+      generation += generations;
+    } else {
+      long remaining = generations;
+      boolean changed = true;
+      while (remaining > 0 && changed) {
+        long stretch = remaining;
+        if (growing) {
+          fitBoard();
+          stretch = Math.min(remaining,
+              board.margin((int) Math.min(remaining, Integer.MAX_VALUE)));
+        }
+        engine.load(board);
+        changed = engine.step(stretch);
+        engine.store(board);
+        remaining -= stretch;
+        generation += stretch;
+      }
+      generation += remaining;
+      hashedCount = 0;
+    }
+    update();
+  }
+
+  /**
+   *
+   */
+  public synchronized void clear() {
+    build();
+    resume();
+    outermostCell.clear();
+    engine.reset();
+    generation = 0;
+    forgetCycle();
+  }
+
+  /**
+   * @return the rule every cell lives by.
+   */
+  public Rule getRule() {
+    Fork f = pending;
+    return f != null ? f.rule : board.getRule();
+  }
+
+  /**
+   * @param rule the rule every cell will live by from the next tick on.
+   * @throws IllegalArgumentException if the engine can't run the rule.
+   */
+  public void setRule(final Rule rule) {
+    check(engine, rule);
+    build();
+    board.setRule(rule);
+    forgetCycle();
   }
 
   /**
+   * @return what lies past the edges of the board.
+   */
+  public Boundary getBoundary() {
+    Fork f = pending;
+    return f != null ? f.boundary : board.getBoundary();
+  }
+
+  /**
+   * @param boundary what lies past the edges of the board from the next
+   * tick on.
+   * @throws IllegalArgumentException if the engine or the board can't
+   * handle the boundary.
+   */
+  public synchronized void setBoundary(final Boundary boundary) {
+    if (growing && !canGrow(boundary)) {
+      throw new IllegalArgumentException(
+          "a growing board must have dead or open edges");
+    }
+    check(engine, boundary);
+    build();
+    board.setBoundary(boundary);
+    forgetCycle();
+  }
+
+  /**
+   * @param e
+   * @param rule
+   * @throws IllegalArgumentException if the engine can't run the rule.
+   */
+  private static void check(final Engine e, final Rule rule) {
+    if (!e.supports(rule)) {
+      throw new IllegalArgumentException(
+          e.getClass().getSimpleName() + " can't run " + rule);
+    }
+  }
+
+  /**
+   * @param e
+   * @param boundary
+   * @throws IllegalArgumentException if the engine can't run the boundary.
+   */
+  private static void check(final Engine e, final Boundary boundary) {
+    if (!e.supports(boundary)) {
+      throw new IllegalArgumentException(
+          e.getClass().getSimpleName() + " can't run a "
+              + boundary.name().toLowerCase() + " boundary");
+    }
+  }
+
+  /**
+   * Toggle the cell at the given position.
+   *
+   * @param p position in cells.
+   */
+  public synchronized void toggle(final Point p) {
+    build();
+    Resident resident = findResident(p);
+    if (resident == null) {
+      return;
+    }
+    resume();
+    resident.toggle();
+    board.markActive(p.getX(), p.getY());
+    forgetCycle();
+    if (board.isPacked()) {
+      update();
+    } else {
+      resident.update();
+    }
+  }
+
+  /**
+   * @param p position in cells.
+   * @return the resident at p, or null if p is off the board.
+   */
+  private Resident findResident(final Point p) {
+    if (!board.isPacked()) {
+      return residentService.getResident(p);
+    }
+    if (p.getX() < 0 || p.getY() < 0
+        || p.getX() >= board.getWidth() || p.getY() >= board.getHeight()) {
+      return null;
+    }
+    return board.getResident(p.getX(), p.getY());
+  }
+
+  /**
+   * Bring every cell in a generation from the {@link #history} to life.
+   *
+   * @param cells packed by {@link History#cell}, relative to the
+   * {@link #origin}.
+   */
+  private void restore(final long[] cells) {
+    List<Point> points = new ArrayList<>(cells.length);
+    for (long cell : cells) {
+      points.add(new Point(History.x(cell), History.y(cell)));
+    }
+    restore(points, ORIGIN);
+  }
+
+  /**
+   * Bring every cell that's alive in the memento to life. Cells that are
+   * already alive stay alive. If the board has shrunk since the memento was
+   * taken, it's grown back until every cell fits.
+   *
+   * @param memento
+   * @param from the {@link #origin} the memento was taken with.
+   */
+  private void restore(final Storable memento, final Point from) {
+    restore(((Cell.Memento) memento).getLiveCells(), from);
+  }
+
+  /**
+   * @param liveCells
+   * @param from the {@link #origin} the cells are relative to.
+   */
+  private void restore(final List<Point> liveCells, final Point from) {
+    if (liveCells.isEmpty()) {
+      return;
+    }
+    int low = Integer.MAX_VALUE;
+    int high = Integer.MIN_VALUE;
+    for (Point p : liveCells) {
+      low = Math.min(low, Math.min(p.getX() - from.getX(),
+          p.getY() - from.getY()));
+      high = Math.max(high, Math.max(p.getX() - from.getX(),
+          p.getY() - from.getY()));
+    }
+    while (growing && (low + origin.getX() < 0
+        || high + origin.getX() >= board.getWidth())) {
+      grow();
+    }
+
+    int dx = origin.getX() - from.getX();
+    int dy = origin.getY() - from.getY();
+    for (Point q : liveCells) {
+      Point p = new Point(q.getX() + dx, q.getY() + dy);
+      Resident resident = findResident(p);
+      if (resident != null) {
+        resident.setAlive(true);
+        resident.setWillBeAlive(true);
+        board.markActive(p.getX(), p.getY());
+      }
+    }
+  }
+
+  /**
+   * Read the cells in a file the user picks. The file is read without
+   * holding the universe's lock, so the clock isn't held up by the dialog
+   * or the disk.
+   *
+   * @return the cells, relative to the {@link #ORIGIN}.
    * @throws IOException
    */
-  public void doLoad() throws IOException {
+  private Storable read() throws IOException {
     FileInputStream in = new FileInputStream(
         Files.userSelected(".", ".life", "Life File", "Load"));
 
-    clock.stop();    // stop the game and
-    outermostCell.clear();      // clear the board.
-
-    Storable memento = outermostCell.createMemento();
+    Storable memento;
+    synchronized (this) {
+      // Loading replaces the board's cells with the file's.
+      memento = getOutermostCell().createMemento();
+    }
     memento.load(in);
-    outermostCell.transfer(memento, new Point(0, 0), Cell.LOAD);
 
     in.close();
-    update();
+    return memento;
+  }
+
+  /**
+   * @throws IOException
+   */
+  public void doLoad() throws IOException {
+    Storable memento = read();
+
+    synchronized (this) {
+      clock.stop();    // stop the game and
+      build();
+      resume();
+      outermostCell.clear();      // clear the board.
+      engine.reset();
+
+      restore(memento, ORIGIN);
+      generation = 0;
+      forgetCycle();
+      update();
+    }
   }
 
   /**
@@ -98,46 +1006,59 @@ public class Universe implements Observable {
     FileOutputStream out = new FileOutputStream(
         Files.userSelected(".", ".life", "Life File", "Write"));
 
-    clock.stop();    // stop the game
+    Storable memento;
+    synchronized (this) {
+      clock.stop();    // stop the game
+      build();
 
-    Storable memento = outermostCell.createMemento();
-    outermostCell.transfer(memento, new Point(0, 0), Cell.STORE);
+      memento = outermostCell.createMemento();
+      outermostCell.transfer(memento,
+          new Point(-origin.getX(), -origin.getY()), Cell.STORE);
+    }
     memento.flush(out);
 
     out.close();
   }
 
   /**
+   * Go back one generation. It can be {@link #redo redone} until the
+   * board moves on or is edited.
    *
    * @throws IOException
    */
-  public void doRollback() throws IOException {
-    if(!pastTickStore.isEmpty() && pastTickStore.size() > 1) {
-      outermostCell.clear();
-      outermostCell.transfer(pastTickStore.pop(), new Point(0, 0), Cell.LOAD);
-      update();
+  public synchronized void doRollback() throws IOException {
+    build();
+    int index = cursor < 0 ? history.size() - 1 : cursor - 1;
+    if (index < 0) {
+      return;
     }
+    if (cursor < 0) {
+      // Keep the live generation so that it can be redone.
+      remember();
+    }
+    show(index);
   }
 
   public void doOverlapLoad() throws IOException {
-    FileInputStream in = new FileInputStream(
-        Files.userSelected(".", ".life", "Life File", "Load"));
+    Storable memento = read();
 
-    clock.stop();    // stop the game and
-
-    Storable memento = outermostCell.createMemento();
-    memento.load(in);
-    outermostCell.transfer(memento, new Point(0, 0), Cell.LOAD);
+    synchronized (this) {
+      clock.stop();    // stop the game and
+      build();
+      resume();
 
-    in.close();
-    update();
+      restore(memento, ORIGIN);
+      forgetCycle();
+      update();
+    }
   }
 
   /**
    * @return total cell size
    */
   public int widthInCells() {
-    return outermostCell.widthInCells();
+    Fork f = pending;
+    return f != null ? f.cells.widthInCells() : outermostCell.widthInCells();
   }
 
   /**
@@ -166,4 +1087,34 @@ public class Universe implements Observable {
     observers.remove(observer);
   }
 
+  /**
+   * What a {@link #fork} builds its board from.
+   */
+  private static final class Fork {
+
+    /**
+     * A neighborhood of the shape to build.
+     */
+    private final Neighborhood prototype;
+    /**
+     * The cells to bring to life.
+     */
+    private final Snapshot cells;
+    /**
+     *
+     */
+    private final Rule rule;
+    /**
+     *
+     */
+    private final Boundary boundary;
+
+    private Fork(final Neighborhood p, final Snapshot c, final Rule r,
+        final Boundary b) {
+      this.prototype = p;
+      this.cells = c;
+      this.rule = r;
+      this.boundary = b;
+    }
+  }
 }
@@ -0,0 +1,205 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Snapshot;
+import lombok.Getter;
+
+/**
+ * A change-driven engine. A cell can only change state if it or one of its
+ * neighbors changed in the previous generation, so this engine keeps the set
+ * of cells that changed in the last transition, plus their neighbors, and
+ * asks only those cells to figure their next state. Only the cells that
+ * actually change are transitioned. On a mostly quiescent board the work per
+ * generation is proportional to the activity, not to the area.
+ * <p>
+ * Cells edited on the board between generations (clicks, loads, clears) are
+ * picked up in {@link #load}, which compares with the state the engine last
+ * saw only the cells in the blocks that changed since (see
+ * {@link Board#changedSince}), so an unedited board costs nothing. Every
+ * cell is evaluated once when the board, its rule or its boundary changes,
+ * since under a B0 rule even a cell in an empty region can change.
+ */
+
+public final class ActiveSetEngine implements Engine {
+
+  /**
+   *
+   */
+  private Board board;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private Rule rule;
+  /**
+   *
+   */
+  private Boundary boundary;
+  /**
+   * The state of every cell as of the end of the last generation.
+   */
+  private boolean[] known = new boolean[0];
+  /**
+   * A snapshot of the board taken when it was the same as {@link #known},
+   * or null.
+   */
+  private Snapshot synced;
+  /**
+   * Cells to evaluate in the next generation.
+   */
+  private int[] active = new int[0];
+  /**
+   *
+   */
+  private int activeCount;
+  /**
+   * True for the cells that are in {@link #active}.
+   */
+  private boolean[] queued = new boolean[0];
+  /**
+   * Cells that change state in the current generation.
+   */
+  private int[] changed = new int[0];
+  /**
+   *
+   */
+  private int changedCount;
+  /**
+   * Number of cells evaluated by the last call to step().
+   */
+  @Getter
+  private int evaluatedCount;
+  /**
+   * Number of cells compared with their known state by the last call to
+   * load().
+   */
+  @Getter
+  private int comparedCount;
+
+  @Override
+  public void load(final Board b) {
+    if (board != b) {
+      board = b;
+      width = b.getWidth();
+      height = b.getHeight();
+      int size = width * height;
+      known = new boolean[size];
+      active = new int[size];
+      queued = new boolean[size];
+      changed = new int[size];
+      activeCount = 0;
+      rule = null;
+      synced = null;
+    }
+    if (!board.getRule().equals(rule) || board.getBoundary() != boundary) {
+      rule = board.getRule();
+      boundary = board.getBoundary();
+      for (int i = 0; i < known.length; ++i) {
+        if (!queued[i]) {
+          queued[i] = true;
+          active[activeCount++] = i;
+        }
+      }
+    }
+
+    int[] edited = board.changedSince(synced);
+    comparedCount = edited == null ? known.length : edited.length;
+    if (edited == null) {
+      for (int i = 0; i < known.length; ++i) {
+        pickUp(i);
+      }
+    } else {
+      // Cells the engine changed itself since are already known.
+      for (int index : edited) {
+        pickUp(index);
+      }
+    }
+    synced = board.snapshot();
+  }
+
+  /**
+   * Queue a cell if it was edited.
+   *
+   * @param index y * width + x of the cell.
+   */
+  private void pickUp(final int index) {
+    boolean alive = board.isAlive(index);
+    if (alive != known[index]) {
+      known[index] = alive;
+      activate(index);
+    }
+  }
+
+  @Override
+  public boolean step() {
+    evaluatedCount = activeCount;
+    changedCount = 0;
+    for (int i = 0; i < activeCount; ++i) {
+      int index = active[i];
+      queued[index] = false;
+      if (board.getResident(index).figureNextState()) {
+        changed[changedCount++] = index;
+      }
+    }
+    activeCount = 0;
+
+    board.commit(changed, changedCount);
+    for (int i = 0; i < changedCount; ++i) {
+      int index = changed[i];
+      known[index] = !known[index];
+      activate(index);
+    }
+    return changedCount > 0;
+  }
+
+  @Override
+  public void store(final Board b) {
+    // The changed cells were transitioned in place by step(), so the next
+    // load() only needs to look for edits made after this.
+    synced = board.snapshot();
+  }
+
+  /**
+   * @param b
+   * @return true for all but open boards: the board wires the cells' neighbors.
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b != Boundary.OPEN;
+  }
+
+  /**
+   * Queue a cell and its neighbors for evaluation in the next generation.
+   *
+   * @param index y * width + x of the cell.
+   */
+  private void activate(final int index) {
+    int x = index % width;
+    int y = index / width;
+    for (int dy = -1; dy <= 1; ++dy) {
+      int neighborY = boundary.wrap(y + dy, height);
+      if (neighborY < 0) {
+        continue;
+      }
+      for (int dx = -1; dx <= 1; ++dx) {
+        int neighborX = boundary.wrap(x + dx, width);
+        if (neighborX < 0) {
+          continue;
+        }
+        int neighbor = neighborY * width + neighborX;
+        if (!queued[neighbor]) {
+          queued[neighbor] = true;
+          active[activeCount++] = neighbor;
+        }
+      }
+    }
+  }
+}
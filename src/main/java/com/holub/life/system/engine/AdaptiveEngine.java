@@ -0,0 +1,185 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An engine that runs either a dense {@link BitBoardEngine} or a sparse,
+ * clipped {@link SparseEngine}, whichever is cheaper for the board at hand.
+ * The bit board's time and memory are proportional to the area of the
+ * board, the sparse engine's to the number of 8x8 chunks with live cells
+ * in them. Every few generations the population and activity are measured,
+ * and the {@link AdaptivePolicy} decides from both whether to switch.
+ * Boards the sparse engine can't run (B0 rules, or edges that aren't dead)
+ * are always run dense.
+ * <p>
+ * A switch goes through the board: the running engine stores its
+ * generation and the other one loads it, so nothing is lost, even in the
+ * middle of a run of steps between a {@link #load} and a {@link #store}.
+ */
+
+public final class AdaptiveEngine implements Engine {
+
+  /**
+   *
+   */
+  private final BitBoardEngine dense = new BitBoardEngine();
+  /**
+   *
+   */
+  private final SparseEngine sparse = new SparseEngine(true);
+  /**
+   * The engine that computes the generations, dense or sparse.
+   */
+  @Getter
+  private Engine current = sparse;
+  /**
+   * The policy to decide on at the end of the next sample.
+   */
+  @Getter @Setter
+  private AdaptivePolicy policy;
+  /**
+   * The board last loaded, which a switch goes through.
+   */
+  private Board board;
+  /**
+   * Generations stepped in the current sample.
+   */
+  private int sampled;
+  /**
+   * Cells changed in the current sample.
+   */
+  private long changes;
+  /**
+   * Fraction of the board's cells that changed per generation in the last
+   * sample.
+   */
+  @Getter
+  private double activity;
+  /**
+   * Fraction of the board's cells that were alive at the end of the last
+   * sample.
+   */
+  @Getter
+  private double populationDensity;
+  /**
+   * Number of times the engine has switched.
+   */
+  @Getter
+  private int switchCount;
+
+  public AdaptiveEngine() {
+    this(AdaptivePolicy.DEFAULT);
+  }
+
+  /**
+   * @param p when to switch.
+   */
+  public AdaptiveEngine(final AdaptivePolicy p) {
+    this.policy = p;
+  }
+
+  /**
+   * @return true if the dense engine is running.
+   */
+  public boolean isDense() {
+    return current == dense;
+  }
+
+  @Override
+  public void load(final Board b) {
+    board = b;
+    if (!isDense() && !canRunSparse()) {
+      current = dense;
+      ++switchCount;
+    }
+    current.load(b);
+  }
+
+  /**
+   * @return true if the sparse engine can run the board.
+   */
+  private boolean canRunSparse() {
+    return sparse.supports(board.getRule())
+        && sparse.supports(board.getBoundary());
+  }
+
+  @Override
+  public boolean step() {
+    boolean changed = current.step();
+    changes += isDense() ? dense.getChangedCount() : sparse.getChangedCount();
+    if (++sampled >= policy.getSampleGenerations()) {
+      sample();
+    }
+    return changed;
+  }
+
+  /**
+   * Measure the sample just finished and switch engines if the policy says
+   * so.
+   */
+  private void sample() {
+    double area = (double) board.getWidth() * board.getHeight();
+    activity = changes / (area * sampled);
+    populationDensity = (isDense()
+        ? dense.getPopulation() : sparse.getPopulation()) / area;
+    sampled = 0;
+    changes = 0;
+    if (isDense() && activity < policy.getSparseBelow()
+        && populationDensity <= policy.getSparsePopulationBelow()
+        && canRunSparse()) {
+      switchTo(sparse);
+    } else if (!isDense() && activity > policy.getDenseAbove()) {
+      switchTo(dense);
+    }
+  }
+
+  /**
+   * @param e the engine to continue with. It picks up the current
+   * generation from the board.
+   */
+  private void switchTo(final Engine e) {
+    current.store(board);
+    e.load(board);
+    current = e;
+    ++switchCount;
+  }
+
+  @Override
+  public void store(final Board b) {
+    current.store(b);
+  }
+
+  /**
+   * @param rule
+   * @return true if the dense engine can run the rule.
+   */
+  @Override
+  public boolean supports(final Rule rule) {
+    return dense.supports(rule);
+  }
+
+  /**
+   * @param boundary
+   * @return true if the dense engine can run the boundary.
+   */
+  @Override
+  public boolean supports(final Boundary boundary) {
+    return dense.supports(boundary);
+  }
+
+  @Override
+  public void reset() {
+    dense.reset();
+    sparse.reset();
+  }
+
+  @Override
+  public String toString() {
+    return current.getClass().getSimpleName() + String.format(
+        " (activity %.2f%%, population %.1f%%; %s)", activity * 100,
+        populationDensity * 100, policy);
+  }
+}
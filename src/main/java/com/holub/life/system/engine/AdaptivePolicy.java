@@ -0,0 +1,98 @@
+package com.holub.life.system.engine;
+
+import lombok.Getter;
+
+/**
+ * When an {@link AdaptiveEngine} switches between its dense and sparse
+ * engines. Activity is the fraction of the board's cells that change state
+ * per generation, averaged over a sample of generations. The engine goes
+ * dense when activity rises above one threshold and sparse again only when
+ * it falls below a lower one, so a board whose activity hovers around
+ * either threshold doesn't switch back and forth. Nor does it go sparse
+ * while the population density (the fraction of cells alive) is above a
+ * third threshold: a crowded board that's quiet for a sample usually
+ * starts up again, and every switch costs the sparse engine a pass over
+ * what changed while the dense one ran.
+ */
+
+public final class AdaptivePolicy {
+
+  /**
+   * Go dense above 2% activity, sparse below 0.5% with at most 25% of the
+   * cells alive, sampling every 16 generations.
+   */
+  public static final AdaptivePolicy DEFAULT =
+      new AdaptivePolicy(16, 0.02, 0.005, 0.25);
+
+  /**
+   * Number of generations in each sample.
+   */
+  @Getter
+  private final int sampleGenerations;
+  /**
+   * Switch to the dense engine when activity rises above this.
+   */
+  @Getter
+  private final double denseAbove;
+  /**
+   * Switch to the sparse engine when activity falls below this.
+   */
+  @Getter
+  private final double sparseBelow;
+  /**
+   * Don't switch to the sparse engine while the population density is
+   * above this.
+   */
+  @Getter
+  private final double sparsePopulationBelow;
+
+  /**
+   * A policy that goes sparse whatever the population density.
+   *
+   * @param generations number of generations in each sample.
+   * @param dense switch to the dense engine above this activity.
+   * @param sparse switch to the sparse engine below this activity.
+   * @throws IllegalArgumentException if there's no sample, or the sparse
+   * threshold isn't below the dense one.
+   */
+  public AdaptivePolicy(final int generations, final double dense,
+      final double sparse) {
+    this(generations, dense, sparse, 1);
+  }
+
+  /**
+   * @param generations number of generations in each sample.
+   * @param dense switch to the dense engine above this activity.
+   * @param sparse switch to the sparse engine below this activity.
+   * @param population but only at or below this population density.
+   * @throws IllegalArgumentException if there's no sample, the sparse
+   * threshold isn't below the dense one, or the population threshold isn't
+   * positive.
+   */
+  public AdaptivePolicy(final int generations, final double dense,
+      final double sparse, final double population) {
+    if (generations < 1) {
+      throw new IllegalArgumentException(
+          "a sample needs at least one generation");
+    }
+    if (!(sparse < dense)) {
+      throw new IllegalArgumentException("sparse threshold " + sparse
+          + " must be below dense threshold " + dense);
+    }
+    if (!(population > 0)) {
+      throw new IllegalArgumentException("population threshold "
+          + population + " must be positive");
+    }
+    this.sampleGenerations = generations;
+    this.denseAbove = dense;
+    this.sparseBelow = sparse;
+    this.sparsePopulationBelow = population;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("dense above %.1f%%, sparse below %.1f%%"
+        + " with at most %.0f%% alive", denseAbove * 100, sparseBelow * 100,
+        sparsePopulationBelow * 100);
+  }
+}
@@ -0,0 +1,314 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.Swar;
+import com.holub.life.model.cell.Snapshot;
+import lombok.Getter;
+
+/**
+ * An engine that stores the board as rows of bits packed into
+ * <code>long</code> words and computes 64 cells at a time with word-parallel
+ * (SWAR) adder logic. Cell (x, y) is bit <code>x % 64</code> of word
+ * <code>y * wordsPerRow + x / 64</code>. What lies past the edges follows the
+ * board's {@link Boundary}: the rows above and below every row, and the
+ * columns that stand in for the ones left and right of the board, are
+ * looked up once in {@link #load}, so stepping a word never tests for the
+ * edge of the board.
+ * <p>
+ * Two buffers are kept: {@link #step} reads the current generation from one
+ * and writes the next generation into the other, then swaps them. A copy
+ * of the generation that was loaded is kept as well, so that
+ * {@link #store} writes back only the cells that changed, and a
+ * {@link Snapshot} of the board as of the last store, so that
+ * {@link #load} reads only the cells edited since.
+ */
+
+public final class BitBoardEngine implements Engine {
+
+  /**
+   *
+   */
+  private static final int BITS_PER_WORD = 64;
+  /**
+   *
+   */
+  private static final int ADDRESS_BITS = 6;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private int wordsPerRow;
+  /**
+   * Mask of the bits of the last word of a row that are on the board.
+   */
+  private long lastWordMask;
+  /**
+   *
+   */
+  private long[] current = new long[0];
+  /**
+   *
+   */
+  private long[] next = new long[0];
+  /**
+   * The generation as of the last load(), which is what's on the board until
+   * store().
+   */
+  private long[] loaded = new long[0];
+  /**
+   * A snapshot of the board when current was last the same as the board, or
+   * null if it may not be.
+   */
+  private Snapshot synced;
+  /**
+   *
+   */
+  private Rule rule = Rule.CONWAY;
+  /**
+   * The row that stands in for the one above each row, or -1 if it's dead.
+   */
+  private int[] rowAbove = new int[0];
+  /**
+   * The row that stands in for the one below each row, or -1 if it's dead.
+   */
+  private int[] rowBelow = new int[0];
+  /**
+   * The column that stands in for the one left of the board, or -1.
+   */
+  private int westColumn;
+  /**
+   * The column that stands in for the one right of the board, or -1.
+   */
+  private int eastColumn;
+  /**
+   * Position of the column right of the board within the last word of a
+   * row, or 0 if it's bit 0 of the next word.
+   */
+  private int tail;
+  /**
+   * Number of cells that changed state in the last call to step().
+   */
+  @Getter
+  private int changedCount;
+
+  @Override
+  public void load(final Board board) {
+    resize(board.getWidth(), board.getHeight());
+    rule = board.getRule();
+    Boundary boundary = board.getBoundary();
+    if (rowAbove.length != height) {
+      rowAbove = new int[height];
+      rowBelow = new int[height];
+    }
+    for (int y = 0; y < height; ++y) {
+      rowAbove[y] = boundary.wrap(y - 1, height);
+      rowBelow[y] = boundary.wrap(y + 1, height);
+    }
+    westColumn = boundary.wrap(-1, width);
+    eastColumn = boundary.wrap(width, width);
+    int[] edited = board.changedSince(synced);
+    if (edited == null) {
+      for (int y = 0; y < height; ++y) {
+        for (int x = 0; x < width; ++x) {
+          load(board, x, y);
+        }
+      }
+    } else {
+      for (int index : edited) {
+        load(board, index % width, index / width);
+      }
+    }
+    System.arraycopy(current, 0, loaded, 0, current.length);
+    synced = board.snapshot();
+  }
+
+  /**
+   * Copy the state of the cell at (x, y) into the current generation.
+   *
+   * @param board
+   * @param x
+   * @param y
+   */
+  private void load(final Board board, final int x, final int y) {
+    int i = y * wordsPerRow + (x >>> ADDRESS_BITS);
+    if (board.isAlive(x, y)) {
+      current[i] |= 1L << x;
+    } else {
+      current[i] &= ~(1L << x);
+    }
+  }
+
+  /**
+   * Reallocate (and clear) the buffers if the board changed size. The
+   * buffers of a board of the same size are kept, as is what's in them.
+   *
+   * @param w
+   * @param h
+   */
+  private void resize(final int w, final int h) {
+    width = w;
+    height = h;
+    wordsPerRow = (w + BITS_PER_WORD - 1) >>> ADDRESS_BITS;
+    tail = w & (BITS_PER_WORD - 1);
+    lastWordMask = tail == 0 ? -1L : (1L << tail) - 1;
+    if (current.length != wordsPerRow * h) {
+      current = new long[wordsPerRow * h];
+      next = new long[wordsPerRow * h];
+      loaded = new long[wordsPerRow * h];
+      synced = null;
+    }
+  }
+
+  @Override
+  public boolean step() {
+    int changes = 0;
+    int last = wordsPerRow - 1;
+    for (int y = 0; y < height; ++y) {
+      int row = y * wordsPerRow;
+      int above = rowAbove[y];
+      int below = rowBelow[y];
+      // The cells left and right of the three rows, as single bits.
+      long westNorth = cellAt(above, westColumn);
+      long west = cellAt(y, westColumn);
+      long westSouth = cellAt(below, westColumn);
+      long eastNorth = cellAt(above, eastColumn);
+      long east = cellAt(y, eastColumn);
+      long eastSouth = cellAt(below, eastColumn);
+
+      for (int i = 0; i < wordsPerRow; ++i) {
+        long n = wordAt(above, i);
+        long center = current[row + i];
+        long s = wordAt(below, i);
+        long nw = i == 0 ? westNorth << (BITS_PER_WORD - 1)
+            : wordAt(above, i - 1);
+        long w = i == 0 ? west << (BITS_PER_WORD - 1) : current[row + i - 1];
+        long sw = i == 0 ? westSouth << (BITS_PER_WORD - 1)
+            : wordAt(below, i - 1);
+        long ne;
+        long e;
+        long se;
+        if (i < last) {
+          ne = wordAt(above, i + 1);
+          e = current[row + i + 1];
+          se = wordAt(below, i + 1);
+        } else if (tail == 0) {
+          ne = eastNorth;
+          e = east;
+          se = eastSouth;
+        } else {
+          // The column right of the board is inside the last word.
+          ne = 0L;
+          e = 0L;
+          se = 0L;
+          n |= eastNorth << tail;
+          center |= east << tail;
+          s |= eastSouth << tail;
+        }
+        long result = nextWord(rule, nw, n, ne, w, center, e, sw, s, se)
+            & (i == last ? lastWordMask : -1L);
+        changes += Long.bitCount(result ^ current[row + i]);
+        next[row + i] = result;
+      }
+    }
+
+    long[] swap = current;
+    current = next;
+    next = swap;
+    changedCount = changes;
+    return changes > 0;
+  }
+
+  /**
+   * @return number of live cells in the current generation.
+   */
+  public int getPopulation() {
+    int population = 0;
+    for (long word : current) {
+      population += Long.bitCount(word);
+    }
+    return population;
+  }
+
+  /**
+   * @param y row number, or -1 for a dead row.
+   * @param i word within the row.
+   * @return the word, or 0 if the row is dead.
+   */
+  private long wordAt(final int y, final int i) {
+    return y < 0 ? 0L : current[y * wordsPerRow + i];
+  }
+
+  /**
+   * @param y row number, or -1 for a dead row.
+   * @param x column number, or -1 for a dead column.
+   * @return 1 if the cell is alive, otherwise 0.
+   */
+  private long cellAt(final int y, final int x) {
+    if (y < 0 || x < 0) {
+      return 0L;
+    }
+    return (current[y * wordsPerRow + (x >>> ADDRESS_BITS)] >>> x) & 1L;
+  }
+
+  /**
+   * Compute the next state of the 64 cells in the center word. Each argument
+   * is a word of the current generation, named by its position relative to
+   * the center word (n = the row above, s = the row below, w and e are the
+   * adjacent words in the same row).
+   *
+   * @param r the rule to apply.
+   * @return the next generation of <code>center</code>.
+   */
+  static long nextWord(final Rule r, final long nw, final long n, final long ne,
+      final long w, final long center, final long e,
+      final long sw, final long s, final long se) {
+    // Line up the eight neighbors of every cell with the cell itself. Bit x
+    // of "west" holds the neighbor at x - 1; the carry comes in from the
+    // adjacent word.
+    long northWest = (n << 1) | (nw >>> (BITS_PER_WORD - 1));
+    long northEast = (n >>> 1) | (ne << (BITS_PER_WORD - 1));
+    long west = (center << 1) | (w >>> (BITS_PER_WORD - 1));
+    long east = (center >>> 1) | (e << (BITS_PER_WORD - 1));
+    long southWest = (s << 1) | (sw >>> (BITS_PER_WORD - 1));
+    long southEast = (s >>> 1) | (se << (BITS_PER_WORD - 1));
+
+    return Swar.next(r, center, northWest, n, northEast, west, east,
+        southWest, s, southEast);
+  }
+
+  @Override
+  public void store(final Board board) {
+    board.commit(loaded, current, wordsPerRow);
+    System.arraycopy(current, 0, loaded, 0, current.length);
+    synced = board.snapshot();
+  }
+
+  /**
+   * The cells moved on the board, so the whole board is read on the next
+   * load().
+   *
+   * @param dx
+   * @param dy
+   */
+  @Override
+  public void moveOrigin(final int dx, final int dy) {
+    synced = null;
+  }
+
+  /**
+   * @param b
+   * @return true for all but open boards: the edges are resolved in load().
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b != Boundary.OPEN;
+  }
+}
@@ -0,0 +1,673 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.Swar;
+import com.holub.life.model.cell.Cell;
+import com.holub.life.model.cell.Neighborhood;
+import com.holub.life.model.cell.Resident;
+import com.holub.life.model.cell.Snapshot;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * A flat, coordinate-addressed view of the {@link Resident} objects that make
+ * up a (possibly deeply nested) {@link Neighborhood}. The composite is walked
+ * once, when the board is created, so that an {@link Engine} can read and
+ * write cells by (x, y) without going through the composite on every access.
+ * The Neighborhood remains the owner of the cells; the board only holds
+ * references to them.
+ * <p>
+ * If the composite is made of packed neighborhoods (see
+ * {@link Neighborhood#createPacked()}), the board holds the packed blocks
+ * instead, reads and writes their bits directly, and hands out transient
+ * Resident views from {@link #getResident}.
+ */
+
+public final class Board {
+
+  /**
+   * Stands in for every neighbor that's off the edge of the board. It's
+   * never alive and never handed out, so nothing can bring it to life.
+   */
+  private static final Resident OUTSIDE = new Resident();
+  /**
+   *
+   */
+  private static final int NEIGHBOR_COUNT = 8;
+  /**
+   * Golden-ratio increment of the SplitMix64 generator behind
+   * {@link #hash}.
+   */
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  /**
+   * The outermost neighborhood this board is a view of.
+   */
+  @Getter
+  private final Neighborhood outermostCell;
+  /**
+   * Width (and height---the board is square) in cells.
+   */
+  @Getter
+  private final int width;
+  /**
+   * True if the innermost neighborhoods are packed.
+   */
+  @Getter
+  private final boolean packed;
+  /**
+   * Residents in row-major order: index = y * width + x. Null if packed.
+   */
+  private final Resident[] residents;
+  /**
+   * The innermost neighborhood that contains each resident, in the same
+   * order as {@link #residents}. Null if packed.
+   */
+  private final Neighborhood[] blocks;
+  /**
+   * Packed only: the 8x8 blocks, in row-major order.
+   */
+  private final Neighborhood[] leaves;
+  /**
+   * Packed only: the number of blocks along each side of the board.
+   */
+  private final int blocksPerRow;
+  /**
+   * The neighborhood that contains each neighborhood (except the outermost).
+   */
+  private final Map<Neighborhood, Neighborhood> parents =
+      new IdentityHashMap<>();
+  /**
+   * Neighborhoods marked active by the last partial {@link #commit(int[],
+   * int)}.
+   */
+  private Set<Neighborhood> activeBlocks = Collections.emptySet();
+  /**
+   * The snapshot {@link #runningHash} is the hash of, or null.
+   */
+  private Snapshot hashed;
+  /**
+   *
+   */
+  private long runningHash;
+  /**
+   * The rule every cell on the board lives by.
+   */
+  @Getter
+  private Rule rule = Rule.CONWAY;
+  /**
+   * What lies past the edges of the board.
+   */
+  @Getter
+  private Boundary boundary = Boundary.DEAD;
+
+  /**
+   * @param outermost the composite to view.
+   */
+  public Board(final Neighborhood outermost) {
+    this.outermostCell = outermost;
+    this.width = outermost.widthInCells();
+    Cell innermost = outermost;
+    while (innermost instanceof Neighborhood
+        && !((Neighborhood) innermost).isPacked()) {
+      innermost = ((Neighborhood) innermost).getGrid()[0][0];
+    }
+    this.packed = innermost instanceof Neighborhood;
+    if (packed) {
+      this.residents = null;
+      this.blocks = null;
+      this.blocksPerRow = width / Swar.BLOCK_SIZE;
+      this.leaves = new Neighborhood[blocksPerRow * blocksPerRow];
+      collect(outermost, null, 0, 0);
+    } else {
+      this.residents = new Resident[width * width];
+      this.blocks = new Neighborhood[width * width];
+      this.blocksPerRow = 0;
+      this.leaves = null;
+      collect(outermost, null, 0, 0);
+      wireNeighbors();
+    }
+    wireAdjacent();
+  }
+
+  /**
+   * Give every neighborhood references to the eight neighborhoods of the same
+   * size around it, one level of the composite at a time, so that quiescent
+   * neighborhoods can be skipped (and packed blocks can read their
+   * neighbors' cells).
+   */
+  private void wireAdjacent() {
+    Neighborhood[][] level = {{outermostCell}};
+    while (true) {
+      wireLevel(level);
+      Neighborhood first = level[0][0];
+      if (first.isPacked()
+          || !(first.getGrid()[0][0] instanceof Neighborhood)) {
+        return;
+      }
+      int gridSize = first.getGridSize();
+      int size = level.length * gridSize;
+      Neighborhood[][] below = new Neighborhood[size][size];
+      for (int row = 0; row < level.length; ++row) {
+        for (int column = 0; column < level.length; ++column) {
+          Cell[][] grid = level[row][column].getGrid();
+          for (int r = 0; r < gridSize; ++r) {
+            for (int c = 0; c < gridSize; ++c) {
+              below[row * gridSize + r][column * gridSize + c] =
+                  (Neighborhood) grid[r][c];
+            }
+          }
+        }
+      }
+      level = below;
+    }
+  }
+
+  /**
+   * @param level a square grid of neighborhoods of the same size.
+   */
+  private void wireLevel(final Neighborhood[][] level) {
+    int size = level.length;
+    // A mirrored neighborhood is the neighborhood itself, which doesn't
+    // need to be wired to itself.
+    Boundary wrap = boundary == Boundary.TORUS ? boundary : Boundary.DEAD;
+    for (int row = 0; row < size; ++row) {
+      for (int column = 0; column < size; ++column) {
+        Neighborhood[] adjacent = new Neighborhood[NEIGHBOR_COUNT];
+        int i = 0;
+        for (int dy = -1; dy <= 1; ++dy) {
+          for (int dx = -1; dx <= 1; ++dx) {
+            if (dx == 0 && dy == 0) {
+              continue;
+            }
+            int r = wrap.wrap(row + dy, size);
+            int c = wrap.wrap(column + dx, size);
+            if (r >= 0 && c >= 0) {
+              adjacent[i] = level[r][c];
+            }
+            ++i;
+          }
+        }
+        level[row][column].setAdjacent(adjacent);
+      }
+    }
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param x
+   * @param y
+   * @return the block that holds the cell at (x, y).
+   */
+  private Neighborhood leafAt(final int x, final int y) {
+    return leaves[(y / Swar.BLOCK_SIZE) * blocksPerRow
+        + x / Swar.BLOCK_SIZE];
+  }
+
+  /**
+   * Packed only.
+   *
+   * @param x
+   * @param y
+   * @return the bit of the cell at (x, y) within its block.
+   */
+  private static int bitAt(final int x, final int y) {
+    return (y % Swar.BLOCK_SIZE) * Swar.BLOCK_SIZE + x % Swar.BLOCK_SIZE;
+  }
+
+  /**
+   * Give every resident direct references to its eight neighbors, in
+   * row-major order around it.
+   */
+  private void wireNeighbors() {
+    for (int y = 0; y < width; ++y) {
+      for (int x = 0; x < width; ++x) {
+        Resident[] neighbors = new Resident[NEIGHBOR_COUNT];
+        int i = 0;
+        for (int dy = -1; dy <= 1; ++dy) {
+          for (int dx = -1; dx <= 1; ++dx) {
+            if (dx != 0 || dy != 0) {
+              neighbors[i++] = residentAt(x + dx, y + dy);
+            }
+          }
+        }
+        residents[y * width + x].setNeighbors(neighbors);
+      }
+    }
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the resident at (x, y), which may be one cell off the board:
+   * the resident that stands in for it under the board's boundary, or
+   * {@link #OUTSIDE} if it's dead.
+   */
+  private Resident residentAt(final int x, final int y) {
+    int column = boundary.wrap(x, width);
+    int row = boundary.wrap(y, width);
+    if (column < 0 || row < 0) {
+      return OUTSIDE;
+    }
+    return residents[row * width + column];
+  }
+
+  /**
+   * Record every resident of the given cell, whose upper-left corner is at
+   * (x, y), in the flat array.
+   *
+   * @param cell
+   * @param parent the neighborhood that contains cell.
+   * @param x
+   * @param y
+   */
+  private void collect(final Cell cell, final Neighborhood parent,
+      final int x, final int y) {
+    if (cell instanceof Resident) {
+      residents[y * width + x] = (Resident) cell;
+      blocks[y * width + x] = parent;
+      return;
+    }
+
+    Neighborhood neighborhood = (Neighborhood) cell;
+    if (parent != null) {
+      parents.put(neighborhood, parent);
+    }
+    if (neighborhood.isPacked()) {
+      leaves[(y / Swar.BLOCK_SIZE) * blocksPerRow + x / Swar.BLOCK_SIZE] =
+          neighborhood;
+      return;
+    }
+    Cell[][] grid = neighborhood.getGrid();
+    int gridSize = neighborhood.getGridSize();
+    int subcellWidth = grid[0][0].widthInCells();
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        collect(grid[row][column], neighborhood,
+            x + column * subcellWidth, y + row * subcellWidth);
+      }
+    }
+  }
+
+  /**
+   * Change the rule of every cell on the board. Engines pick the new rule up
+   * on their next {@link Engine#load}.
+   *
+   * @param r
+   */
+  public void setRule(final Rule r) {
+    this.rule = r;
+    // Stable neighborhoods may not be stable under the new rule.
+    markAllChanged();
+    outermostCell.setRule(r);
+    for (Neighborhood neighborhood : parents.keySet()) {
+      neighborhood.setRule(r);
+    }
+    if (packed) {
+      return;
+    }
+    for (Resident resident : residents) {
+      resident.setRule(r);
+    }
+  }
+
+  /**
+   * Change what lies past the edges of the board, and rewire every cell's
+   * neighbors to match.
+   *
+   * @param b
+   * @throws IllegalArgumentException if a packed board is mirrored.
+   */
+  public void setBoundary(final Boundary b) {
+    if (packed && b == Boundary.MIRROR) {
+      throw new IllegalArgumentException(
+          "packed boards can't be mirrored");
+    }
+    this.boundary = b;
+    if (!packed) {
+      wireNeighbors();
+    }
+    wireAdjacent();
+    // Stable neighborhoods on the edge may not be stable any more.
+    markAllChanged();
+  }
+
+  /**
+   * Make sure no neighborhood is skipped as quiescent on the next step.
+   */
+  private void markAllChanged() {
+    outermostCell.markChanged();
+    for (Neighborhood neighborhood : parents.keySet()) {
+      neighborhood.markChanged();
+    }
+  }
+
+  /**
+   * @return height in cells. Always the same as the width.
+   */
+  public int getHeight() {
+    return width;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the resident at (x, y). On a packed board, a new view.
+   */
+  public Resident getResident(final int x, final int y) {
+    if (packed) {
+      return leafAt(x, y).getResident(y % Swar.BLOCK_SIZE,
+          x % Swar.BLOCK_SIZE);
+    }
+    return residents[y * width + x];
+  }
+
+  /**
+   * @param index y * width + x.
+   * @return the resident at the given index. On a packed board, a new view.
+   */
+  public Resident getResident(final int index) {
+    if (packed) {
+      return getResident(index % width, index / width);
+    }
+    return residents[index];
+  }
+
+  /**
+   * Mark every neighborhood that contains the resident at (x, y) as active,
+   * as a click or a load through the composite would have, and as changed,
+   * so that neither it nor its neighbors are skipped as quiescent.
+   *
+   * @param x
+   * @param y
+   */
+  public void markActive(final int x, final int y) {
+    for (Neighborhood block = innermostAt(x, y); block != null;
+        block = parents.get(block)) {
+      block.setAmActive(true);
+      block.markChanged();
+    }
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return true if the resident at (x, y) is currently alive.
+   */
+  public boolean isAlive(final int x, final int y) {
+    if (packed) {
+      return leafAt(x, y).isAlive(bitAt(x, y));
+    }
+    return residents[y * width + x].isAlive();
+  }
+
+  /**
+   * @param index y * width + x.
+   * @return true if the resident at the given index is currently alive.
+   */
+  public boolean isAlive(final int index) {
+    return isAlive(index % width, index / width);
+  }
+
+  /**
+   * Distance from the edge of the board to the nearest live cell, 0 if a
+   * cell on the edge is alive.
+   *
+   * @param limit
+   * @return the distance, or limit if no cell within it is alive.
+   */
+  public int margin(final int limit) {
+    Rectangle live = liveBounds();
+    if (live == null) {
+      return limit;
+    }
+    int margin = Math.min(Math.min(live.x, live.y),
+        width - Math.max(live.x + live.width, live.y + live.height));
+    return Math.min(margin, limit);
+  }
+
+  /**
+   * @return the smallest rectangle, in cells, that holds every live cell,
+   * or null if the board is empty. Only the edges of the neighborhoods'
+   * live boxes are looked into.
+   */
+  public Rectangle liveBounds() {
+    int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+    outermostCell.includeLiveCells(0, 0, bounds);
+    if (bounds[2] < 0) {
+      return null;
+    }
+    return new Rectangle(bounds[0], bounds[1], bounds[2] - bounds[0] + 1,
+        bounds[3] - bounds[1] + 1);
+  }
+
+  /**
+   * A Zobrist hash of the board: the XOR of a fixed pseudo-random key for
+   * every live cell. Equal boards have equal hashes; different boards
+   * almost never do. The hash is kept up to date rather than worked out
+   * again: the keys of the cells that changed since the last call, which a
+   * {@link #snapshot} finds by looking only at the blocks that changed,
+   * are XORed in. On a board that didn't change, that's nothing at all.
+   *
+   * @return the hash of the current generation, 0 for an empty board.
+   */
+  public long hash() {
+    Snapshot now = snapshot();
+    if (now == hashed) {
+      return runningHash;
+    }
+    long[] flips = hashed == null ? now.getLiveCellsByRow()
+        : now.getDifferences(hashed);
+    for (long cell : flips) {
+      runningHash ^= mix(((cell >>> 32) * width + (int) cell + 1)
+          * GOLDEN_GAMMA);
+    }
+    hashed = now;
+    return runningHash;
+  }
+
+  /**
+   * The SplitMix64 finalizer.
+   *
+   * @param z
+   * @return z with its bits thoroughly mixed.
+   */
+  private static long mix(final long z) {
+    long x = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+    return x ^ (x >>> 31);
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the innermost neighborhood that contains the cell at (x, y).
+   */
+  private Neighborhood innermostAt(final int x, final int y) {
+    return packed ? leafAt(x, y) : blocks[y * width + x];
+  }
+
+  /**
+   * Set the state that the resident at (x, y) will take on the next
+   * {@link #commit}.
+   *
+   * @param x
+   * @param y
+   * @param willBeAlive
+   */
+  public void setNextState(final int x, final int y,
+      final boolean willBeAlive) {
+    if (packed) {
+      leafAt(x, y).setWillBeAlive(bitAt(x, y), willBeAlive);
+      return;
+    }
+    residents[y * width + x].setWillBeAlive(willBeAlive);
+  }
+
+  /**
+   * Bring the neighborhoods' activity flags up to date with the next states
+   * set by {@link #setNextState}, then transition every cell to its next
+   * state. This is what the composite's own figureNextState()/transition()
+   * pair would have done, so the UI sees the same active blocks no matter
+   * which engine computed the generation.
+   *
+   * @return true if any cell changed state.
+   */
+  public boolean commit() {
+    boolean willChange = settle(outermostCell);
+    outermostCell.transition();
+    return willChange;
+  }
+
+  /**
+   * Commit a generation an engine keeps one bit per cell, in rows of
+   * <code>long</code> words (cell (x, y) is bit <code>x % 64</code> of word
+   * <code>y * wordsPerRow + x / 64</code>). Only the cells whose bits differ
+   * from the generation the engine loaded are set and transitioned, with
+   * {@link #commit(int[], int)}, so the cost is a pass over the words plus
+   * the number of changes.
+   *
+   * @param loaded the generation that's on the board.
+   * @param current the generation to put on the board.
+   * @param wordsPerRow
+   */
+  public void commit(final long[] loaded, final long[] current,
+      final int wordsPerRow) {
+    int[] indexes = new int[Long.SIZE];
+    int count = 0;
+    for (int i = 0; i < current.length; ++i) {
+      long changed = loaded[i] ^ current[i];
+      if (changed == 0L) {
+        continue;
+      }
+      int y = i / wordsPerRow;
+      int left = (i % wordsPerRow) * Long.SIZE;
+      if (count + Long.bitCount(changed) > indexes.length) {
+        indexes = Arrays.copyOf(indexes, 2 * indexes.length + Long.SIZE);
+      }
+      for (; changed != 0L; changed &= changed - 1) {
+        int bit = Long.numberOfTrailingZeros(changed);
+        setNextState(left + bit, y, (current[i] & (1L << bit)) != 0);
+        indexes[count++] = y * width + left + bit;
+      }
+    }
+    commit(indexes, count);
+  }
+
+  /**
+   * @return a snapshot of the board. Only the blocks that changed since
+   * the last one was taken are looked at.
+   */
+  public Snapshot snapshot() {
+    return outermostCell.snapshot(null);
+  }
+
+  /**
+   * Find the cells edited since an engine last synchronized with the
+   * board, by comparing a {@link #snapshot} taken then with one taken now.
+   * The cost is proportional to the number of blocks that changed, not to
+   * the size of the board.
+   *
+   * @param since a snapshot of the board, or null.
+   * @return the cells (y * width + x) whose state differs from the
+   * snapshot's, or null if there's no snapshot or it's of a board of
+   * another size.
+   */
+  public int[] changedSince(final Snapshot since) {
+    if (since == null || since.widthInCells() != width) {
+      return null;
+    }
+    long[] differences = snapshot().getDifferences(since);
+    int[] indexes = new int[differences.length];
+    for (int i = 0; i < differences.length; ++i) {
+      indexes[i] = (int) (differences[i] >>> 32) * width
+          + (int) differences[i];
+    }
+    return indexes;
+  }
+
+  /**
+   * Transition only the given residents, all of which must be about to
+   * change state, and update the activity flags of just the neighborhoods
+   * that contain them (or that contained the residents passed to the
+   * previous call). Use this instead of {@link #commit()} when the caller
+   * knows exactly which cells change, so that the cost is proportional to
+   * the number of changes rather than to the size of the board.
+   *
+   * @param indexes residents (y * width + x) that change state.
+   * @param count number of valid entries in indexes.
+   */
+  public void commit(final int[] indexes, final int count) {
+    Set<Neighborhood> changedBlocks =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < count; ++i) {
+      for (Neighborhood block =
+          innermostAt(indexes[i] % width, indexes[i] / width);
+          block != null && changedBlocks.add(block);
+          block = parents.get(block)) {
+        // Every enclosing neighborhood is active, too.
+      }
+    }
+
+    for (Neighborhood block : activeBlocks) {
+      if (!changedBlocks.contains(block)) {
+        block.updateActivity(false);
+      }
+    }
+    for (Neighborhood block : changedBlocks) {
+      block.updateActivity(true);
+      block.forgetLiveBox();
+    }
+    activeBlocks = changedBlocks;
+
+    for (int i = 0; i < count; ++i) {
+      int x = indexes[i] % width;
+      int y = indexes[i] / width;
+      if (packed) {
+        Neighborhood leaf = leafAt(x, y);
+        leaf.setAlive(bitAt(x, y), leaf.isWillBeAlive(bitAt(x, y)));
+      } else {
+        residents[indexes[i]].transition();
+      }
+    }
+  }
+
+  /**
+   * @param cell
+   * @return true if the cell (or any subcell) will change on the next
+   * transition.
+   */
+  private boolean settle(final Cell cell) {
+    if (cell instanceof Resident) {
+      Resident resident = (Resident) cell;
+      return resident.isAlive() != resident.isWillBeAlive();
+    }
+
+    Neighborhood neighborhood = (Neighborhood) cell;
+    if (neighborhood.isPacked()) {
+      boolean willChange =
+          neighborhood.getCells() != neighborhood.getNextCells();
+      neighborhood.updateActivity(willChange);
+      return willChange;
+    }
+    Cell[][] grid = neighborhood.getGrid();
+    int gridSize = neighborhood.getGridSize();
+    boolean willChange = false;
+    for (int row = 0; row < gridSize; ++row) {
+      for (int column = 0; column < gridSize; ++column) {
+        if (settle(grid[row][column])) {
+          willChange = true;
+        }
+      }
+    }
+    neighborhood.updateActivity(willChange);
+    return willChange;
+  }
+}
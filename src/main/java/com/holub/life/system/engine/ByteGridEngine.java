@@ -0,0 +1,190 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import java.util.Arrays;
+
+/**
+ * A scalar array kernel: one byte (0 or 1) per cell, in rows padded with a
+ * dead border so that every cell has eight neighbors in the array. Stepping
+ * is a few straight-line passes over byte arrays with no branches and no
+ * calls, which is the shape of loop HotSpot's superword optimization turns
+ * into SIMD instructions on its own.
+ * <p>
+ * Each row is stepped in two passes. The first sums every cell with its
+ * left and right neighbors (a horizontal sum, kept for the three rows the
+ * current row needs). The second adds the three horizontal sums, subtracts
+ * the cell itself, and looks the result up in the rule's masks with a
+ * shift.
+ * <p>
+ * Before each step the border is filled with the cells that stand in for
+ * the ones past the edges (nothing for dead edges, the opposite edge for a
+ * torus, the edge itself for a mirror), so the passes never look at the
+ * boundary.
+ */
+
+public final class ByteGridEngine implements Engine {
+
+  /**
+   * Shift of the survival mask in {@link #rules}.
+   */
+  private static final int SURVIVAL_SHIFT = Rule.MAX_NEIGHBORS + 1;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   * Width of a padded row.
+   */
+  private int stride;
+  /**
+   * Cell (x, y) is at (y + 1) * stride + x + 1.
+   */
+  private byte[] current = new byte[0];
+  /**
+   *
+   */
+  private byte[] next = new byte[0];
+  /**
+   * Horizontal sums of the rows above, at and below the row being stepped.
+   */
+  private byte[] above = new byte[0];
+  /**
+   *
+   */
+  private byte[] middle = new byte[0];
+  /**
+   *
+   */
+  private byte[] below = new byte[0];
+  /**
+   * Births in bits 0-8 and survivals in bits 9-17: bit
+   * <code>neighbors + alive * 9</code> is the next state.
+   */
+  private int rules;
+  /**
+   *
+   */
+  private Boundary boundary = Boundary.DEAD;
+
+  @Override
+  public void load(final Board board) {
+    width = board.getWidth();
+    height = board.getHeight();
+    stride = width + 2;
+    Rule rule = board.getRule();
+    rules = rule.getBirths() | rule.getSurvivals() << SURVIVAL_SHIFT;
+    boundary = board.getBoundary();
+    int size = stride * (height + 2);
+    if (current.length != size) {
+      current = new byte[size];
+      next = new byte[size];
+      above = new byte[width];
+      middle = new byte[width];
+      below = new byte[width];
+    }
+
+    for (int y = 0; y < height; ++y) {
+      int row = (y + 1) * stride + 1;
+      for (int x = 0; x < width; ++x) {
+        current[row + x] = (byte) (board.isAlive(x, y) ? 1 : 0);
+      }
+    }
+  }
+
+  @Override
+  public boolean step() {
+    int difference = 0;
+    fillBorder();
+    horizontalSums(0, above);
+    horizontalSums(1, middle);
+    for (int y = 1; y <= height; ++y) {
+      horizontalSums(y + 1, below);
+      int row = y * stride + 1;
+      for (int x = 0; x < width; ++x) {
+        int alive = current[row + x];
+        int neighbors = above[x] + middle[x] + below[x] - alive;
+        int state = (rules >>> (neighbors + alive * SURVIVAL_SHIFT)) & 1;
+        next[row + x] = (byte) state;
+        difference |= state ^ alive;
+      }
+
+      byte[] recycled = above;
+      above = middle;
+      middle = below;
+      below = recycled;
+    }
+
+    byte[] swap = current;
+    current = next;
+    next = swap;
+    return difference != 0;
+  }
+
+  /**
+   * Copy the cells that stand in for the ones past the edges into the
+   * border: first the top and bottom rows, then the left and right columns
+   * (corners included).
+   */
+  private void fillBorder() {
+    copyRow(boundary.wrap(-1, height), 0);
+    copyRow(boundary.wrap(height, height), height + 1);
+    int left = boundary.wrap(-1, width);
+    int right = boundary.wrap(width, width);
+    for (int y = 0; y < height + 2; ++y) {
+      int row = y * stride;
+      current[row] = left < 0 ? 0 : current[row + left + 1];
+      current[row + width + 1] = right < 0 ? 0 : current[row + right + 1];
+    }
+  }
+
+  /**
+   * @param from row on the board, or -1 for a dead row.
+   * @param to padded row number.
+   */
+  private void copyRow(final int from, final int to) {
+    if (from < 0) {
+      Arrays.fill(current, to * stride, (to + 1) * stride, (byte) 0);
+    } else {
+      System.arraycopy(current, (from + 1) * stride, current, to * stride,
+          stride);
+    }
+  }
+
+  /**
+   * @param y padded row number.
+   * @param sums receives the sum of every cell of the row and its left and
+   * right neighbors.
+   */
+  private void horizontalSums(final int y, final byte[] sums) {
+    int row = y * stride;
+    for (int x = 0; x < width; ++x) {
+      sums[x] = (byte) (current[row + x] + current[row + x + 1]
+          + current[row + x + 2]);
+    }
+  }
+
+  @Override
+  public void store(final Board board) {
+    for (int y = 0; y < height; ++y) {
+      int row = (y + 1) * stride + 1;
+      for (int x = 0; x < width; ++x) {
+        board.setNextState(x, y, current[row + x] != 0);
+      }
+    }
+    board.commit();
+  }
+
+  /**
+   * @param b
+   * @return true for all but open boards: the border follows the boundary.
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b != Boundary.OPEN;
+  }
+}
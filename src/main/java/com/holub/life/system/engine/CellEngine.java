@@ -0,0 +1,46 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.cell.Neighborhood;
+
+/**
+ * The original engine: every {@link com.holub.life.model.cell.Cell} in the
+ * composite figures out its own next state (through the
+ * {@link com.holub.life.model.cell.StateDiscriminator}), then the whole
+ * composite transitions. The board is its own representation, so there is
+ * nothing to copy in {@link #load} or {@link #store}.
+ */
+
+public final class CellEngine implements Engine {
+
+  /**
+   *
+   */
+  private Neighborhood outermostCell;
+
+  @Override
+  public void load(final Board board) {
+    outermostCell = board.getOutermostCell();
+  }
+
+  @Override
+  public boolean step() {
+    boolean nextState = outermostCell.figureNextState();
+    outermostCell.transition();
+    return nextState;
+  }
+
+  @Override
+  public void store(final Board board) {
+    // The cells were transitioned in place by step().
+  }
+
+  /**
+   * @param boundary
+   * @return true for all but open boards: the board wires the cells' neighbors.
+   */
+  @Override
+  public boolean supports(final Boundary boundary) {
+    return boundary != Boundary.OPEN;
+  }
+}
@@ -0,0 +1,102 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+
+/***
+ * A stepping engine computes successive generations of a {@link Board}.
+ * The board (that is, the {@link com.holub.life.model.cell.Neighborhood}
+ * composite) is always the authoritative, user-visible state: cells are
+ * edited, drawn and saved through it. An engine is free to keep its own,
+ * faster representation of the board between {@link #load} and
+ * {@link #store}. A single generation is computed like this:
+ * <PRE>
+ * engine.load(board);
+ * boolean changed = engine.step();
+ * engine.store(board);
+ * </PRE>
+ * Engines are stateful, so every Universe needs its own instance.
+ */
+
+public interface Engine {
+
+  /**
+   * Read the current generation off the board.
+   *
+   * @param board
+   */
+  void load(Board board);
+
+  /**
+   * Advance the engine's copy of the board by one generation.
+   *
+   * @return true if any cell changed state.
+   */
+  boolean step();
+
+  /**
+   * Advance the engine's copy of the board by any number of generations.
+   * Engines that can jump ahead faster than one generation at a time
+   * override this; the rest step once per generation, and stop early once
+   * a step changes nothing, since every later generation would be the
+   * same.
+   *
+   * @param generations at least one.
+   * @return false if the board stopped changing, in which case the
+   * generations still to come may have been skipped.
+   */
+  default boolean step(final long generations) {
+    for (long i = 0; i < generations; ++i) {
+      if (!step()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the engine's current generation back onto the board, transitioning
+   * every cell into its new state.
+   *
+   * @param board
+   */
+  void store(Board board);
+
+  /**
+   * @param rule
+   * @return true if this engine can run the given rule.
+   */
+  default boolean supports(final Rule rule) {
+    return true;
+  }
+
+  /**
+   * @param boundary
+   * @return true if this engine can run a board with the given boundary.
+   * Only dead edges are supported unless the engine says otherwise.
+   */
+  default boolean supports(final Boundary boundary) {
+    return boundary == Boundary.DEAD;
+  }
+
+  /**
+   * The board was grown or shrunk around its center, so that the cell that
+   * was at (x, y) is now at (x + dx, y + dy). Engines that keep cells off
+   * the board must move them too; the rest pick the new board up on their
+   * next {@link #load}.
+   *
+   * @param dx a multiple of 8.
+   * @param dy a multiple of 8.
+   */
+  default void moveOrigin(final int dx, final int dy) {
+  }
+
+  /**
+   * The board was replaced rather than stepped: it was cleared, rewound to
+   * an earlier generation or loaded from a file. Engines that keep cells
+   * off the board must forget them, so that the next {@link #load} reads
+   * the board alone; the rest pick the new board up anyway.
+   */
+  default void reset() {
+  }
+}
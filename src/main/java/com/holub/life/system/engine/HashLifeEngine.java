@@ -0,0 +1,711 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Snapshot;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Gosper's HashLife. The universe is a quadtree of canonical (hash-consed)
+ * nodes: two squares with the same contents are always the same object, so
+ * a repeating structure is stored once, and the result of advancing it is
+ * computed once and memoized in the node. That lets the engine advance
+ * 2<sup>k</sup> generations in one call ({@link #stepPowerOfTwo}) in time
+ * that depends on how much distinct structure there is, not on k.
+ * <p>
+ * This is the same recursive-square idea as the
+ * {@link com.holub.life.model.cell.Neighborhood} composite, but with shared
+ * subtrees. The plane is unbounded: the {@link Board} is a window whose upper
+ * left corner is at (0, 0). Cells that move off the board keep evolving, and
+ * may come back.
+ * <p>
+ * The tree is kept from one generation to the next, so that what was
+ * memoized stays useful: loading the board writes only the cells edited
+ * since the engine last stored it, and {@link #step(long)} advances any
+ * number of generations a power of two at a time.
+ */
+
+public final class HashLifeEngine implements Engine {
+
+  /**
+   * When the canonical-node table grows past this size, it's rebuilt with
+   * only the nodes reachable from the current root.
+   */
+  private static final int MAX_NODES = 1 << 20;
+  /**
+   * The level of the smallest node that can be advanced: a 4x4 square.
+   */
+  private static final int BASE_LEVEL = 2;
+  /**
+   *
+   */
+  private static final int BITS_PER_WORD = 64;
+  /**
+   *
+   */
+  private static final int ADDRESS_BITS = 6;
+  /**
+   *
+   */
+  private static final Node DEAD = new Node(false);
+  /**
+   *
+   */
+  private static final Node ALIVE = new Node(true);
+  /**
+   * The canonical instance of every node.
+   */
+  private Map<Node, Node> canonical = new HashMap<>();
+  /**
+   * The canonical empty node of each level, indexed by level.
+   */
+  private Node[] empty = {DEAD};
+  /**
+   *
+   */
+  private Node root;
+  /**
+   * Coordinates of the upper-left corner of the root.
+   */
+  private long rootX;
+  /**
+   *
+   */
+  private long rootY;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private int wordsPerRow;
+  /**
+   * The board contents as of the last load() or step(), one bit per cell,
+   * in the same layout as {@link BitBoardEngine}. Used to find the cells
+   * that were edited on the board between generations.
+   */
+  private long[] window = new long[0];
+  /**
+   * Scratch buffer for extracting the window from the tree.
+   */
+  private long[] extracted = new long[0];
+  /**
+   * The window as of the last load(), which is what's on the board until
+   * store(), so that only the cells that changed since are stored.
+   */
+  private long[] loaded = new long[0];
+  /**
+   * A snapshot of the board when the window was last the same as the board,
+   * or null if it may not be.
+   */
+  private Snapshot synced;
+  /**
+   *
+   */
+  private Rule rule = Rule.CONWAY;
+
+  /**
+   *
+   */
+  public HashLifeEngine() {
+    root = emptyNode(BASE_LEVEL);
+  }
+
+  /**
+   * An empty region stays empty in HashLife, so B0 rules can't be run.
+   *
+   * @param r
+   * @return true unless the rule gives birth to cells with no neighbors.
+   */
+  @Override
+  public boolean supports(final Rule r) {
+    return !r.isBirthOnZero();
+  }
+
+  /**
+   * Cells that leave the board keep evolving in the tree, so the board's
+   * edges can't be dead.
+   *
+   * @param b
+   * @return true only for an open board.
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b == Boundary.OPEN;
+  }
+
+  @Override
+  public void load(final Board board) {
+    if (!board.getRule().equals(rule)) {
+      // Every memoized result was computed under the old rule.
+      rule = board.getRule();
+      collectGarbage();
+    }
+    if (board.getWidth() != width || board.getHeight() != height) {
+      width = board.getWidth();
+      height = board.getHeight();
+      wordsPerRow = (width + BITS_PER_WORD - 1) >>> ADDRESS_BITS;
+      window = new long[wordsPerRow * height];
+      extracted = new long[wordsPerRow * height];
+      loaded = new long[wordsPerRow * height];
+      extract(window);
+      synced = null;
+    }
+
+    // Only the cells that differ from the last generation are written into
+    // the tree. If the engine stored the board last, they're the cells
+    // edited since, which a snapshot finds without a pass over the board.
+    int[] edited = board.changedSince(synced);
+    if (edited == null) {
+      for (int y = 0; y < height; ++y) {
+        for (int x = 0; x < width; ++x) {
+          load(board, x, y);
+        }
+      }
+    } else {
+      for (int index : edited) {
+        load(board, index % width, index / width);
+      }
+    }
+    System.arraycopy(window, 0, loaded, 0, window.length);
+    synced = board.snapshot();
+  }
+
+  /**
+   * Write the cell at (x, y) into the tree, if it differs from the window.
+   *
+   * @param board
+   * @param x
+   * @param y
+   */
+  private void load(final Board board, final int x, final int y) {
+    long bit = 1L << x;
+    int i = y * wordsPerRow + (x >>> ADDRESS_BITS);
+    boolean alive = board.isAlive(x, y);
+    if (alive != ((window[i] & bit) != 0)) {
+      set(x, y, alive);
+      window[i] ^= bit;
+    }
+  }
+
+  @Override
+  public boolean step() {
+    return stepPowerOfTwo(0);
+  }
+
+  /**
+   * Advance by each power of two that makes up the number of generations,
+   * and look at the board only once, at the end.
+   *
+   * @param generations
+   * @return false if the whole universe is empty or, for a single
+   * generation, if no cell on the board changed. Otherwise true: the board
+   * may look the same after many generations without being stable.
+   */
+  @Override
+  public boolean step(final long generations) {
+    for (long rest = generations; rest != 0L; rest &= rest - 1) {
+      jump(Long.numberOfTrailingZeros(rest));
+    }
+    boolean changed = extractWindow();
+    return generations == 1 ? changed : root.population != 0;
+  }
+
+  /**
+   * The tree doesn't change; only the board's window onto it moves.
+   *
+   * @param dx
+   * @param dy
+   */
+  @Override
+  public void moveOrigin(final int dx, final int dy) {
+    rootX += dx;
+    rootY += dy;
+    synced = null;
+  }
+
+  /**
+   * Empty the whole plane. The memoized results are kept: they're still
+   * right, and the board that replaces this one may well contain the same
+   * structures.
+   */
+  @Override
+  public void reset() {
+    root = emptyNode(BASE_LEVEL);
+    rootX = 0;
+    rootY = 0;
+    Arrays.fill(window, 0L);
+    synced = null;
+  }
+
+  /**
+   * Advance the universe by 2<sup>k</sup> generations in a single call.
+   *
+   * @param k log2 of the number of generations.
+   * @return true if any cell on the board changed state.
+   */
+  public boolean stepPowerOfTwo(final int k) {
+    jump(k);
+    return extractWindow();
+  }
+
+  /**
+   * Advance the tree by 2<sup>k</sup> generations, without looking at the
+   * board.
+   *
+   * @param k log2 of the number of generations.
+   */
+  private void jump(final int k) {
+    // The result of a node is its central half, so make sure the pattern
+    // sits in the central half of the root with enough empty space around
+    // it to grow into for 2^k generations.
+    while (root.level < k + BASE_LEVEL || !isCentered(root)) {
+      expand();
+    }
+    expand();
+
+    long half = 1L << (root.level - BASE_LEVEL);
+    root = successor(root, k);
+    rootX += half;
+    rootY += half;
+
+    if (canonical.size() > MAX_NODES) {
+      collectGarbage();
+    }
+  }
+
+  /**
+   * Copy the part of the universe that's on the board into the window.
+   *
+   * @return true if any cell of the window changed.
+   */
+  private boolean extractWindow() {
+    extract(extracted);
+    boolean changed = !Arrays.equals(window, extracted);
+    long[] swap = window;
+    window = extracted;
+    extracted = swap;
+    return changed;
+  }
+
+  @Override
+  public void store(final Board board) {
+    board.commit(loaded, window, wordsPerRow);
+    System.arraycopy(window, 0, loaded, 0, window.length);
+    synced = board.snapshot();
+  }
+
+  /**
+   * @return the number of live cells in the whole (unbounded) universe.
+   */
+  public long getPopulation() {
+    return root.population;
+  }
+
+  /**
+   * @return the number of canonical nodes currently in the table.
+   */
+  public int getNodeCount() {
+    return canonical.size();
+  }
+
+  // ------------------------------------------------------------------
+  // Canonical nodes
+
+  /**
+   * @return the canonical node with the given quadrants.
+   */
+  private Node join(final Node nw, final Node ne, final Node sw,
+      final Node se) {
+    Node candidate = new Node(nw, ne, sw, se);
+    Node existing = canonical.get(candidate);
+    if (existing != null) {
+      return existing;
+    }
+    canonical.put(candidate, candidate);
+    return candidate;
+  }
+
+  /**
+   * @param level
+   * @return the canonical all-dead node of the given level.
+   */
+  private Node emptyNode(final int level) {
+    if (level >= empty.length) {
+      Node[] grown = Arrays.copyOf(empty, level + 1);
+      for (int i = empty.length; i <= level; ++i) {
+        grown[i] = join(grown[i - 1], grown[i - 1], grown[i - 1],
+            grown[i - 1]);
+      }
+      empty = grown;
+    }
+    return empty[level];
+  }
+
+  /**
+   * Throw away every canonical node that isn't reachable from the root.
+   * Memoized results can refer to discarded nodes, so they're dropped too.
+   */
+  private void collectGarbage() {
+    canonical = new HashMap<>();
+    empty = new Node[] {DEAD};
+    root = intern(root, new IdentityHashMap<>());
+  }
+
+  /**
+   * @param node
+   * @param copies the nodes already re-entered, so that shared subtrees are
+   * visited once.
+   * @return node, re-entered into a fresh canonical table.
+   */
+  private Node intern(final Node node, final Map<Node, Node> copies) {
+    if (node.level == 0) {
+      return node;
+    }
+    Node copy = copies.get(node);
+    if (copy == null) {
+      copy = join(intern(node.nw, copies), intern(node.ne, copies),
+          intern(node.sw, copies), intern(node.se, copies));
+      copies.put(node, copy);
+    }
+    return copy;
+  }
+
+  // ------------------------------------------------------------------
+  // Editing and reading the tree
+
+  /**
+   * Double the size of the root, keeping the old root at the center.
+   */
+  private void expand() {
+    Node border = emptyNode(root.level - 1);
+    root = join(
+        join(border, border, border, root.nw),
+        join(border, border, root.ne, border),
+        join(border, root.sw, border, border),
+        join(root.se, border, border, border));
+    long half = 1L << (root.level - BASE_LEVEL);
+    rootX -= half;
+    rootY -= half;
+  }
+
+  /**
+   * @param node
+   * @return true if every live cell is in the central half of the node.
+   */
+  private static boolean isCentered(final Node node) {
+    return node.population
+        == node.nw.se.population + node.ne.sw.population
+        + node.sw.ne.population + node.se.nw.population;
+  }
+
+  /**
+   * Set the state of the cell at (x, y), growing the root as necessary.
+   *
+   * @param x
+   * @param y
+   * @param alive
+   */
+  private void set(final long x, final long y, final boolean alive) {
+    while (x < rootX || y < rootY
+        || x >= rootX + (1L << root.level)
+        || y >= rootY + (1L << root.level)) {
+      expand();
+    }
+    root = set(root, x - rootX, y - rootY, alive);
+  }
+
+  /**
+   * @return a copy of node with the cell at (x, y) (relative to the node's
+   * upper-left corner) set to the indicated state.
+   */
+  private Node set(final Node node, final long x, final long y,
+      final boolean alive) {
+    if (node.level == 0) {
+      return alive ? ALIVE : DEAD;
+    }
+    long half = 1L << (node.level - 1);
+    boolean east = x >= half;
+    boolean south = y >= half;
+    long subX = east ? x - half : x;
+    long subY = south ? y - half : y;
+    if (!south && !east) {
+      return join(set(node.nw, subX, subY, alive), node.ne, node.sw, node.se);
+    } else if (!south) {
+      return join(node.nw, set(node.ne, subX, subY, alive), node.sw, node.se);
+    } else if (!east) {
+      return join(node.nw, node.ne, set(node.sw, subX, subY, alive), node.se);
+    }
+    return join(node.nw, node.ne, node.sw, set(node.se, subX, subY, alive));
+  }
+
+  /**
+   * Copy the part of the universe that's on the board into rows.
+   *
+   * @param rows
+   */
+  private void extract(final long[] rows) {
+    Arrays.fill(rows, 0L);
+    extract(root, rootX, rootY, rows);
+  }
+
+  /**
+   * @param node
+   * @param x coordinate of the node's upper-left corner.
+   * @param y
+   * @param rows
+   */
+  private void extract(final Node node, final long x, final long y,
+      final long[] rows) {
+    long size = 1L << node.level;
+    if (node.population == 0 || x >= width || y >= height
+        || x + size <= 0 || y + size <= 0) {
+      return;
+    }
+    if (node.level == 0) {
+      rows[(int) y * wordsPerRow + ((int) x >>> ADDRESS_BITS)] |= 1L << x;
+      return;
+    }
+    long half = size >>> 1;
+    extract(node.nw, x, y, rows);
+    extract(node.ne, x + half, y, rows);
+    extract(node.sw, x, y + half, rows);
+    extract(node.se, x + half, y + half, rows);
+  }
+
+  // ------------------------------------------------------------------
+  // Advancing
+
+  /**
+   * Compute the central half of a node, advanced 2<sup>k</sup> generations.
+   * The result is memoized in the node.
+   *
+   * @param node a node of level BASE_LEVEL or more.
+   * @param k at most <code>node.level - BASE_LEVEL</code>.
+   * @return a node one level smaller than the argument.
+   */
+  private Node successor(final Node node, final int k) {
+    if (node.result != null && node.resultLog == k) {
+      return node.result;
+    }
+
+    Node result;
+    if (node.population == 0) {
+      result = emptyNode(node.level - 1);
+    } else if (node.level == BASE_LEVEL) {
+      result = advanceBase(node);
+    } else {
+      // The nine overlapping subsquares of half the size.
+      Node n00 = node.nw;
+      Node n01 = join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw);
+      Node n02 = node.ne;
+      Node n10 = join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne);
+      Node n11 = join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+      Node n12 = join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne);
+      Node n20 = node.sw;
+      Node n21 = join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw);
+      Node n22 = node.se;
+
+      if (k == node.level - BASE_LEVEL) {
+        // Full speed: advance the nine subsquares half way, then the four
+        // squares built from them the other half.
+        int half = k - 1;
+        Node r00 = successor(n00, half);
+        Node r01 = successor(n01, half);
+        Node r02 = successor(n02, half);
+        Node r10 = successor(n10, half);
+        Node r11 = successor(n11, half);
+        Node r12 = successor(n12, half);
+        Node r20 = successor(n20, half);
+        Node r21 = successor(n21, half);
+        Node r22 = successor(n22, half);
+        result = join(
+            successor(join(r00, r01, r10, r11), half),
+            successor(join(r01, r02, r11, r12), half),
+            successor(join(r10, r11, r20, r21), half),
+            successor(join(r11, r12, r21, r22), half));
+      } else {
+        // Slower than the node allows: take the centers of the nine
+        // subsquares without advancing them, and advance only the four
+        // squares built from them.
+        Node c00 = center(n00);
+        Node c01 = center(n01);
+        Node c02 = center(n02);
+        Node c10 = center(n10);
+        Node c11 = center(n11);
+        Node c12 = center(n12);
+        Node c20 = center(n20);
+        Node c21 = center(n21);
+        Node c22 = center(n22);
+        result = join(
+            successor(join(c00, c01, c10, c11), k),
+            successor(join(c01, c02, c11, c12), k),
+            successor(join(c10, c11, c20, c21), k),
+            successor(join(c11, c12, c21, c22), k));
+      }
+    }
+
+    node.result = result;
+    node.resultLog = k;
+    return result;
+  }
+
+  /**
+   * @param node
+   * @return the central half of the node, unchanged.
+   */
+  private Node center(final Node node) {
+    return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+  }
+
+  /**
+   * Advance the central 2x2 cells of a 4x4 node by one generation.
+   *
+   * @param node a node of BASE_LEVEL.
+   * @return the 2x2 result.
+   */
+  private Node advanceBase(final Node node) {
+    // Bit (y * 4 + x) is the cell at (x, y).
+    int cells = 0;
+    Node[] quadrants = {node.nw, node.ne, node.sw, node.se};
+    for (int q = 0; q < quadrants.length; ++q) {
+      Node quadrant = quadrants[q];
+      int x = (q & 1) * 2;
+      int y = (q >> 1) * 2;
+      Node[] leaves = {quadrant.nw, quadrant.ne, quadrant.sw, quadrant.se};
+      for (int l = 0; l < leaves.length; ++l) {
+        if (leaves[l] == ALIVE) {
+          cells |= 1 << ((y + (l >> 1)) * 4 + x + (l & 1));
+        }
+      }
+    }
+    return join(
+        nextCell(cells, 1, 1), nextCell(cells, 2, 1),
+        nextCell(cells, 1, 2), nextCell(cells, 2, 2));
+  }
+
+  /**
+   * @param cells a 4x4 square, as built by advanceBase().
+   * @param x
+   * @param y
+   * @return the next state of the inner cell at (x, y).
+   */
+  private Node nextCell(final int cells, final int x, final int y) {
+    int neighbors = 0;
+    for (int dy = -1; dy <= 1; ++dy) {
+      for (int dx = -1; dx <= 1; ++dx) {
+        if ((dx != 0 || dy != 0)
+            && (cells & (1 << ((y + dy) * 4 + x + dx))) != 0) {
+          ++neighbors;
+        }
+      }
+    }
+    boolean alive = (cells & (1 << (y * 4 + x))) != 0;
+    return rule.next(alive, neighbors) ? ALIVE : DEAD;
+  }
+
+  /**
+   * A square of 2<sup>level</sup> cells on a side. Nodes are immutable
+   * (except for the memoized result) and, once canonical, unique.
+   */
+  private static final class Node {
+
+    /**
+     *
+     */
+    private final Node nw;
+    /**
+     *
+     */
+    private final Node ne;
+    /**
+     *
+     */
+    private final Node sw;
+    /**
+     *
+     */
+    private final Node se;
+    /**
+     *
+     */
+    private final int level;
+    /**
+     * Number of live cells in the square.
+     */
+    private final long population;
+    /**
+     *
+     */
+    private final int hash;
+    /**
+     * The memoized result of successor(this, resultLog).
+     */
+    private Node result;
+    /**
+     *
+     */
+    private int resultLog = -1;
+
+    /**
+     * Create a leaf (a single cell).
+     *
+     * @param alive
+     */
+    private Node(final boolean alive) {
+      this.nw = null;
+      this.ne = null;
+      this.sw = null;
+      this.se = null;
+      this.level = 0;
+      this.population = alive ? 1 : 0;
+      this.hash = alive ? 1 : 0;
+    }
+
+    private Node(final Node nw, final Node ne, final Node sw,
+        final Node se) {
+      this.nw = nw;
+      this.ne = ne;
+      this.sw = sw;
+      this.se = se;
+      this.level = nw.level + 1;
+      this.population = nw.population + ne.population + sw.population
+          + se.population;
+      int h = System.identityHashCode(nw);
+      h = h * 31 + System.identityHashCode(ne);
+      h = h * 31 + System.identityHashCode(sw);
+      h = h * 31 + System.identityHashCode(se);
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    /**
+     * Children are canonical, so two nodes are equal if their children are
+     * the same objects.
+     *
+     * @param o
+     * @return true if o has the same four children.
+     */
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Node)) {
+        return false;
+      }
+      Node other = (Node) o;
+      return nw == other.nw && ne == other.ne
+          && sw == other.sw && se == other.se;
+    }
+  }
+}
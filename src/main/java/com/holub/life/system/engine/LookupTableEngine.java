@@ -0,0 +1,215 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Rule;
+import java.util.Arrays;
+
+/**
+ * An engine that evaluates the rule by table lookup instead of by counting
+ * and comparing. The board is cut into 2x2 blocks. A block's next state
+ * depends only on the 4x4 square of cells around it, which packs into a
+ * 16-bit index; {@link #table} maps every one of the 65536 possible squares
+ * to the next state of its inner 2x2 block under the board's rule (the
+ * table is rebuilt when the rule changes). Stepping is then four 4-bit
+ * reads, one table read and four writes per block, with no data-dependent
+ * branches.
+ * <p>
+ * Cells are stored as bits in padded rows: cell (x, y) is bit
+ * <code>x + 1</code> of row <code>y + 1</code>, so the 4x4 square around any
+ * block on the board is always in the arrays and the padding (which is never
+ * written) supplies the dead cells past the edges.
+ */
+
+public final class LookupTableEngine implements Engine {
+
+  /**
+   *
+   */
+  private static final int ADDRESS_BITS = 6;
+  /**
+   *
+   */
+  private static final int BITS_PER_WORD = 1 << ADDRESS_BITS;
+  /**
+   * Cells along each side of the square that's packed into an index.
+   */
+  private static final int SQUARE = 4;
+  /**
+   *
+   */
+  private static final int NIBBLE = 0xF;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   * Words in a padded row.
+   */
+  private int wordsPerRow;
+  /**
+   *
+   */
+  private long[] current = new long[0];
+  /**
+   *
+   */
+  private long[] next = new long[0];
+  /**
+   *
+   */
+  private Rule rule = Rule.CONWAY;
+  /**
+   * Next state of the inner 2x2 block of every 4x4 square. Bit
+   * <code>row * 4 + column</code> of the index is the cell at (column, row)
+   * of the square; bits 0, 1, 2 and 3 of the entry are the cells at (1, 1),
+   * (2, 1), (1, 2) and (2, 2).
+   */
+  private byte[] table = buildTable(rule);
+
+  /**
+   * @param r
+   * @return the table of next states for every 4x4 square under r.
+   */
+  private static byte[] buildTable(final Rule r) {
+    byte[] table = new byte[1 << (SQUARE * SQUARE)];
+    for (int square = 0; square < table.length; ++square) {
+      int result = 0;
+      for (int cell = 0; cell < SQUARE; ++cell) {
+        int x = 1 + (cell & 1);
+        int y = 1 + (cell >>> 1);
+        int neighbors = 0;
+        for (int dy = -1; dy <= 1; ++dy) {
+          for (int dx = -1; dx <= 1; ++dx) {
+            if ((dx != 0 || dy != 0)
+                && (square & bit(x + dx, y + dy)) != 0) {
+              ++neighbors;
+            }
+          }
+        }
+        boolean alive = (square & bit(x, y)) != 0;
+        if (r.next(alive, neighbors)) {
+          result |= 1 << cell;
+        }
+      }
+      table[square] = (byte) result;
+    }
+    return table;
+  }
+
+  /**
+   * @param x column within the square.
+   * @param y row within the square.
+   * @return the index bit for the cell.
+   */
+  private static int bit(final int x, final int y) {
+    return 1 << (y * SQUARE + x);
+  }
+
+  @Override
+  public void load(final Board board) {
+    width = board.getWidth();
+    height = board.getHeight();
+    if (!board.getRule().equals(rule)) {
+      rule = board.getRule();
+      table = buildTable(rule);
+    }
+    // One padding column on the left, at least two on the right (a square
+    // reaches one cell past the block, and the last block may hang one cell
+    // off an odd-sized board), and a spare word so that reading four bits at
+    // the end of a word can always borrow from the next one.
+    wordsPerRow = ((width + 2) >>> ADDRESS_BITS) + 2;
+    int size = wordsPerRow * (height + SQUARE);
+    if (current.length != size) {
+      current = new long[size];
+      next = new long[size];
+    } else {
+      Arrays.fill(current, 0L);
+    }
+
+    for (int y = 0; y < height; ++y) {
+      int row = (y + 1) * wordsPerRow;
+      for (int x = 0; x < width; ++x) {
+        if (board.isAlive(x, y)) {
+          int position = x + 1;
+          current[row + (position >>> ADDRESS_BITS)] |= 1L << position;
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean step() {
+    Arrays.fill(next, 0L);
+    int difference = 0;
+    for (int y = 0; y < height; y += 2) {
+      // Rows y - 1 .. y + 2 of the board are rows y .. y + 3 of the arrays.
+      int top = y * wordsPerRow;
+      int rowMask = y + 1 < height ? NIBBLE : 0x3;
+      for (int x = 0; x < width; x += 2) {
+        int square = nibble(top, x)
+            | nibble(top + wordsPerRow, x) << SQUARE
+            | nibble(top + 2 * wordsPerRow, x) << (2 * SQUARE)
+            | nibble(top + 3 * wordsPerRow, x) << (3 * SQUARE);
+        int block = table[square] & rowMask
+            & (x + 1 < width ? NIBBLE : 0x5);
+        int was = (square >>> (SQUARE + 1)) & 0x3
+            | ((square >>> (2 * SQUARE + 1)) & 0x3) << 2;
+        difference |= block ^ was;
+
+        int position = x + 1;
+        int upper = top + wordsPerRow;
+        int lower = upper + wordsPerRow;
+        setBits(upper, position, block & 1);
+        setBits(upper, position + 1, (block >>> 1) & 1);
+        setBits(lower, position, (block >>> 2) & 1);
+        setBits(lower, position + 1, (block >>> 3) & 1);
+      }
+    }
+
+    long[] swap = current;
+    current = next;
+    next = swap;
+    return difference != 0;
+  }
+
+  /**
+   * @param row index of the first word of a padded row.
+   * @param position bit number of the first of the four cells.
+   * @return four consecutive cells of the row, in the low bits.
+   */
+  private int nibble(final int row, final int position) {
+    int word = row + (position >>> ADDRESS_BITS);
+    int shift = position & (BITS_PER_WORD - 1);
+    // Shifting in two steps keeps a shift of 64 (which Java treats as 0)
+    // from borrowing the whole next word when none of it is needed.
+    long bits = (current[word] >>> shift)
+        | (current[word + 1] << (BITS_PER_WORD - 1 - shift) << 1);
+    return (int) bits & NIBBLE;
+  }
+
+  /**
+   * @param row index of the first word of a padded row.
+   * @param position bit number of the cell.
+   * @param value 0 or 1.
+   */
+  private void setBits(final int row, final int position, final int value) {
+    next[row + (position >>> ADDRESS_BITS)] |= (long) value << position;
+  }
+
+  @Override
+  public void store(final Board board) {
+    for (int y = 0; y < height; ++y) {
+      int row = (y + 1) * wordsPerRow;
+      for (int x = 0; x < width; ++x) {
+        int position = x + 1;
+        board.setNextState(x, y,
+            (current[row + (position >>> ADDRESS_BITS)] & (1L << position))
+                != 0);
+      }
+    }
+    board.commit();
+  }
+}
@@ -0,0 +1,289 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Snapshot;
+import lombok.Getter;
+
+/**
+ * An engine that never counts neighbors. It keeps the live-neighbor count
+ * of every cell in an array and updates the eight surrounding counts
+ * whenever a cell is born or dies. Only cells whose own state or count
+ * changed in the last generation can change in the next one, so only those
+ * are evaluated, by looking their count up in the rule. On a sparse, slowly
+ * changing board the work per generation is proportional to the number of
+ * births and deaths.
+ * <p>
+ * The eight neighbors of every cell are looked up in a table built when the
+ * board (or its boundary) changes. A neighbor past a dead edge is a sink
+ * cell that's never evaluated, so updating counts never tests for the edge.
+ * Cells edited on the board between generations are picked up in
+ * {@link #load}, which looks only at the blocks that changed since the
+ * engine last saw the board (see {@link Board#changedSince}). Only the
+ * cells that changed since then are written back in {@link #store}. So
+ * neither touches the whole board.
+ */
+
+public final class NeighborCountEngine implements Engine {
+
+  /**
+   *
+   */
+  private Board board;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private Boundary boundary;
+  /**
+   * The eight neighbors of cell y * width + x are at 8 * (y * width + x).
+   */
+  private int[] neighbors = new int[0];
+  /**
+   *
+   */
+  private Rule rule;
+  /**
+   * 1 for a live cell.
+   */
+  private byte[] alive = new byte[0];
+  /**
+   * Number of live neighbors of each cell.
+   */
+  private byte[] counts = new byte[0];
+  /**
+   * Cells to evaluate in the next generation.
+   */
+  private int[] candidates = new int[0];
+  /**
+   *
+   */
+  private int candidateCount;
+  /**
+   * True for the cells in {@link #candidates}, and always true for the
+   * sink, so that it's never evaluated.
+   */
+  private boolean[] queued = new boolean[0];
+  /**
+   * Cells that change state in the current generation.
+   */
+  private int[] changes = new int[0];
+  /**
+   * Cells that changed since the last load, and so may differ from the
+   * board.
+   */
+  private int[] dirty = new int[0];
+  /**
+   *
+   */
+  private int dirtyCount;
+  /**
+   * True for the cells in {@link #dirty}.
+   */
+  private boolean[] touched = new boolean[0];
+  /**
+   * A snapshot of the board taken when it was the same as {@link #alive},
+   * or null.
+   */
+  private Snapshot synced;
+  /**
+   * Number of cells evaluated by the last call to step().
+   */
+  @Getter
+  private int evaluatedCount;
+  /**
+   * Number of cells compared with the board by the last call to load().
+   */
+  @Getter
+  private int comparedCount;
+  /**
+   * Number of cells that changed state in the last call to step().
+   */
+  @Getter
+  private int changedCount;
+  /**
+   * Number of live cells.
+   */
+  @Getter
+  private int population;
+
+  @Override
+  public void load(final Board b) {
+    if (board != b || b.getBoundary() != boundary) {
+      allocate(b);
+    }
+    if (!board.getRule().equals(rule)) {
+      rule = board.getRule();
+      for (int cell = 0; cell < width * height; ++cell) {
+        enqueue(cell);
+      }
+    }
+
+    // A cell can differ from the board only if it was edited since the
+    // snapshot, or changed by a step that wasn't stored.
+    int[] edited = board.changedSince(synced);
+    comparedCount = (edited == null ? width * height : edited.length)
+        + dirtyCount;
+    if (edited == null) {
+      for (int cell = 0; cell < width * height; ++cell) {
+        pickUp(cell);
+      }
+    } else {
+      for (int cell : edited) {
+        pickUp(cell);
+      }
+    }
+    for (int i = 0; i < dirtyCount; ++i) {
+      pickUp(dirty[i]);
+      touched[dirty[i]] = false;
+    }
+    dirtyCount = 0;
+    synced = board.snapshot();
+  }
+
+  /**
+   * Make a cell the same as on the board.
+   *
+   * @param cell
+   */
+  private void pickUp(final int cell) {
+    if (board.isAlive(cell) != (alive[cell] != 0)) {
+      flip(cell);
+    }
+  }
+
+  /**
+   * Size the arrays for a new board (or boundary), with every cell dead.
+   *
+   * @param b
+   */
+  private void allocate(final Board b) {
+    board = b;
+    boundary = b.getBoundary();
+    width = b.getWidth();
+    height = b.getHeight();
+    int sink = width * height;
+    int size = sink + 1;
+    alive = new byte[size];
+    counts = new byte[size];
+    candidates = new int[size];
+    queued = new boolean[size];
+    changes = new int[size];
+    dirty = new int[size];
+    touched = new boolean[size];
+    candidateCount = 0;
+    dirtyCount = 0;
+    population = 0;
+    rule = null;
+    synced = null;
+    queued[sink] = true;
+
+    neighbors = new int[sink * Rule.MAX_NEIGHBORS];
+    int i = 0;
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        for (int dy = -1; dy <= 1; ++dy) {
+          for (int dx = -1; dx <= 1; ++dx) {
+            if (dx == 0 && dy == 0) {
+              continue;
+            }
+            int row = boundary.wrap(y + dy, height);
+            int column = boundary.wrap(x + dx, width);
+            neighbors[i++] = row < 0 || column < 0
+                ? sink : row * width + column;
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean step() {
+    evaluatedCount = candidateCount;
+    int changeCount = 0;
+    for (int i = 0; i < candidateCount; ++i) {
+      int cell = candidates[i];
+      queued[cell] = false;
+      boolean isAlive = alive[cell] != 0;
+      if (rule.next(isAlive, counts[cell]) != isAlive) {
+        changes[changeCount++] = cell;
+      }
+    }
+    candidateCount = 0;
+    changedCount = changeCount;
+
+    for (int i = 0; i < changeCount; ++i) {
+      int cell = changes[i];
+      flip(cell);
+      if (!touched[cell]) {
+        touched[cell] = true;
+        dirty[dirtyCount++] = cell;
+      }
+    }
+    return changeCount > 0;
+  }
+
+  /**
+   * Bring a dead cell to life or kill a live one, adjust its neighbors'
+   * counts, and queue it and its neighbors for the next generation.
+   *
+   * @param cell
+   */
+  private void flip(final int cell) {
+    alive[cell] ^= 1;
+    int delta = alive[cell] != 0 ? 1 : -1;
+    population += delta;
+    int first = cell * Rule.MAX_NEIGHBORS;
+    for (int i = first; i < first + Rule.MAX_NEIGHBORS; ++i) {
+      counts[neighbors[i]] += delta;
+      enqueue(neighbors[i]);
+    }
+    enqueue(cell);
+  }
+
+  /**
+   * @param cell
+   */
+  private void enqueue(final int cell) {
+    if (!queued[cell]) {
+      queued[cell] = true;
+      candidates[candidateCount++] = cell;
+    }
+  }
+
+  @Override
+  public void store(final Board b) {
+    int[] indexes = new int[dirtyCount];
+    int count = 0;
+    for (int i = 0; i < dirtyCount; ++i) {
+      int cell = dirty[i];
+      touched[cell] = false;
+      int x = cell % width;
+      int y = cell / width;
+      boolean isAlive = alive[cell] != 0;
+      if (b.isAlive(x, y) != isAlive) {
+        b.setNextState(x, y, isAlive);
+        indexes[count++] = cell;
+      }
+    }
+    dirtyCount = 0;
+    b.commit(indexes, count);
+    synced = b.snapshot();
+  }
+
+  /**
+   * @param b
+   * @return true for all but open boards: the neighbor table follows the edges.
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b != Boundary.OPEN;
+  }
+}
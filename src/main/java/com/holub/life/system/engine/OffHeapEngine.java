@@ -0,0 +1,306 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Cell;
+import com.holub.tools.Storable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link BitBoardEngine} whose two generations live outside the Java
+ * heap, either in direct buffers or in a memory-mapped file. The heap holds
+ * only a few references no matter how big the board is, so the collector
+ * never has to scan or copy cell state.
+ * <p>
+ * Used through a {@link com.holub.life.system.Universe} the engine behaves
+ * like any other. Boards bigger than a Universe can hold are used
+ * directly: {@link #resize} the engine, set cells with {@link #setAlive} or
+ * {@link #transfer}, {@link #step} it, and export the result with
+ * {@link #transfer}.
+ */
+
+public final class OffHeapEngine implements Engine {
+
+  /**
+   *
+   */
+  private static final int BITS_PER_WORD = 64;
+  /**
+   *
+   */
+  private static final int ADDRESS_BITS = 6;
+  /**
+   * Backing file for the two generations, or null for direct buffers.
+   */
+  private final File file;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private int wordsPerRow;
+  /**
+   * Mask of the bits of the last word of a row that are on the board.
+   */
+  private long lastWordMask;
+  /**
+   * Cell (x, y) is bit <code>x % 64</code> of word
+   * <code>y * wordsPerRow + x / 64</code>.
+   */
+  private LongBuffer current = LongBuffer.allocate(0);
+  /**
+   *
+   */
+  private LongBuffer next = LongBuffer.allocate(0);
+  /**
+   *
+   */
+  private Rule rule = Rule.CONWAY;
+
+  /**
+   * Keep the generations in direct buffers.
+   */
+  public OffHeapEngine() {
+    this(null);
+  }
+
+  /**
+   * @param f the generations are mapped into this file, which is created
+   * (or overwritten) when the engine is first sized, and mapped again only
+   * when the size changes. Null for direct buffers.
+   */
+  public OffHeapEngine(final File f) {
+    this.file = f;
+  }
+
+  /**
+   * @return width of the board in cells.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return height of the board in cells.
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @param r the rule to step by.
+   */
+  public void setRule(final Rule r) {
+    this.rule = r;
+  }
+
+  @Override
+  public void load(final Board board) {
+    resize(board.getWidth(), board.getHeight());
+    rule = board.getRule();
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        if (board.isAlive(x, y)) {
+          setAlive(x, y, true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Size the engine for a board of the given size, with every cell dead.
+   *
+   * @param w
+   * @param h
+   * @throws IllegalArgumentException if a generation of that size doesn't
+   * fit in a single buffer.
+   * @throws UncheckedIOException if the backing file can't be mapped.
+   */
+  public void resize(final int w, final int h) {
+    int words = (w + BITS_PER_WORD - 1) >>> ADDRESS_BITS;
+    long size = (long) words * h;
+    if (size > Integer.MAX_VALUE / Long.BYTES) {
+      throw new IllegalArgumentException(
+          "board too big: " + w + "x" + h);
+    }
+    width = w;
+    height = h;
+    wordsPerRow = words;
+    int tail = w & (BITS_PER_WORD - 1);
+    lastWordMask = tail == 0 ? -1L : (1L << tail) - 1;
+    if (current.capacity() != size) {
+      allocate((int) size);
+    } else {
+      // Every load() comes through here, so the buffers (and a file's
+      // mappings) are reused rather than made again.
+      for (int i = 0; i < size; ++i) {
+        current.put(i, 0L);
+      }
+    }
+  }
+
+  /**
+   * @param size words per generation.
+   */
+  private void allocate(final int size) {
+    int bytes = size * Long.BYTES;
+    if (file == null) {
+      current = ByteBuffer.allocateDirect(bytes)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+      next = ByteBuffer.allocateDirect(bytes)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+      return;
+    }
+    // The mappings stay valid after the channel is closed. The file is
+    // truncated first so that the new mapping starts out all zeroes.
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      raf.setLength(2L * bytes);
+      current = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+      next = channel.map(FileChannel.MapMode.READ_WRITE, bytes, bytes)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return true if the cell at (x, y) is alive.
+   */
+  public boolean isAlive(final int x, final int y) {
+    return (current.get(y * wordsPerRow + (x >>> ADDRESS_BITS))
+        & (1L << x)) != 0;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @param alive
+   */
+  public void setAlive(final int x, final int y, final boolean alive) {
+    int index = y * wordsPerRow + (x >>> ADDRESS_BITS);
+    long word = current.get(index);
+    current.put(index, alive ? word | (1L << x) : word & ~(1L << x));
+  }
+
+  @Override
+  public boolean step() {
+    boolean changed = false;
+    for (int y = 0; y < height; ++y) {
+      int row = y * wordsPerRow;
+      int above = row - wordsPerRow;
+      int below = row + wordsPerRow;
+      // Slide a three-word window along the three rows, so that every word
+      // is read from the buffer only three times.
+      long n = wordAt(y - 1, above, 0);
+      long center = current.get(row);
+      long s = wordAt(y + 1, below, 0);
+      long nw = 0L;
+      long w = 0L;
+      long sw = 0L;
+      for (int i = 0; i < wordsPerRow; ++i) {
+        long ne = wordAt(y - 1, above, i + 1);
+        long e = wordAt(y, row, i + 1);
+        long se = wordAt(y + 1, below, i + 1);
+        long result = BitBoardEngine.nextWord(rule, nw, n, ne,
+            w, center, e, sw, s, se);
+        if (i == wordsPerRow - 1) {
+          result &= lastWordMask;
+        }
+        if (result != center) {
+          changed = true;
+        }
+        next.put(row + i, result);
+        nw = n;
+        n = ne;
+        w = center;
+        center = e;
+        sw = s;
+        s = se;
+      }
+    }
+
+    LongBuffer swap = current;
+    current = next;
+    next = swap;
+    return changed;
+  }
+
+  /**
+   * @param y row number, which may be just off the board.
+   * @param row index of the first word of row y.
+   * @param i word within the row, which may be just off the board.
+   * @return the word, or 0 if it's off the board.
+   */
+  private long wordAt(final int y, final int row, final int i) {
+    if (y < 0 || y >= height || i >= wordsPerRow) {
+      return 0L;
+    }
+    return current.get(row + i);
+  }
+
+  @Override
+  public void store(final Board board) {
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        board.setNextState(x, y, isAlive(x, y));
+      }
+    }
+    board.commit();
+  }
+
+  /**
+   * Exchange live cells with a memento, the way {@link Cell#transfer} does.
+   * Only the words that hold a live cell are visited on a store.
+   *
+   * @param memento
+   * @param corner position of cell (0, 0) in the memento.
+   * @param load {@link Cell#LOAD} to bring the memento's live cells to life,
+   * {@link Cell#STORE} to mark this engine's live cells in the memento.
+   */
+  public void transfer(final Storable memento, final Point corner,
+      final boolean load) {
+    Cell.Memento m = (Cell.Memento) memento;
+    if (load) {
+      for (Point p : m.getLiveCells()) {
+        int x = p.getX() - corner.getX();
+        int y = p.getY() - corner.getY();
+        if (x >= 0 && y >= 0 && x < width && y < height) {
+          setAlive(x, y, true);
+        }
+      }
+      return;
+    }
+    Point location = new Point(0, 0);
+    for (int y = 0; y < height; ++y) {
+      int row = y * wordsPerRow;
+      for (int i = 0; i < wordsPerRow; ++i) {
+        long word = current.get(row + i);
+        while (word != 0L) {
+          int bit = Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+          location.setX(corner.getX() + (i << ADDRESS_BITS) + bit);
+          location.setY(corner.getY() + y);
+          m.markAsAlive(location);
+        }
+      }
+    }
+  }
+}
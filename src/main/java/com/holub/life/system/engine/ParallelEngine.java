@@ -0,0 +1,163 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.cell.Cell;
+import com.holub.life.model.cell.Neighborhood;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import lombok.Getter;
+
+/**
+ * Steps the composite the same way {@link CellEngine} does, but spreads the
+ * blocks of the outermost {@link Neighborhood} over the threads of a
+ * {@link ForkJoinPool}. A generation has two parallel phases separated by a
+ * barrier: every block figures its next state (reading, but not changing,
+ * its neighbors' current state), then every block transitions. Since no
+ * cell changes state until every cell has figured its next one, the result
+ * doesn't depend on how the blocks are scheduled and is identical to the
+ * serial engine's. The pool's threads run until the engine is closed.
+ */
+
+public final class ParallelEngine implements Engine, AutoCloseable {
+
+  /**
+   * A task handles at most this many blocks itself before splitting.
+   */
+  private static final int BLOCKS_PER_TASK = 4;
+  /**
+   *
+   */
+  private final ForkJoinPool pool;
+  /**
+   * Number of worker threads.
+   */
+  @Getter
+  private final int parallelism;
+  /**
+   *
+   */
+  private Neighborhood outermostCell;
+  /**
+   * The outermost grid's blocks, in row-major order.
+   */
+  private Cell[] blocks = new Cell[0];
+  /**
+   * Result of the compute phase, for each block.
+   */
+  private boolean[] willChange = new boolean[0];
+
+  /**
+   * Use one thread per available processor.
+   */
+  public ParallelEngine() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param threads number of worker threads.
+   */
+  public ParallelEngine(final int threads) {
+    this.parallelism = threads;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  @Override
+  public void load(final Board board) {
+    if (outermostCell == board.getOutermostCell()) {
+      return;
+    }
+    outermostCell = board.getOutermostCell();
+    Cell[][] grid = outermostCell.getGrid();
+    int gridSize = outermostCell.getGridSize();
+    blocks = new Cell[gridSize * gridSize];
+    willChange = new boolean[blocks.length];
+    for (int row = 0; row < gridSize; ++row) {
+      System.arraycopy(grid[row], 0, blocks, row * gridSize, gridSize);
+    }
+  }
+
+  @Override
+  public boolean step() {
+    // Blocks figured at the same time read each other's live boxes.
+    outermostCell.findLiveBoxes();
+    pool.invoke(new Phase(true, 0, blocks.length));
+
+    boolean changed = false;
+    for (boolean blockChanged : willChange) {
+      if (blockChanged) {
+        changed = true;
+        break;
+      }
+    }
+    outermostCell.updateActivity(changed);
+
+    pool.invoke(new Phase(false, 0, blocks.length));
+    outermostCell.forgetLiveBox();
+    return changed;
+  }
+
+  @Override
+  public void store(final Board board) {
+    // The cells were transitioned in place by step().
+  }
+
+  /**
+   * Shut the thread pool down. The engine can't step once it's closed.
+   */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+
+  /**
+   * @param boundary
+   * @return true for all but open boards: the board wires the cells' neighbors.
+   */
+  @Override
+  public boolean supports(final Boundary boundary) {
+    return boundary != Boundary.OPEN;
+  }
+
+  /**
+   * One phase of a generation, over a range of blocks.
+   */
+  private final class Phase extends RecursiveAction {
+
+    /**
+     * True for the compute phase, false for the transition phase.
+     */
+    private final boolean compute;
+    /**
+     *
+     */
+    private final int from;
+    /**
+     *
+     */
+    private final int to;
+
+    private Phase(final boolean c, final int f, final int t) {
+      this.compute = c;
+      this.from = f;
+      this.to = t;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > BLOCKS_PER_TASK) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Phase(compute, from, middle),
+            new Phase(compute, middle, to));
+        return;
+      }
+
+      for (int i = from; i < to; ++i) {
+        if (compute) {
+          willChange[i] = blocks[i].figureNextState();
+        } else {
+          blocks[i].transition();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,508 @@
+package com.holub.life.system.engine;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.model.Swar;
+import com.holub.life.model.cell.Snapshot;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * An unbounded universe that stores only the 8x8 chunks that contain live
+ * cells, in a hash map keyed by the chunk's packed (x, y) coordinates. Each
+ * chunk is a single <code>long</code> (bit <code>y * 8 + x</code> is the cell
+ * at (x, y) within the chunk) and is stepped in one word-parallel operation.
+ * <p>
+ * A chunk is created when live cells reach the edge it shares with a
+ * missing neighbor (that's the only way cells can be born there) and is
+ * freed as soon as it's empty, so memory grows with the live population,
+ * not with the area the pattern has visited. The {@link Board} is a window
+ * onto the universe whose upper-left corner is at (0, 0). Rules that give
+ * birth to cells with no live neighbors (B0) can't be run: they would fill
+ * the whole universe.
+ * <p>
+ * A clipped engine keeps no chunk past the edges of the board, so they're
+ * dead, and its size tracks the live cells on a bounded board. Either way,
+ * loading the board reads only the cells edited since the engine last
+ * stored it, and storing writes only the cells that changed, so a
+ * generation costs time in proportion to the live chunks, never to the
+ * area of the board.
+ */
+
+public final class SparseEngine implements Engine {
+
+  /**
+   * Width and height of a chunk, in cells.
+   */
+  private static final int CHUNK_SIZE = 8;
+  /**
+   *
+   */
+  private static final int CHUNK_BITS = 3;
+  /**
+   *
+   */
+  private static final int LAST = CHUNK_SIZE - 1;
+  /**
+   *
+   */
+  private static final long FIRST_COLUMN = 0x0101010101010101L;
+  /**
+   *
+   */
+  private static final long LAST_COLUMN = 0x8080808080808080L;
+  /**
+   *
+   */
+  private static final long FIRST_ROW = 0xFFL;
+  /**
+   *
+   */
+  private static final long LAST_ROW = 0xFFL << (LAST * CHUNK_SIZE);
+  /**
+   *
+   */
+  private final Map<Long, Chunk> chunks = new HashMap<>();
+  /**
+   * The part of every chunk that's on the board, as it is on the board:
+   * what the engine last loaded or stored. Keyed like the chunks.
+   */
+  private final Map<Long, Long> shown = new HashMap<>();
+  /**
+   * If true, no chunk is kept past the edges of the board.
+   */
+  private final boolean clipped;
+  /**
+   * The board as the engine last loaded or stored it.
+   */
+  private Snapshot synced;
+  /**
+   * Number of cells that changed state in the last call to step().
+   */
+  @Getter
+  private int changedCount;
+  /**
+   *
+   */
+  private int width;
+  /**
+   *
+   */
+  private int height;
+  /**
+   *
+   */
+  private Rule rule = Rule.CONWAY;
+
+  /**
+   * An unbounded universe, onto which the board is a window.
+   */
+  public SparseEngine() {
+    this(false);
+  }
+
+  /**
+   * @param c if true, the universe is clipped to the board, whose edges
+   * are dead; otherwise the board is a window onto an unbounded universe.
+   */
+  public SparseEngine(final boolean c) {
+    this.clipped = c;
+  }
+
+  @Override
+  public boolean supports(final Rule r) {
+    return !r.isBirthOnZero();
+  }
+
+  /**
+   * Chunks off the board keep evolving unless the engine is clipped.
+   *
+   * @param b
+   * @return true only for a dead boundary if the engine is clipped, and
+   * only for an open one otherwise.
+   */
+  @Override
+  public boolean supports(final Boundary b) {
+    return b == (clipped ? Boundary.DEAD : Boundary.OPEN);
+  }
+
+  @Override
+  public void load(final Board board) {
+    if (board.getWidth() != width || board.getHeight() != height) {
+      width = board.getWidth();
+      height = board.getHeight();
+      synced = null;
+    }
+    rule = board.getRule();
+    int[] edited = board.changedSince(synced);
+    if (edited == null) {
+      loadAll(board);
+    } else {
+      for (int index : edited) {
+        load(board, index % width, index / width);
+      }
+    }
+    removeEmptyChunks();
+    remember();
+    synced = board.snapshot();
+  }
+
+  /**
+   * Read every cell of the board into the chunks.
+   *
+   * @param board
+   */
+  private void loadAll(final Board board) {
+    if (clipped) {
+      chunks.clear();
+    }
+    for (int chunkY = 0; chunkY << CHUNK_BITS < height; ++chunkY) {
+      for (int chunkX = 0; chunkX << CHUNK_BITS < width; ++chunkX) {
+        // Cells of the chunk that aren't on the board keep their state.
+        long onBoard = 0L;
+        long cells = 0L;
+        for (int y = 0; y < CHUNK_SIZE; ++y) {
+          int boardY = (chunkY << CHUNK_BITS) + y;
+          for (int x = 0; x < CHUNK_SIZE; ++x) {
+            int boardX = (chunkX << CHUNK_BITS) + x;
+            if (boardX < width && boardY < height) {
+              long bit = 1L << (y * CHUNK_SIZE + x);
+              onBoard |= bit;
+              if (board.isAlive(boardX, boardY)) {
+                cells |= bit;
+              }
+            }
+          }
+        }
+
+        long key = key(chunkX, chunkY);
+        Chunk chunk = chunks.get(key);
+        long previous = chunk == null ? 0L : chunk.cells;
+        long updated = (previous & ~onBoard) | cells;
+        if (updated != previous) {
+          if (chunk == null) {
+            chunk = new Chunk(chunkX, chunkY);
+            chunks.put(key, chunk);
+          }
+          chunk.cells = updated;
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the cell at (x, y) into its chunk.
+   *
+   * @param board
+   * @param x
+   * @param y
+   */
+  private void load(final Board board, final int x, final int y) {
+    long bit = 1L << ((y & LAST) * CHUNK_SIZE + (x & LAST));
+    Chunk chunk = chunkAt(x >> CHUNK_BITS, y >> CHUNK_BITS);
+    if (board.isAlive(x, y)) {
+      chunk.cells |= bit;
+    } else {
+      chunk.cells &= ~bit;
+    }
+  }
+
+  @Override
+  public boolean step() {
+    // Make room for births next to every live edge.
+    List<Chunk> existing = new ArrayList<>(chunks.values());
+    for (Chunk chunk : existing) {
+      long cells = chunk.cells;
+      boolean north = (cells & FIRST_ROW) != 0;
+      boolean south = (cells & LAST_ROW) != 0;
+      boolean west = (cells & FIRST_COLUMN) != 0;
+      boolean east = (cells & LAST_COLUMN) != 0;
+      if (north) {
+        makeRoom(chunk.x, chunk.y - 1);
+      }
+      if (south) {
+        makeRoom(chunk.x, chunk.y + 1);
+      }
+      if (west) {
+        makeRoom(chunk.x - 1, chunk.y);
+      }
+      if (east) {
+        makeRoom(chunk.x + 1, chunk.y);
+      }
+      if ((cells & 1L) != 0) {
+        makeRoom(chunk.x - 1, chunk.y - 1);
+      }
+      if ((cells & (1L << LAST)) != 0) {
+        makeRoom(chunk.x + 1, chunk.y - 1);
+      }
+      if ((cells & (1L << (LAST * CHUNK_SIZE))) != 0) {
+        makeRoom(chunk.x - 1, chunk.y + 1);
+      }
+      if ((cells & (1L << (CHUNK_SIZE * CHUNK_SIZE - 1))) != 0) {
+        makeRoom(chunk.x + 1, chunk.y + 1);
+      }
+    }
+
+    changedCount = 0;
+    for (Chunk chunk : chunks.values()) {
+      chunk.next = nextChunk(chunk);
+      if (clipped) {
+        chunk.next &= onBoard(chunk.x, chunk.y);
+      }
+      changedCount += Long.bitCount(chunk.next ^ chunk.cells);
+    }
+    for (Chunk chunk : chunks.values()) {
+      chunk.cells = chunk.next;
+    }
+    removeEmptyChunks();
+    return changedCount > 0;
+  }
+
+  /**
+   * @param chunk
+   * @return the next generation of the chunk's cells.
+   */
+  private long nextChunk(final Chunk chunk) {
+    return Swar.nextBlock(rule, chunk.cells,
+        cellsAt(chunk.x - 1, chunk.y - 1), cellsAt(chunk.x, chunk.y - 1),
+        cellsAt(chunk.x + 1, chunk.y - 1),
+        cellsAt(chunk.x - 1, chunk.y), cellsAt(chunk.x + 1, chunk.y),
+        cellsAt(chunk.x - 1, chunk.y + 1), cellsAt(chunk.x, chunk.y + 1),
+        cellsAt(chunk.x + 1, chunk.y + 1));
+  }
+
+  /**
+   * Write only the cells whose state differs from what's shown on the
+   * board.
+   *
+   * @param board
+   */
+  @Override
+  public void store(final Board board) {
+    int[] indexes = new int[Long.SIZE];
+    int count = 0;
+    for (Chunk chunk : chunks.values()) {
+      long key = key(chunk.x, chunk.y);
+      long changed = (chunk.cells & onBoard(chunk.x, chunk.y))
+          ^ shown.getOrDefault(key, 0L);
+      indexes = setNextStates(board, chunk.x, chunk.y, changed,
+          chunk.cells, indexes, count);
+      count += Long.bitCount(changed);
+    }
+    for (Map.Entry<Long, Long> entry : shown.entrySet()) {
+      long key = entry.getKey();
+      if (!chunks.containsKey(key)) {
+        // The chunk died out.
+        indexes = setNextStates(board, (int) (key >> Integer.SIZE),
+            (int) key, entry.getValue(), 0L, indexes, count);
+        count += Long.bitCount(entry.getValue());
+      }
+    }
+    board.commit(indexes, count);
+    remember();
+    synced = board.snapshot();
+  }
+
+  /**
+   * Set the next state of the changed cells of a chunk, and list them.
+   *
+   * @param board
+   * @param chunkX
+   * @param chunkY
+   * @param changed the cells of the chunk that change state.
+   * @param cells the chunk's new cells.
+   * @param indexes where to list the changed cells (y * width + x).
+   * @param count number of cells already listed.
+   * @return indexes, or a copy big enough to hold the new cells.
+   */
+  private int[] setNextStates(final Board board, final int chunkX,
+      final int chunkY, final long changed, final long cells,
+      final int[] indexes, final int count) {
+    int[] listed = indexes;
+    if (count + Long.bitCount(changed) > listed.length) {
+      listed = Arrays.copyOf(listed, 2 * listed.length + Long.SIZE);
+    }
+    int i = count;
+    for (long rest = changed; rest != 0L; rest &= rest - 1) {
+      int bit = Long.numberOfTrailingZeros(rest);
+      int x = (chunkX << CHUNK_BITS) + (bit & LAST);
+      int y = (chunkY << CHUNK_BITS) + (bit >>> CHUNK_BITS);
+      board.setNextState(x, y, (cells & (1L << bit)) != 0);
+      listed[i++] = y * width + x;
+    }
+    return listed;
+  }
+
+  /**
+   * Remember the part of every chunk that's on the board, which the board
+   * now shows.
+   */
+  private void remember() {
+    shown.clear();
+    for (Chunk chunk : chunks.values()) {
+      long cells = chunk.cells & onBoard(chunk.x, chunk.y);
+      if (cells != 0L) {
+        shown.put(key(chunk.x, chunk.y), cells);
+      }
+    }
+  }
+
+  /**
+   * @param chunkX
+   * @param chunkY
+   * @return the cells of the chunk at (chunkX, chunkY) that are on the
+   * board.
+   */
+  private long onBoard(final int chunkX, final int chunkY) {
+    int columns = width - (chunkX << CHUNK_BITS);
+    int rows = height - (chunkY << CHUNK_BITS);
+    if (chunkX < 0 || chunkY < 0 || columns <= 0 || rows <= 0) {
+      return 0L;
+    }
+    long row = columns >= CHUNK_SIZE ? FIRST_ROW : (1L << columns) - 1;
+    long mask = row * FIRST_COLUMN;
+    return rows >= CHUNK_SIZE ? mask
+        : mask & ((1L << (rows * CHUNK_SIZE)) - 1);
+  }
+
+  /**
+   * @param dx
+   * @param dy
+   */
+  @Override
+  public void moveOrigin(final int dx, final int dy) {
+    List<Chunk> moved = new ArrayList<>(chunks.size());
+    for (Chunk chunk : chunks.values()) {
+      Chunk copy = new Chunk(chunk.x + (dx >> CHUNK_BITS),
+          chunk.y + (dy >> CHUNK_BITS));
+      copy.cells = chunk.cells;
+      moved.add(copy);
+    }
+    chunks.clear();
+    for (Chunk chunk : moved) {
+      chunks.put(key(chunk.x, chunk.y), chunk);
+    }
+    synced = null;
+  }
+
+  /**
+   * Drop every chunk, on the board or off it.
+   */
+  @Override
+  public void reset() {
+    chunks.clear();
+    synced = null;
+  }
+
+  /**
+   * @return the number of chunks currently allocated.
+   */
+  public int getChunkCount() {
+    return chunks.size();
+  }
+
+  /**
+   * @return the number of live cells in the whole universe, which for a
+   * clipped engine is the board.
+   */
+  public long getPopulation() {
+    long population = 0;
+    for (Chunk chunk : chunks.values()) {
+      population += Long.bitCount(chunk.cells);
+    }
+    return population;
+  }
+
+  /**
+   * Pack chunk coordinates into a single key.
+   *
+   * @param x
+   * @param y
+   * @return key
+   */
+  private static long key(final int x, final int y) {
+    return ((long) x << Integer.SIZE) | (y & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Create the chunk at (x, y), which live cells border, unless it's off
+   * the board of a clipped engine.
+   *
+   * @param x
+   * @param y
+   */
+  private void makeRoom(final int x, final int y) {
+    if (!clipped || onBoard(x, y) != 0L) {
+      chunkAt(x, y);
+    }
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the chunk at (x, y), created if necessary.
+   */
+  private Chunk chunkAt(final int x, final int y) {
+    long key = key(x, y);
+    Chunk chunk = chunks.get(key);
+    if (chunk == null) {
+      chunk = new Chunk(x, y);
+      chunks.put(key, chunk);
+    }
+    return chunk;
+  }
+
+  /**
+   * @param x
+   * @param y
+   * @return the cells of the chunk at (x, y); 0 if there's no such chunk.
+   */
+  private long cellsAt(final int x, final int y) {
+    Chunk chunk = chunks.get(key(x, y));
+    return chunk == null ? 0L : chunk.cells;
+  }
+
+  /**
+   *
+   */
+  private void removeEmptyChunks() {
+    for (Iterator<Chunk> i = chunks.values().iterator(); i.hasNext();) {
+      if (i.next().cells == 0L) {
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * An 8x8 block of cells.
+   */
+  private static final class Chunk {
+
+    /**
+     * Chunk coordinates (cell coordinates divided by CHUNK_SIZE).
+     */
+    private final int x;
+    /**
+     *
+     */
+    private final int y;
+    /**
+     *
+     */
+    private long cells;
+    /**
+     *
+     */
+    private long next;
+
+    private Chunk(final int cx, final int cy) {
+      this.x = cx;
+      this.y = cy;
+    }
+  }
+}
@@ -1,8 +1,14 @@
 package com.holub.life.ui;
 
+import com.holub.life.model.Boundary;
 import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Neighborhood;
+import com.holub.life.system.History;
 import com.holub.life.system.TickSystem;
 import com.holub.life.system.Universe;
+import com.holub.life.system.engine.AdaptiveEngine;
+import com.holub.life.system.engine.Engine;
 import com.holub.life.ui.menu.ClockMenuItem;
 import com.holub.tools.Observable;
 import com.holub.tools.Observer;
@@ -43,6 +49,21 @@ public class UniversePanel extends JPanel implements Observer {
   public static final int DEFAULT_CELL_SIZE = 8;
   private Universe universe;
   private CellUI outermostCellUI;
+  /**
+   * The outermost neighborhood {@link #outermostCellUI} draws. The universe
+   * replaces its outermost neighborhood when the board grows or shrinks.
+   */
+  private Neighborhood shownCell;
+  /**
+   * The live cells' bounding box when the panel was last repainted, in
+   * cells, or null if the board was empty.
+   */
+  private Rectangle shownLiveBounds;
+  /**
+   * The engine an {@link AdaptiveEngine} was running when the status bar
+   * last showed it.
+   */
+  private Engine shownEngine;
   private int cellSize = DEFAULT_CELL_SIZE;
   @Getter
   private StatusBar statusBar;
@@ -64,9 +85,7 @@ public class UniversePanel extends JPanel implements Observer {
     this.statusBar = new StatusBar();
     this.universe.getTickSystem().attach(statusBar);
     this.menuSite = new MenuSite();
-    CellUIFactory cellUIFactory = CellUIFactory.getInstance();
-    this.outermostCellUI = cellUIFactory.createCellUI(
-        universe.getOutermostCell(), this);
+    showOutermostCell();
 
     addComponentListener(new ComponentAdapter() {
            public void componentResized(final ComponentEvent e) {
@@ -76,7 +95,7 @@ public class UniversePanel extends JPanel implements Observer {
              // total size must be an even multiple of 63.
 
              Rectangle bounds = getBounds();
-             cellSize = bounds.height / universe.widthInCells();
+             cellSize = Math.max(1, bounds.height / universe.widthInCells());
              bounds.height = cellSize * universe.widthInCells();
              bounds.width = bounds.height;
              setBounds(bounds);
@@ -99,7 +118,7 @@ public class UniversePanel extends JPanel implements Observer {
              Point p = new Point();
              p.setX(mouseRealPoint.x / cellSize);
              p.setY(mouseRealPoint.y / cellSize);
-             outermostCellUI.click(p);
+             universe.toggle(p);
            }
          });
   }
@@ -117,9 +136,56 @@ public class UniversePanel extends JPanel implements Observer {
     // corner of the screen. Pretend that it's at (0,0)
     panelBounds.x = 0;
     panelBounds.y = 0;
+    panelBounds.width = cellSize * universe.widthInCells();
+    panelBounds.height = panelBounds.width;
     outermostCellUI.redraw(g, panelBounds, true);
   }
 
+  /**
+   * Repaint only the cells that can have changed since the last repaint:
+   * those in the live cells' bounding box, now or then, plus a cell all
+   * around for the borders.
+   */
+  private void repaintLiveBounds() {
+    Rectangle live = universe.getBoard().liveBounds();
+    Rectangle dirty = live;
+    if (shownLiveBounds != null) {
+      dirty = live == null ? shownLiveBounds : live.union(shownLiveBounds);
+    }
+    shownLiveBounds = live;
+    if (dirty == null) {
+      return;
+    }
+    repaint((dirty.x - 1) * cellSize, (dirty.y - 1) * cellSize,
+        (dirty.width + 2) * cellSize, (dirty.height + 2) * cellSize);
+  }
+
+  /**
+   * Build the UI of the universe's current outermost neighborhood, and
+   * shrink the cells so that a grown board still fits the panel.
+   */
+  private void showOutermostCell() {
+    shownCell = universe.getOutermostCell();
+    outermostCellUI = CellUIFactory.getInstance().createCellUI(shownCell,
+        this);
+    if (getHeight() > 0) {
+      cellSize = Math.max(1, getHeight() / universe.widthInCells());
+    }
+  }
+
+  /**
+   * Tell the user when an adaptive engine switches between its dense and
+   * sparse engines.
+   *
+   * @param engine
+   */
+  private void showEngine(final AdaptiveEngine engine) {
+    if (engine.getCurrent() != shownEngine) {
+      shownEngine = engine.getCurrent();
+      statusBar.setMessage("Engine: " + engine);
+    }
+  }
+
   /**
    *
    * @param o
@@ -127,7 +193,18 @@ public class UniversePanel extends JPanel implements Observer {
   @Override
   public void detectUpdate(final Observable o) {
     if (o instanceof Universe) {
-      repaint();
+      if (universe.getPeriod() > 0) {
+        statusBar.setMessage("Period " + universe.getPeriod());
+      } else if (universe.getEngine() instanceof AdaptiveEngine) {
+        showEngine((AdaptiveEngine) universe.getEngine());
+      }
+      if (universe.getOutermostCell() != shownCell) {
+        showOutermostCell();
+        shownLiveBounds = universe.getBoard().liveBounds();
+        repaint();
+        return;
+      }
+      repaintLiveBounds();
       return;
     }
     throw new UnsupportedOperationException("only support Universe");
@@ -147,7 +224,9 @@ public class UniversePanel extends JPanel implements Observer {
         TickSystem tickSystem = universe.getTickSystem();
         switch (e.getKeyCode()) {
           case KeyEvent.VK_RIGHT:
-            tickSystem.tick();
+            if (!universe.redo()) {
+              tickSystem.tick();
+            }
             break;
           case KeyEvent.VK_LEFT:
           case KeyEvent.VK_U:
@@ -214,6 +293,98 @@ public class UniversePanel extends JPanel implements Observer {
           }
         });
 
+    menuSite.addLine(this, "Go", "Redo",
+        e -> universe.redo());
+
+
+    menuSite.addLine(this, "Go", "Jump to generation...",
+        e -> {
+          String target = JOptionPane.showInputDialog(this,
+              "Generation (now " + universe.getGeneration() + "):");
+          if (target == null) {
+            return;
+          }
+          try {
+            long generation = Long.parseLong(target.trim());
+            universe.getTickSystem().stop();
+            if (generation < universe.getGeneration()
+                || universe.isLookingBack()) {
+              statusBar.setMessage("Generation "
+                  + universe.seek(generation));
+            } else {
+              universe.advance(generation - universe.getGeneration());
+            }
+          } catch (IllegalArgumentException theException) {
+            JOptionPane.showMessageDialog(null, theException.getMessage(),
+                "The Game of Life", JOptionPane.ERROR_MESSAGE);
+          }
+        });
+
+    menuSite.addLine(this, "Grid", "Rule...",
+        e -> {
+          String rulestring = JOptionPane.showInputDialog(this,
+              "Rule (e.g. B3/S23, B36/S23):",
+              universe.getRule().toString());
+          if (rulestring == null) {
+            return;
+          }
+          try {
+            universe.setRule(Rule.parse(rulestring));
+          } catch (IllegalArgumentException theException) {
+            JOptionPane.showMessageDialog(null, theException.getMessage(),
+                "The Game of Life", JOptionPane.ERROR_MESSAGE);
+          }
+        });
+
+    menuSite.addLine(this, "Grid", "Boundary...",
+        e -> {
+          Object boundary = JOptionPane.showInputDialog(this,
+              "What lies past the edges of the board:", "The Game of Life",
+              JOptionPane.QUESTION_MESSAGE, null, Boundary.values(),
+              universe.getBoundary());
+          if (boundary == null) {
+            return;
+          }
+          try {
+            universe.setBoundary((Boundary) boundary);
+          } catch (IllegalArgumentException theException) {
+            JOptionPane.showMessageDialog(null, theException.getMessage(),
+                "The Game of Life", JOptionPane.ERROR_MESSAGE);
+          }
+        });
+
+    menuSite.addLine(this, "Grid", "Grow Automatically",
+        e -> {
+          try {
+            universe.setGrowing(!universe.isGrowing());
+            statusBar.setMessage(universe.isGrowing()
+                ? "Board grows with its pattern" : "Board size is fixed");
+          } catch (IllegalArgumentException theException) {
+            JOptionPane.showMessageDialog(null, theException.getMessage(),
+                "The Game of Life", JOptionPane.ERROR_MESSAGE);
+          }
+        });
+
+    menuSite.addLine(this, "Grid", "Undo History...",
+        e -> {
+          History history = universe.getHistory();
+          String budget = JOptionPane.showInputDialog(this, String.format(
+              "%d generations, %d in memory (%d KB), %d evicted.%n"
+                  + "Generations to keep in memory:",
+              history.size(), history.getHeldCount(),
+              history.getByteCount() / 1024, history.getEvictedCount()),
+              history.getGenerationBudget());
+          if (budget == null) {
+            return;
+          }
+          try {
+            universe.setHistoryBudget(history.getByteBudget(),
+                Integer.parseInt(budget.trim()));
+          } catch (IllegalArgumentException theException) {
+            JOptionPane.showMessageDialog(null, theException.getMessage(),
+                "The Game of Life", JOptionPane.ERROR_MESSAGE);
+          }
+        });
 
     menuSite.addLine(this, "Grid", "Exit",
         e -> System.exit(0));
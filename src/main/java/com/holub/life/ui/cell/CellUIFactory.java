@@ -36,7 +36,9 @@ public final class CellUIFactory {
    * @return linked CellUI
    */
   public CellUI createCellUI(final Cell cell, final Component parent) {
-    if (cell instanceof Neighborhood) {
+    if (cell instanceof Neighborhood && ((Neighborhood) cell).isPacked()) {
+      return new PackedNeighborhoodUI((Neighborhood) cell, parent);
+    } else if (cell instanceof Neighborhood) {
       return new NeighborhoodUI((Neighborhood) cell, parent);
     } else if (cell instanceof Resident) {
       return new ResidentUI((Resident) cell, parent);
@@ -84,9 +84,13 @@ public class NeighborhoodUI implements CellUI {
 
       readingPermitted.waitForTrue();
 
+      // Subcells outside the area being repainted needn't be drawn.
+      Rectangle clip = g.getClipBounds();
       for (int row = 0; row < gridSize; ++row) {
         for (int column = 0; column < gridSize; ++column) {
-          grid[row][column].redraw(g, subcell, drawAll);
+          if (clip == null || clip.intersects(subcell)) {
+            grid[row][column].redraw(g, subcell, drawAll);
+          }
           subcell.translate(subcell.width, 0);
         }
         subcell.translate(-compoundWidth, subcell.height);
@@ -124,6 +128,7 @@ public class NeighborhoodUI implements CellUI {
     int column = here.getX() / unitSize;
     grid[row][column].click(p);
     cell.setAmActive(true);
+    cell.markChanged();
     cell.update();
   }
 
@@ -0,0 +1,126 @@
+package com.holub.life.ui.cell;
+
+import com.holub.asynch.ConditionVariable;
+import com.holub.life.model.Point;
+import com.holub.life.model.cell.Neighborhood;
+import com.holub.tools.Observable;
+import com.holub.life.ui.Colors;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+/**
+ * Draws a packed {@link Neighborhood} straight from its bits, with the same
+ * colors as {@link ResidentUI} and the same border as
+ * {@link NeighborhoodUI}. There are no per-cell UI objects.
+ */
+public class PackedNeighborhoodUI implements CellUI {
+
+  /**
+   *
+   */
+  private static final Color BORDER_COLOR = Colors.DARK_YELLOW;
+  /**
+   *
+   */
+  private static final Color LIVE_COLOR = Color.RED;
+  /**
+   *
+   */
+  private static final Color DEAD_COLOR = Colors.LIGHT_YELLOW;
+  /**
+   *
+   */
+  private final Component parent;
+  /**
+   *
+   */
+  private Neighborhood cell;
+
+  /**
+   *
+   * @param c
+   * @param p
+   */
+  public PackedNeighborhoodUI(final Neighborhood c, final Component p) {
+    this.cell = c;
+    this.parent = p;
+    this.cell.attach(this);
+  }
+
+  /**
+   * Redraw the block only if something changed in the last transition.
+   *
+   * @param g Draw onto this graphics.
+   * @param here Bounding rectangle for the block.
+   * @param drawAll force a redraw, even if nothing has changed.
+   */
+  @Override
+  public void redraw(final Graphics g, final Rectangle here,
+      final boolean drawAll) {
+    if (!cell.isAmActive() && !cell.isOneLastRefreshRequired() && !drawAll) {
+      return;
+    }
+    try {
+      cell.setOneLastRefreshRequired(false);
+      ConditionVariable readingPermitted = cell.getReadingPermitted();
+      if (!readingPermitted.isTrue()) {
+        return;
+      }
+      readingPermitted.waitForTrue();
+
+      final int gridSize = cell.getGridSize();
+      final int size = here.width / gridSize;
+      Graphics gReplica = g.create();
+      for (int row = 0; row < gridSize; ++row) {
+        for (int column = 0; column < gridSize; ++column) {
+          int x = here.x + column * size;
+          int y = here.y + row * size;
+          gReplica.setColor(cell.isAlive(row * gridSize + column)
+              ? LIVE_COLOR : DEAD_COLOR);
+          gReplica.fillRect(x + 1, y + 1, size - 1, size - 1);
+          gReplica.setColor(BORDER_COLOR);
+          gReplica.drawLine(x, y, x, y + size);
+          gReplica.drawLine(x, y, x + size, y);
+        }
+      }
+
+      gReplica.setColor(Colors.LIGHT_ORANGE);
+      gReplica.drawRect(here.x, here.y, here.width, here.height);
+
+      if (cell.isAmActive()) {
+        gReplica.setColor(Color.BLUE);
+        gReplica.drawRect(here.x + 1, here.y + 1,
+            here.width - 2, here.height - 2);
+      }
+
+      gReplica.dispose();
+    } catch (InterruptedException e) {  // thrown from waitForTrue. Just
+      // ignore it, since not printing is a
+      // reasonable reaction to an interrupt.
+    }
+  }
+
+  /**
+   *
+   * @param here
+   */
+  @Override
+  public void click(final Point here) {
+    int bit = here.getY() * cell.getGridSize() + here.getX();
+    cell.setAlive(bit, !cell.isAlive(bit));
+    cell.setAmActive(true);
+    cell.markChanged();
+    cell.update();
+  }
+
+  /**
+   *
+   * @param o
+   */
+  @Override
+  public void detectUpdate(final Observable o) {
+    parent.repaint();
+  }
+}
@@ -0,0 +1,38 @@
+package com.holub.life.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RuleTest {
+
+  @Test
+  void testConway() {
+    for (int n = 0; n <= Rule.MAX_NEIGHBORS; n++) {
+      assertEquals(n == 3, Rule.CONWAY.next(false, n));
+      assertEquals(n == 2 || n == 3, Rule.CONWAY.next(true, n));
+    }
+  }
+
+  @Test
+  void testParse() {
+    assertEquals(Rule.CONWAY, Rule.parse("b3/s23"));
+    assertEquals(Rule.CONWAY, Rule.parse("S23/B3"));
+    assertEquals(Rule.CONWAY, Rule.parse("23/3"));
+    assertEquals("B36/S23", Rule.parse("B36/S23").toString());
+    assertEquals("B2/S", Rule.parse("B2/S").toString());
+    assertTrue(Rule.parse("B0/S8").isBirthOnZero());
+    assertFalse(Rule.CONWAY.isBirthOnZero());
+  }
+
+  @Test
+  void testParseRejectsGarbage() {
+    assertThrows(IllegalArgumentException.class, () -> Rule.parse("B3S23"));
+    assertThrows(IllegalArgumentException.class, () -> Rule.parse("B9/S23"));
+    assertThrows(IllegalArgumentException.class, () -> Rule.parse("B3/X23"));
+    assertThrows(IllegalArgumentException.class, () -> Rule.parse("B3/S2/3"));
+  }
+}
@@ -0,0 +1,229 @@
+package com.holub.life.model.cell;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.system.Universe;
+import com.holub.life.system.engine.AdaptiveEngine;
+import com.holub.tools.Storable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class SnapshotTest {
+
+  static final int BLOCKS = 16;
+
+  /**
+   * @param snapshot
+   * @param parts every part of the snapshot, by identity.
+   * @return parts.
+   */
+  static Set<Snapshot> parts(final Snapshot snapshot,
+      final Set<Snapshot> parts) {
+    parts.add(snapshot);
+    if (!snapshot.isBlock()) {
+      for (int row = 0; row < BLOCKS; row++) {
+        for (int column = 0; column < BLOCKS; column++) {
+          Snapshot child = snapshot.child(row, column);
+          if (child != null) {
+            parts(child, parts);
+          }
+        }
+      }
+    }
+    return parts;
+  }
+
+  static Set<Snapshot> parts(final Snapshot snapshot) {
+    return parts(snapshot, Collections.newSetFromMap(new IdentityHashMap<>()));
+  }
+
+  /**
+   * A snapshot taken after one block changed shares every other block
+   * with the one before.
+   */
+  @Test
+  void testSharesUnchangedBlocks() {
+    for (boolean packed : new boolean[] {false, true}) {
+      Neighborhood board = new Neighborhood(BLOCKS, packed
+          ? Neighborhood.createPacked()
+          : new Neighborhood(8, new Resident()));
+      Random random = new Random(1);
+      Storable soup = board.createMemento();
+      for (int i = 0; i < 2000; i++) {
+        ((Cell.Memento) soup).markAsAlive(new Point(random.nextInt(128),
+            random.nextInt(128)));
+      }
+      board.transfer(soup, new Point(0, 0), Cell.LOAD);
+      Snapshot before = board.snapshot(null);
+      assertSame(before, board.snapshot(before));
+
+      int x = 0;
+      while (before.isAlive(x, 100)) {
+        ++x;
+      }
+      Storable one = board.createMemento();
+      ((Cell.Memento) one).markAsAlive(new Point(x, 100));
+      board.transfer(one, new Point(0, 0), Cell.LOAD);
+      board.markChanged();
+      Snapshot after = board.snapshot(before);
+      Set<Snapshot> added = parts(after);
+      added.removeAll(parts(before));
+      // The new block and the root.
+      assertEquals(2, added.size());
+      assertTrue(after.isAlive(x, 100));
+      assertFalse(before.isAlive(x, 100));
+    }
+  }
+
+  /**
+   * Restoring a snapshot brings back exactly the cells it was taken of.
+   */
+  @Test
+  void testRestore() {
+    Neighborhood board = new Neighborhood(BLOCKS,
+        new Neighborhood(8, new Resident()));
+    Random random = new Random(2);
+    Storable soup = board.createMemento();
+    for (int i = 0; i < 500; i++) {
+      ((Cell.Memento) soup).markAsAlive(new Point(random.nextInt(128),
+          random.nextInt(128)));
+    }
+    board.transfer(soup, new Point(0, 0), Cell.LOAD);
+    Storable expected = board.createMemento();
+    Snapshot snapshot = board.snapshot(null);
+    assertEquals(((Cell.Memento) expected).getLiveCells().size(),
+        snapshot.getLiveCells().size());
+
+    board.clear();
+    assertTrue(board.snapshot(snapshot).isEmpty());
+    board.restore(snapshot);
+    assertEquals(expected, board.createMemento());
+    assertThrows(IllegalArgumentException.class,
+        () -> new Neighborhood(2, new Neighborhood(8, new Resident()))
+            .restore(snapshot));
+  }
+
+  /**
+   * A memento follows every change to the board, though only the blocks
+   * that changed are looked at, and lists the cells in the same order as
+   * a full store does.
+   */
+  @Test
+  void testMementoFollowsChanges() {
+    for (boolean packed : new boolean[] {false, true}) {
+      Neighborhood board = new Neighborhood(BLOCKS, packed
+          ? Neighborhood.createPacked()
+          : new Neighborhood(8, new Resident()));
+      Random random = new Random(3);
+      Storable soup = board.createMemento();
+      for (int i = 0; i < 1500; i++) {
+        ((Cell.Memento) soup).markAsAlive(new Point(random.nextInt(128),
+            random.nextInt(128)));
+      }
+      board.transfer(soup, new Point(0, 0), Cell.LOAD);
+      Snapshot first = board.snapshot(null);
+      for (int generation = 0; generation < 20; generation++) {
+        board.figureNextState();
+        board.transition();
+        Storable full = new Neighborhood(BLOCKS,
+            new Neighborhood(8, new Resident())).createMemento();
+        board.transfer(full, new Point(0, 0), Cell.STORE);
+        assertEquals(full, board.createMemento());
+      }
+      board.clear();
+      assertTrue(((Cell.Memento) board.createMemento()).getLiveCells()
+          .isEmpty());
+      assertFalse(first.isEmpty());
+    }
+  }
+
+  /**
+   * Listing by row gives the same cells as listing by block, sorted.
+   */
+  @Test
+  void testLiveCellsByRow() {
+    Neighborhood board = new Neighborhood(3,
+        new Neighborhood(BLOCKS, Neighborhood.createPacked()));
+    Random random = new Random(4);
+    Storable soup = board.createMemento();
+    for (int i = 0; i < 3000; i++) {
+      ((Cell.Memento) soup).markAsAlive(new Point(random.nextInt(384),
+          random.nextInt(384)));
+    }
+    board.transfer(soup, new Point(0, 0), Cell.LOAD);
+    Snapshot snapshot = board.snapshot(null);
+    long[] expected = snapshot.getLiveCells().stream()
+        .mapToLong(p -> p.getY() * (1L << 32) + p.getX()).sorted()
+        .toArray();
+    assertArrayEquals(expected, snapshot.getLiveCellsByRow());
+  }
+
+  /**
+   * Under an engine that writes back only the cells that changed, a block
+   * none of whose cells changed hands out the same snapshot tick after
+   * tick, without being looked at again.
+   */
+  @Test
+  void testCleanBlockNotRecaptured() {
+    final int ticks = 3;
+    for (boolean packed : new boolean[] {false, true}) {
+      Universe universe = new Universe(BLOCKS, new AdaptiveEngine(), packed);
+      // A still life in the corner block, and a glider far from it.
+      for (int[] cell : new int[][] {{2, 2}, {3, 2}, {2, 3}, {3, 3},
+          {61, 60}, {62, 61}, {60, 62}, {61, 62}, {62, 62}}) {
+        universe.toggle(new Point(cell[0], cell[1]));
+      }
+      universe.getTickSystem().tick();
+      Neighborhood still =
+          (Neighborhood) universe.getOutermostCell().getGrid()[0][0];
+      Snapshot before = universe.snapshot();
+      int recaptured = still.getRecapturedCount();
+      for (int i = 0; i < ticks; i++) {
+        universe.getTickSystem().tick();
+      }
+      Snapshot after = universe.snapshot();
+
+      assertFalse(before == after);
+      assertSame(before.child(0, 0), after.child(0, 0));
+      assertEquals(recaptured, still.getRecapturedCount(),
+          packed ? "packed" : "");
+    }
+  }
+
+  /**
+   * The differences between two snapshots are the cells that changed.
+   */
+  @Test
+  void testDifferences() {
+    Neighborhood board = new Neighborhood(BLOCKS, Neighborhood.createPacked());
+    Storable glider = board.createMemento();
+    for (Point p : new Point[] {new Point(9, 8), new Point(10, 9),
+        new Point(8, 10), new Point(9, 10), new Point(10, 10)}) {
+      ((Cell.Memento) glider).markAsAlive(p);
+    }
+    board.transfer(glider, new Point(0, 0), Cell.LOAD);
+    Snapshot before = board.snapshot(null);
+    Storable edit = board.createMemento();
+    ((Cell.Memento) edit).markAsAlive(new Point(100, 3));
+    board.clear();
+    board.transfer(edit, new Point(0, 0), Cell.LOAD);
+    ((Neighborhood) board.getGrid()[1][1]).setAlive(0, true);
+    board.markChanged();
+
+    long[] differences = board.snapshot(before).getDifferences(before);
+    Arrays.sort(differences);
+    assertArrayEquals(new long[] {(3L << 32) + 100, (8L << 32) + 8},
+        differences);
+    assertEquals(0, before.getDifferences(before).length);
+  }
+}
@@ -0,0 +1,244 @@
+package com.holub.life.system;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class HistoryTest {
+
+  static final int GENERATIONS = 1000;
+
+  /**
+   * @param random
+   * @param cells sorted.
+   * @param flips number of cells to flip.
+   * @return the cells with some flipped, around (0, 0).
+   */
+  static long[] flip(final Random random, final long[] cells,
+      final int flips) {
+    final int range = 50;
+    long[] changes = new long[flips];
+    for (int i = 0; i < flips; i++) {
+      changes[i] = History.cell(random.nextInt(range) - range / 2,
+          random.nextInt(range) - range / 2);
+    }
+    Arrays.sort(changes);
+    changes = Arrays.stream(changes).distinct().toArray();
+    return History.symmetricDifference(cells, changes);
+  }
+
+  @Test
+  void testPacksNegativeCells() {
+    for (int y : new int[] {-3, 0, 7}) {
+      for (int x : new int[] {Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE}) {
+        assertEquals(x, History.x(History.cell(x, y)));
+        assertEquals(y, History.y(History.cell(x, y)));
+      }
+    }
+    assertTrue(History.cell(Integer.MAX_VALUE, -1) < History.cell(-1, 0));
+  }
+
+  /**
+   * Every generation comes back, whether it's a keyframe or a delta, and
+   * whether it's looked up or popped.
+   */
+  @Test
+  void testRebuildsEveryGeneration() {
+    Random random = new Random(1);
+    History history = new History();
+    List<long[]> expected = new ArrayList<>();
+    long[] cells = new long[0];
+    for (int g = 0; g < GENERATIONS; g++) {
+      // Now and then a big change, which starts a keyframe.
+      cells = flip(random, cells, g % 100 == 0 ? 500 : 5);
+      expected.add(cells);
+      history.push(cells, g);
+    }
+    for (int i = 0; i < GENERATIONS; i += 37) {
+      assertArrayEquals(expected.get(i), history.get(i), "generation " + i);
+    }
+    for (int g = GENERATIONS - 1; g >= 0; g--) {
+      assertEquals(g, history.getGeneration(g));
+      assertArrayEquals(expected.get(g), history.pop(), "generation " + g);
+    }
+    assertEquals(0, history.size());
+    assertEquals(0, history.getByteCount());
+  }
+
+  @Test
+  void testFindsGeneration() {
+    History history = new History();
+    assertEquals(-1, history.find(0));
+    for (int i = 0; i < GENERATIONS; i++) {
+      // Every other generation, as if advance() had jumped over the rest.
+      history.push(new long[] {History.cell(i, 0)}, 2L * i + 1);
+    }
+    assertEquals(-1, history.find(0));
+    assertEquals(0, history.find(1));
+    assertEquals(0, history.find(2));
+    assertEquals(GENERATIONS / 2, history.find(GENERATIONS + 1));
+    assertEquals(GENERATIONS - 1, history.find(Long.MAX_VALUE));
+  }
+
+  /**
+   * Pushing the flips along with each generation keeps exactly what working
+   * them out would have.
+   */
+  @Test
+  void testPushesGivenFlips() {
+    Random random = new Random(1);
+    History given = new History();
+    History derived = new History();
+    long[] previous = new long[0];
+    for (int g = 0; g < GENERATIONS; g++) {
+      long[] cells = flip(random, previous, g % 100 == 0 ? 500 : 5);
+      given.push(cells, History.symmetricDifference(previous, cells), g);
+      derived.push(cells, g);
+      previous = cells;
+    }
+    assertEquals(derived.getByteCount(), given.getByteCount());
+    for (int i = 0; i < GENERATIONS; i += 37) {
+      assertArrayEquals(derived.get(i), given.get(i), "generation " + i);
+    }
+  }
+
+  /**
+   * @param history
+   * @param generations
+   * @return the generations pushed, oldest first.
+   */
+  static List<long[]> fill(final History history, final int generations) {
+    Random random = new Random(2);
+    List<long[]> pushed = new ArrayList<>();
+    long[] cells = new long[0];
+    for (int g = 0; g < generations; g++) {
+      cells = flip(random, cells, g % 100 == 0 ? 500 : 5);
+      pushed.add(cells);
+      history.push(cells, g);
+    }
+    return pushed;
+  }
+
+  /**
+   * Past the budget the oldest generations are dropped, and the rest can
+   * still be rebuilt.
+   */
+  @Test
+  void testEvictsOldest() {
+    final int budget = 100;
+    History history = new History();
+    history.setBudget(Long.MAX_VALUE, budget);
+    List<long[]> expected = fill(history, GENERATIONS);
+    assertEquals(budget, history.size());
+    assertEquals(GENERATIONS - budget, history.getEvictedCount());
+    for (int i = budget - 1; i >= 0; i--) {
+      int g = GENERATIONS - budget + i;
+      assertEquals(g, history.getGeneration(i));
+      assertArrayEquals(expected.get(g), history.pop(), "generation " + g);
+    }
+
+    history = new History();
+    expected = fill(history, GENERATIONS);
+    history.setBudget(history.getByteCount() / 2, Integer.MAX_VALUE);
+    assertTrue(history.getByteCount() <= history.getByteBudget());
+    int last = history.size() - 1;
+    assertArrayEquals(expected.get(GENERATIONS - 1), history.get(last));
+    assertArrayEquals(expected.get(GENERATIONS - history.size()),
+        history.get(0));
+  }
+
+  /**
+   * Generations past the budget are spilled to a file, and undo reads
+   * them back.
+   */
+  @Test
+  void testSpillsToFile() throws IOException {
+    final int budget = 50;
+    File file = File.createTempFile("history", ".spill");
+    file.deleteOnExit();
+    History history = new History();
+    history.setSpillFile(file);
+    history.setBudget(Long.MAX_VALUE, budget);
+    List<long[]> expected = fill(history, GENERATIONS);
+    assertEquals(GENERATIONS, history.size());
+    assertEquals(budget, history.getHeldCount());
+    assertEquals(GENERATIONS - budget, history.getSpilledCount());
+    assertTrue(file.length() > 0);
+
+    assertArrayEquals(expected.get(GENERATIONS / 2),
+        history.get(GENERATIONS / 2));
+    assertEquals(GENERATIONS - budget, history.getSpilledCount());
+    for (int g = GENERATIONS - 1; g >= 0; g--) {
+      assertEquals(g, history.getGeneration(g));
+      assertArrayEquals(expected.get(g), history.pop(), "generation " + g);
+    }
+    assertEquals(0, history.getSpilledCount());
+    history.setSpillFile(null);
+  }
+
+  /**
+   * Truncating keeps the older generations, spilled or not.
+   */
+  @Test
+  void testTruncate() throws IOException {
+    final int budget = 50;
+    File file = File.createTempFile("history", ".spill");
+    file.deleteOnExit();
+    History history = new History();
+    history.setSpillFile(file);
+    history.setBudget(Long.MAX_VALUE, budget);
+    List<long[]> expected = fill(history, GENERATIONS);
+    history.truncate(GENERATIONS - 10);
+    assertEquals(GENERATIONS - 10, history.size());
+    assertArrayEquals(expected.get(GENERATIONS - 11), history.pop());
+    history.truncate(300);
+    assertEquals(300, history.size());
+    assertArrayEquals(expected.get(299), history.get(299));
+    assertArrayEquals(expected.get(100), history.get(100));
+    history.push(expected.get(300), 300);
+    assertArrayEquals(expected.get(300), history.pop());
+    assertArrayEquals(expected.get(299), history.pop());
+    history.setSpillFile(null);
+  }
+
+  /**
+   * A 1000-cell pattern that barely changes takes kilobytes, not the
+   * megabytes a whole copy of every generation would.
+   */
+  @Test
+  void testSteadyPatternIsCheap() {
+    final long maxBytes = 32 * 1024;
+    List<Long> blocks = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      int x = 3 * (i % 16);
+      int y = 3 * (i / 16);
+      blocks.add(History.cell(x, y));
+      blocks.add(History.cell(x + 1, y));
+      blocks.add(History.cell(x, y + 1));
+      blocks.add(History.cell(x + 1, y + 1));
+    }
+    long[] still = blocks.stream().mapToLong(Long::longValue).sorted()
+        .toArray();
+    long[] horizontal = {History.cell(99, 100), History.cell(100, 100),
+        History.cell(101, 100)};
+    long[] vertical = {History.cell(100, 99), History.cell(100, 100),
+        History.cell(100, 101)};
+    History history = new History();
+    for (int g = 0; g < GENERATIONS; g++) {
+      long[] blinker = g % 2 == 0 ? horizontal : vertical;
+      long[] cells = History.symmetricDifference(still, blinker);
+      Arrays.sort(cells);
+      history.push(cells, g);
+    }
+    assertTrue(history.getByteCount() < maxBytes,
+        history.getByteCount() + " bytes");
+  }
+}
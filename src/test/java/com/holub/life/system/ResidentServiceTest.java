@@ -0,0 +1,67 @@
+package com.holub.life.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.model.cell.Resident;
+import org.junit.jupiter.api.Test;
+
+class ResidentServiceTest {
+
+  @Test
+  void testLookupBothWays() {
+    final int width = 100;
+    ResidentService service = new ResidentService();
+    Resident[] residents = new Resident[width * width];
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        residents[y * width + x] = new Resident();
+        assertTrue(service.register(residents[y * width + x], x, y));
+      }
+    }
+
+    assertEquals(width * width, service.size());
+    assertSame(residents[3 * width + 7], service.getResident(new Point(7, 3)));
+    assertEquals(new Point(7, 3), service.getPoint(residents[3 * width + 7]));
+    assertSame(residents[4 * width + 6],
+        service.getResident(residents[3 * width + 7], -1, 1));
+    assertNull(service.getResident(residents[0], -1, 0));
+    assertNull(service.getResident(width, 0));
+    assertNull(service.getPoint(new Resident()));
+  }
+
+  @Test
+  void testNegativeCoordinates() {
+    ResidentService service = new ResidentService();
+    Resident resident = new Resident();
+    service.register(resident, -5, -9);
+    assertSame(resident, service.getResident(-5, -9));
+    assertNull(service.getResident(-9, -5));
+    assertEquals(new Point(-5, -9), service.getPoint(resident));
+  }
+
+  @Test
+  void testRegisterReplaces() {
+    ResidentService service = new ResidentService();
+    Resident first = new Resident();
+    Resident second = new Resident();
+    assertTrue(service.register(first, 1, 2));
+    assertFalse(service.register(second, 1, 2));
+    assertEquals(1, service.size());
+    assertSame(second, service.getResident(1, 2));
+    assertNull(service.getPoint(first));
+  }
+
+  @Test
+  void testUniversesAreIndependent() {
+    Universe first = new Universe();
+    Universe second = new Universe();
+    first.toggle(new Point(2, 3));
+    assertTrue(first.getBoard().isAlive(2, 3));
+    assertFalse(second.getBoard().isAlive(2, 3));
+  }
+}
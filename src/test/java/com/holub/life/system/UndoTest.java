@@ -1,16 +1,23 @@
 package com.holub.life.system;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import com.holub.life.model.Point;
 import com.holub.life.model.cell.Cell;
 import com.holub.life.model.cell.Neighborhood;
+import com.holub.life.system.engine.BitBoardEngine;
 import org.junit.jupiter.api.Test;
 import com.holub.tools.Storable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 public class UndoTest {
 
@@ -40,4 +47,51 @@ public class UndoTest {
       fail();
     }
   }
+
+  /**
+   * Any generation can be sought back to and replayed forward from, and
+   * moving on from it forgets the generations after it.
+   */
+  @Test
+  void testSeekAndRedo() {
+    final int generations = 600;
+    final int blocks = 8;
+    Universe universe = new Universe(blocks, new BitBoardEngine());
+    Random random = new Random(3);
+    for (int y = 16; y < 48; y++) {
+      for (int x = 16; x < 48; x++) {
+        universe.getBoard().getResident(x, y)
+            .setAlive(random.nextInt(3) == 0);
+      }
+    }
+    List<Storable> expected = new ArrayList<>();
+    expected.add(universe.getOutermostCell().createMemento());
+    for (int g = 1; g <= generations; g++) {
+      universe.getTickSystem().tick();
+      expected.add(universe.getOutermostCell().createMemento());
+    }
+
+    assertEquals(123, universe.seek(123));
+    assertTrue(universe.isLookingBack());
+    assertEquals(expected.get(123),
+        universe.getOutermostCell().createMemento());
+    for (int g = 124; g <= 128; g++) {
+      assertTrue(universe.redo());
+      assertEquals(g, universe.getGeneration());
+      assertEquals(expected.get(g),
+          universe.getOutermostCell().createMemento());
+    }
+    assertEquals(generations, universe.seek(generations));
+    assertFalse(universe.redo());
+    assertThrows(IllegalArgumentException.class,
+        () -> universe.seek(generations + 1));
+
+    universe.seek(500);
+    universe.getTickSystem().tick();
+    assertFalse(universe.isLookingBack());
+    assertEquals(501, universe.getGeneration());
+    assertEquals(expected.get(501),
+        universe.getOutermostCell().createMemento());
+    assertEquals(502, universe.getHistory().size());
+  }
 }
@@ -0,0 +1,299 @@
+package com.holub.life.system;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Point;
+import com.holub.life.model.cell.Cell;
+import com.holub.life.system.engine.BitBoardEngine;
+import com.holub.life.system.engine.Board;
+import com.holub.life.system.engine.CellEngine;
+import com.holub.life.system.engine.Engine;
+import com.holub.life.system.engine.HashLifeEngine;
+import com.holub.life.system.engine.NeighborCountEngine;
+import com.holub.life.system.engine.SparseEngine;
+import com.holub.tools.Storable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class UniverseTest {
+
+  static void load(final Universe universe, final String pattern)
+      throws IOException {
+    try (FileInputStream in = new FileInputStream(new File(pattern))) {
+      Storable memento = universe.getOutermostCell().createMemento();
+      memento.load(in);
+      universe.getOutermostCell().transfer(memento, new Point(0, 0),
+          Cell.LOAD);
+    }
+  }
+
+  /**
+   * Advancing is the same as ticking, but notifies only once.
+   */
+  @Test
+  void testAdvance() throws IOException {
+    final int generations = 12;
+    Universe ticked = new Universe();
+    load(ticked, "testcases/Glider/1");
+    for (int i = 0; i < generations; i++) {
+      ticked.getTickSystem().tick();
+    }
+
+    Universe advanced = new Universe();
+    load(advanced, "testcases/Glider/1");
+    AtomicInteger updates = new AtomicInteger();
+    advanced.attach(o -> updates.incrementAndGet());
+    advanced.advance(generations);
+
+    assertEquals(1, updates.get());
+    assertEquals(generations, advanced.getGeneration());
+    assertEquals(ticked.getOutermostCell().createMemento(),
+        advanced.getOutermostCell().createMemento());
+  }
+
+  /**
+   * Oscillators are recognized, and replaying them gives the same
+   * generations as computing them.
+   */
+  @Test
+  void testCycleDetection() throws IOException {
+    final int generations = 50;
+    String[] patterns = {"Blinker", "Pulsar", "Penta_decathlon", "Toad"};
+    for (String pattern : patterns) {
+      int period = new File("testcases/" + pattern).list().length - 1;
+      Universe universe = new Universe();
+      load(universe, "testcases/" + pattern + "/1");
+      for (int i = 0; i < generations; i++) {
+        universe.getTickSystem().tick();
+      }
+      assertEquals(period, universe.getPeriod(), pattern);
+
+      Universe expected = new Universe();
+      load(expected, "testcases/" + pattern + "/"
+          + (generations % period + 1));
+      assertEquals(expected.getOutermostCell().createMemento(),
+          universe.getOutermostCell().createMemento(), pattern);
+
+      universe.advance(period * 1000L + 1);
+      expected.getTickSystem().tick();
+      assertEquals(expected.getOutermostCell().createMemento(),
+          universe.getOutermostCell().createMemento(), pattern);
+    }
+  }
+
+  /**
+   * A cell edited straight through the composite while a cycle is being
+   * replayed isn't overwritten by the next generation of the cycle.
+   */
+  @Test
+  void testEditBehindCycle() throws IOException {
+    Universe universe = new Universe();
+    load(universe, "testcases/Blinker/1");
+    for (int i = 0; i < 10; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertEquals(2, universe.getPeriod());
+
+    // A block in the far corner, edited without telling the universe.
+    Board board = universe.getBoard();
+    int corner = board.getWidth() - 3;
+    for (int i = 0; i < 4; i++) {
+      board.getResident(corner + i % 2, corner + i / 2).setAlive(true);
+    }
+    universe.getTickSystem().tick();
+    assertEquals(0, universe.getPeriod());
+    for (int i = 0; i < 10; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertEquals(2, universe.getPeriod());
+    for (int i = 0; i < 4; i++) {
+      assertTrue(board.isAlive(corner + i % 2, corner + i / 2));
+    }
+  }
+
+  /**
+   * A still life idles the clock; an edit starts computing again.
+   */
+  @Test
+  void testStillLifeIdlesClock() throws IOException {
+    Universe universe = new Universe();
+    load(universe, "testcases/Block/1");
+    universe.getTickSystem().setSpeed("Agonizing");
+    universe.getTickSystem().tick();
+    universe.getTickSystem().tick();
+    assertEquals(1, universe.getPeriod());
+    assertFalse(universe.getTickSystem().isRunning());
+
+    universe.toggle(new Point(0, 0));
+    assertEquals(0, universe.getPeriod());
+  }
+
+  /**
+   * A jump is undone in one step, generation count included.
+   */
+  @Test
+  void testRollbackUndoesJump() throws IOException {
+    Universe universe = new Universe();
+    load(universe, "testcases/Glider/1");
+    universe.getTickSystem().tick();
+    Storable before = universe.getOutermostCell().createMemento();
+    universe.advance(1_000_000L);
+    assertEquals(1_000_001L, universe.getGeneration());
+
+    universe.doRollback();
+    assertEquals(1L, universe.getGeneration());
+    assertEquals(before, universe.getOutermostCell().createMemento());
+  }
+
+  /**
+   * A branch starts at the generation shown and goes its own way.
+   */
+  @Test
+  void testFork() throws IOException {
+    Universe universe = new Universe();
+    load(universe, "testcases/Glider/1");
+    for (int i = 0; i < 10; i++) {
+      universe.getTickSystem().tick();
+    }
+    Storable tenth = universe.getOutermostCell().createMemento();
+    universe.seek(5);
+    Storable fifth = universe.getOutermostCell().createMemento();
+
+    Universe branch = universe.fork(new CellEngine());
+    Universe twig = branch.fork(new CellEngine());
+    // Nothing is built until it's needed.
+    assertFalse(branch.isBuilt());
+    assertFalse(twig.isBuilt());
+    assertSame(universe.snapshot(), branch.snapshot());
+    assertSame(universe.snapshot(), twig.snapshot());
+    assertEquals(5L, branch.getGeneration());
+    assertEquals(fifth, branch.getOutermostCell().createMemento());
+    assertTrue(branch.isBuilt());
+    assertFalse(twig.isBuilt());
+    for (int i = 0; i < 5; i++) {
+      branch.getTickSystem().tick();
+    }
+    assertEquals(10L, branch.getGeneration());
+    assertEquals(tenth, branch.getOutermostCell().createMemento());
+    assertEquals(5L, universe.getGeneration());
+    assertEquals(fifth, universe.getOutermostCell().createMemento());
+
+    branch.doRollback();
+    assertEquals(9L, branch.getGeneration());
+    assertEquals(fifth, twig.getOutermostCell().createMemento());
+  }
+
+  /**
+   * @param universe
+   * @return the live cells, relative to the universe's origin.
+   */
+  static Set<Point> liveCells(final Universe universe) {
+    Board board = universe.getBoard();
+    Point origin = universe.getOrigin();
+    Set<Point> cells = new HashSet<>();
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        if (board.isAlive(x, y)) {
+          cells.add(new Point(x - origin.getX(), y - origin.getY()));
+        }
+      }
+    }
+    return cells;
+  }
+
+  static List<Supplier<Engine>> growingEngines() {
+    return Arrays.asList(CellEngine::new, BitBoardEngine::new,
+        NeighborCountEngine::new, HashLifeEngine::new, SparseEngine::new);
+  }
+
+  /**
+   * A glider on a growing board flies as it would on an unbounded plane.
+   */
+  @Test
+  void testGliderGrowsBoard() {
+    final int generations = 200;
+    int[][] glider = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    Set<Point> expected = new HashSet<>();
+    for (int[] cell : glider) {
+      expected.add(new Point(cell[0] + generations / 4,
+          cell[1] + generations / 4));
+    }
+    for (Supplier<Engine> factory : growingEngines()) {
+      Engine engine = factory.get();
+      String name = engine.getClass().getSimpleName();
+      Universe ticked = new Universe(2, engine);
+      ticked.setGrowing(true);
+      for (int[] cell : glider) {
+        ticked.getBoard().getResident(cell[0], cell[1]).setAlive(true);
+      }
+      for (int i = 0; i < generations; i++) {
+        ticked.getTickSystem().tick();
+      }
+      assertEquals(expected, liveCells(ticked), name);
+      assertTrue(ticked.getGrownLevels() > 0, name);
+
+      Universe advanced = new Universe(2, factory.get());
+      advanced.setGrowing(true);
+      for (int[] cell : glider) {
+        advanced.getBoard().getResident(cell[0], cell[1]).setAlive(true);
+      }
+      advanced.advance(generations);
+      assertEquals(expected, liveCells(advanced), name);
+    }
+  }
+
+  /**
+   * Once the cells that made a board grow have died, it shrinks back, and
+   * undo puts them back where they were.
+   */
+  @Test
+  void testBoardShrinks() throws IOException {
+    Universe universe = new Universe(2, new CellEngine());
+    universe.setGrowing(true);
+    Board board = universe.getBoard();
+    int width = board.getWidth();
+    // A lone cell on the edge dies straight away; the block in the middle
+    // stays.
+    board.getResident(0, 0).setAlive(true);
+    for (int[] cell : new int[][] {{7, 7}, {8, 7}, {7, 8}, {8, 8}}) {
+      board.getResident(cell[0], cell[1]).setAlive(true);
+    }
+    Set<Point> start = liveCells(universe);
+
+    universe.getTickSystem().tick();
+    assertEquals(3 * width, universe.getBoard().getWidth());
+    // The board is checked for shrinking every 64 generations.
+    for (int i = 0; i < 64; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertEquals(width, universe.getBoard().getWidth());
+    assertEquals(0, universe.getGrownLevels());
+    assertEquals(4, liveCells(universe).size());
+
+    for (int i = 0; i < 65; i++) {
+      universe.doRollback();
+    }
+    assertEquals(start, liveCells(universe));
+  }
+
+  @Test
+  void testOnlyDeadEdgesGrow() {
+    Universe universe = new Universe(2, new CellEngine());
+    universe.setBoundary(Boundary.TORUS);
+    assertThrows(IllegalArgumentException.class,
+        () -> universe.setGrowing(true));
+  }
+}
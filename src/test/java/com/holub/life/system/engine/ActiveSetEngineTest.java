@@ -0,0 +1,73 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class ActiveSetEngineTest {
+
+  /**
+   * After the first generation (which looks at every cell), a blinker keeps
+   * only the cells around the ones that flip busy, no matter how big the
+   * board is.
+   */
+  @Test
+  void testWorkFollowsActivity() throws IOException {
+    final int generations = 10;
+    final int maxEvaluated = 25;
+    ActiveSetEngine engine = new ActiveSetEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Blinker/1"));
+    Board board = universe.getBoard();
+    engine.load(board);
+    assertTrue(engine.step());
+    assertEquals(board.getWidth() * board.getHeight(),
+        engine.getEvaluatedCount());
+    for (int i = 0; i < generations; i++) {
+      assertTrue(engine.step());
+      assertTrue(engine.getEvaluatedCount() <= maxEvaluated);
+    }
+  }
+
+  @Test
+  void testStillLifeGoesQuiet() throws IOException {
+    ActiveSetEngine engine = new ActiveSetEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Block/1"));
+    engine.load(universe.getBoard());
+    assertFalse(engine.step());
+    assertFalse(engine.step());
+    assertEquals(0, engine.getEvaluatedCount());
+  }
+
+  /**
+   * Loading looks only at the cells edited since the last generation, and
+   * picks them up.
+   */
+  @Test
+  void testLoadComparesOnlyEdits() throws IOException {
+    final int y = 40;
+    ActiveSetEngine engine = new ActiveSetEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Blinker/1"));
+    universe.getTickSystem().tick();
+    universe.getTickSystem().tick();
+    assertEquals(0, engine.getComparedCount());
+
+    for (int x = 40; x <= 42; x++) {
+      universe.toggle(new Point(x, y));
+    }
+    universe.getTickSystem().tick();
+    assertEquals(3, engine.getComparedCount());
+    Board board = universe.getBoard();
+    assertTrue(board.isAlive(41, y - 1));
+    assertTrue(board.isAlive(41, y + 1));
+    assertFalse(board.isAlive(40, y));
+  }
+}
@@ -0,0 +1,140 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Rule;
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveEngineTest {
+
+  static final int SAMPLE = 4;
+
+  /**
+   * A soup goes dense, and the board goes sparse again once the soup is
+   * replaced by a glider. (An empty board would settle into a still life,
+   * which the universe no longer steps.)
+   */
+  @Test
+  void testSwitchesWithActivity() throws IOException {
+    AdaptiveEngine engine = new AdaptiveEngine(
+        new AdaptivePolicy(SAMPLE, 0.02, 0.005));
+    Universe universe = new Universe(EngineTest.BLOCKS, engine);
+    assertFalse(engine.isDense());
+    Board board = universe.getBoard();
+    Random random = new Random(10);
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        board.getResident(x, y).setAlive(random.nextInt(3) == 0);
+      }
+    }
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertTrue(engine.isDense());
+    assertTrue(engine.getActivity() > 0.02);
+    assertTrue(engine.getPopulationDensity() > 0);
+
+    universe.clear();
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertFalse(engine.isDense());
+    assertEquals(5.0 / (board.getWidth() * board.getHeight()),
+        engine.getPopulationDensity());
+    assertEquals(2, engine.getSwitchCount());
+  }
+
+  /**
+   * Activity between the two thresholds doesn't switch the engine back.
+   */
+  @Test
+  void testHysteresis() throws IOException {
+    final int samples = 10;
+    // A glider changes about 0.1% of the 4096 cells every generation.
+    AdaptiveEngine engine = new AdaptiveEngine(
+        new AdaptivePolicy(SAMPLE, 0.0005, 0.0001));
+    Universe universe = new Universe(EngineTest.BLOCKS, engine);
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    for (int i = 0; i < SAMPLE * samples; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertTrue(engine.isDense());
+    assertEquals(1, engine.getSwitchCount());
+
+    engine.setPolicy(new AdaptivePolicy(SAMPLE, 0.01, 0.005));
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertFalse(engine.isDense());
+  }
+
+  /**
+   * A quiet board stays dense while it's crowded.
+   */
+  @Test
+  void testStaysDenseWhileCrowded() throws IOException {
+    AdaptiveEngine engine = new AdaptiveEngine(
+        new AdaptivePolicy(SAMPLE, 0.0005, 0.0001));
+    Universe universe = new Universe(EngineTest.BLOCKS, engine);
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertTrue(engine.isDense());
+
+    // The glider's 5 cells are about 0.1% of the board.
+    engine.setPolicy(new AdaptivePolicy(SAMPLE, 0.01, 0.005, 0.001));
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertTrue(engine.isDense());
+
+    engine.setPolicy(new AdaptivePolicy(SAMPLE, 0.01, 0.005, 0.002));
+    for (int i = 0; i < SAMPLE; i++) {
+      universe.getTickSystem().tick();
+    }
+    assertFalse(engine.isDense());
+  }
+
+  /**
+   * Rules and boundaries the sparse engine can't run are run dense.
+   */
+  @Test
+  void testDenseWhenSparseCantRun() {
+    AdaptiveEngine engine = new AdaptiveEngine(
+        new AdaptivePolicy(1, 0.5, 0.4));
+    Universe universe = new Universe(EngineTest.BLOCKS, engine);
+    universe.setBoundary(Boundary.TORUS);
+    universe.getTickSystem().tick();
+    // The empty board is quiet enough to go sparse, but it can't.
+    assertTrue(engine.isDense());
+    assertEquals(1, engine.getSwitchCount());
+
+    universe.setBoundary(Boundary.DEAD);
+    universe.getTickSystem().tick();
+    assertFalse(engine.isDense());
+
+    universe.setRule(Rule.parse("B0123/S"));
+    universe.getTickSystem().tick();
+    assertTrue(engine.isDense());
+  }
+
+  @Test
+  void testRejectsOverlappingThresholds() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new AdaptivePolicy(SAMPLE, 0.01, 0.01));
+    assertThrows(IllegalArgumentException.class,
+        () -> new AdaptivePolicy(0, 0.02, 0.01));
+    assertThrows(IllegalArgumentException.class,
+        () -> new AdaptivePolicy(SAMPLE, 0.02, 0.01, 0));
+  }
+}
@@ -0,0 +1,177 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.model.cell.Resident;
+import com.holub.life.system.Universe;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class BoardTest {
+
+  @Test
+  void testNeighborsAreWired() {
+    Board board = new Universe().getBoard();
+    int last = board.getWidth() - 1;
+    board.getResident(1, 1).setAlive(true);
+    board.getResident(last, last).setAlive(true);
+
+    assertEquals(1, board.getResident(0, 0).countLiveNeighbors());
+    assertEquals(1, board.getResident(2, 2).countLiveNeighbors());
+    assertEquals(0, board.getResident(3, 3).countLiveNeighbors());
+    assertEquals(1, board.getResident(last - 1, last).countLiveNeighbors());
+    assertEquals(0, board.getResident(1, 1).countLiveNeighbors());
+  }
+
+  @Test
+  void testPackedNeighborsAreWired() {
+    Board board = new Universe(8, new CellEngine(), true).getBoard();
+    int last = board.getWidth() - 1;
+    assertTrue(board.isPacked());
+    board.getResident(7, 7).setAlive(true);
+    board.getResident(last, last).setAlive(true);
+
+    assertTrue(board.isAlive(7, 7));
+    assertEquals(1, board.getResident(8, 8).countLiveNeighbors());
+    assertEquals(1, board.getResident(6, 8).countLiveNeighbors());
+    assertEquals(0, board.getResident(9, 9).countLiveNeighbors());
+    assertEquals(1, board.getResident(last - 1, last).countLiveNeighbors());
+    assertEquals(0, board.getResident(7, 7).countLiveNeighbors());
+  }
+
+  /**
+   * A packed board takes at least ten times less memory per cell.
+   */
+  @Test
+  void testPackedBoardIsSmaller() {
+    final int blocks = 32;
+    final int ratio = 10;
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    new Universe(blocks, new CellEngine(), false);
+    long objects = threads.getThreadAllocatedBytes(thread) - before;
+    before = threads.getThreadAllocatedBytes(thread);
+    new Universe(blocks, new CellEngine(), true);
+    long packed = threads.getThreadAllocatedBytes(thread) - before;
+    assertTrue(packed * ratio < objects, packed + " vs " + objects);
+  }
+
+  /**
+   * Figuring the next state of every cell allocates nothing.
+   */
+  @Test
+  void testFigureNextStateDoesNotAllocate() {
+    final int passes = 50;
+    final long slack = 4096;
+    Board board = new Universe().getBoard();
+    for (int x = 0; x < board.getWidth(); x++) {
+      board.getResident(x, x).setAlive(true);
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    figureAll(board);
+    long before = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < passes; i++) {
+      figureAll(board);
+    }
+    long allocated = threads.getThreadAllocatedBytes(thread) - before;
+    assertTrue(allocated < slack, allocated + " bytes allocated");
+  }
+
+  private static void figureAll(final Board board) {
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        Resident resident = board.getResident(x, y);
+        resident.figureNextState();
+      }
+    }
+  }
+
+  /**
+   * @param board
+   * @return the live cells' bounding box, found the slow way.
+   */
+  static Rectangle scanLiveBounds(final Board board) {
+    Rectangle bounds = null;
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        if (board.isAlive(x, y)) {
+          Rectangle cell = new Rectangle(x, y, 1, 1);
+          bounds = bounds == null ? cell : bounds.union(cell);
+        }
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * The live box follows a glider across the board, whichever way the
+   * board is stepped or edited.
+   */
+  @Test
+  void testLiveBoundsFollowPattern() {
+    int[][] glider = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    for (Supplier<Engine> factory : EngineTest.boundedEngines()) {
+      for (boolean packed : new boolean[] {false, true}) {
+        Universe universe = new Universe(8, factory.get(), packed);
+        Board board = universe.getBoard();
+        assertNull(board.liveBounds());
+        for (int[] cell : glider) {
+          universe.toggle(new Point(cell[0] + 20, cell[1] + 3));
+        }
+        for (int generation = 0; generation < 40; generation++) {
+          assertEquals(scanLiveBounds(board), board.liveBounds());
+          universe.getTickSystem().tick();
+        }
+        universe.toggle(new Point(2, 60));
+        assertEquals(scanLiveBounds(board), board.liveBounds());
+        // As a click on a cell does, without telling the board.
+        board.getResident(60, 2).setAlive(true);
+        assertEquals(scanLiveBounds(board), board.liveBounds());
+        universe.clear();
+        assertNull(board.liveBounds());
+      }
+    }
+  }
+
+  /**
+   * The hash, kept up to date from the cells that changed, comes back to
+   * the same value whenever the board does.
+   */
+  @Test
+  void testHashFollowsBoard() {
+    for (Supplier<Engine> factory : EngineTest.boundedEngines()) {
+      for (boolean packed : new boolean[] {false, true}) {
+        Universe universe = new Universe(8, factory.get(), packed);
+        Board board = universe.getBoard();
+        assertEquals(0L, board.hash());
+        for (int x = 20; x <= 22; x++) {
+          universe.toggle(new Point(x, 30));
+        }
+        long horizontal = board.hash();
+        assertNotEquals(0L, horizontal);
+        board.getResident(5, 5).setAlive(true);
+        assertNotEquals(horizontal, board.hash());
+        board.getResident(5, 5).setAlive(false);
+        assertEquals(horizontal, board.hash());
+
+        universe.getTickSystem().tick();
+        assertNotEquals(horizontal, board.hash());
+        universe.getTickSystem().tick();
+        assertEquals(horizontal, board.hash());
+        universe.clear();
+        assertEquals(0L, board.hash());
+      }
+    }
+  }
+}
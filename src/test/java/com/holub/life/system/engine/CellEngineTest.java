@@ -0,0 +1,47 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class CellEngineTest {
+
+  /**
+   * Once a board of still lifes has settled, the whole composite is skipped.
+   */
+  @Test
+  void testStillLifeIsSkipped() throws IOException {
+    Universe universe = new Universe(new CellEngine());
+    EngineTest.load(universe, new File("testcases/Block/1"));
+    universe.getTickSystem().tick();
+    universe.getTickSystem().tick();
+    assertTrue(universe.getOutermostCell().isQuiescent());
+  }
+
+  /**
+   * A blinker toggled onto a quiescent board across a block boundary wakes
+   * the blocks on both sides of it.
+   */
+  @Test
+  void testToggleWakesNeighbors() {
+    final int y = 20;
+    Universe universe = new Universe(new CellEngine());
+    universe.getTickSystem().tick();
+    assertTrue(universe.getOutermostCell().isQuiescent());
+    for (int x = 7; x <= 9; x++) {
+      universe.toggle(new Point(x, y));
+    }
+    universe.getTickSystem().tick();
+    Board board = universe.getBoard();
+    assertTrue(board.isAlive(8, y - 1));
+    assertTrue(board.isAlive(8, y));
+    assertTrue(board.isAlive(8, y + 1));
+    assertFalse(board.isAlive(7, y));
+    assertFalse(board.isAlive(9, y));
+  }
+}
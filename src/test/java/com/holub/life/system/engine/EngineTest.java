@@ -0,0 +1,435 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Boundary;
+import com.holub.life.model.Point;
+import com.holub.life.model.Rule;
+import com.holub.life.model.cell.Cell;
+import com.holub.life.system.Universe;
+import com.holub.tools.Storable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every engine must produce exactly the same generations as the original
+ * {@link CellEngine}.
+ */
+public class EngineTest {
+
+  static final String[] PATTERNS = {"Beacon", "Bee_hive", "Blinker", "Block",
+      "Boat", "Glider", "HWSS", "Loaf", "LWSS", "MWSS", "Penta_decathlon",
+      "Pulsar", "Toad", "Tub"};
+
+  static final int SOUP_GENERATIONS = 100;
+
+  static final int EDITS_PER_GENERATION = 5;
+
+  /**
+   * Soups grow no faster than one cell per generation, so a soup this far
+   * from the edges never reaches them in this many generations.
+   */
+  static final int CENTERED_SOUP_GENERATIONS = 20;
+
+  static final int CENTERED_SOUP_SIZE = 16;
+
+  /**
+   * Blocks along each side of the boards the soups run on.
+   */
+  static final int BLOCKS = 8;
+
+  /**
+   * HighLife, Day &amp; Night, Seeds and Life without Death.
+   */
+  static final String[] RULES = {"B36/S23", "B3678/S34678", "B2/S",
+      "B3/S012345678"};
+
+  /**
+   * @return engines for which cells past the edge of the board are dead.
+   */
+  static List<Supplier<Engine>> boundedEngines() {
+    List<Supplier<Engine>> engines = new ArrayList<>();
+    engines.add(CellEngine::new);
+    engines.add(BitBoardEngine::new);
+    engines.add(() -> new ParallelEngine(4));
+    engines.add(ActiveSetEngine::new);
+    engines.add(LookupTableEngine::new);
+    engines.add(ByteGridEngine::new);
+    engines.add(OffHeapEngine::new);
+    engines.add(NeighborCountEngine::new);
+    engines.add(() -> new SparseEngine(true));
+    engines.add(AdaptiveEngine::new);
+    // Switches back and forth often, even in the middle of an advance().
+    engines.add(() -> new AdaptiveEngine(new AdaptivePolicy(1, 0.05, 0.04)));
+    return engines;
+  }
+
+  /**
+   * @return every engine, including those for which the board is a window
+   * onto an unbounded plane.
+   */
+  static List<Supplier<Engine>> engines() {
+    List<Supplier<Engine>> engines = boundedEngines();
+    engines.add(HashLifeEngine::new);
+    engines.add(SparseEngine::new);
+    return engines;
+  }
+
+  static void load(final Universe universe, final File file)
+      throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    Storable memento = universe.getOutermostCell().createMemento();
+    memento.load(in);
+    universe.getOutermostCell().transfer(memento, new Point(0, 0), Cell.LOAD);
+    in.close();
+  }
+
+  @Test
+  void testPatterns() throws IOException {
+    for (String pattern : PATTERNS) {
+      // Normalize the expected generations by loading them onto a board, so
+      // they list their live cells in the same order as a captured memento.
+      int steps = new File("testcases/" + pattern).list().length;
+      Universe reader = new Universe();
+      List<Storable> expected = new ArrayList<>();
+      for (int step = 1; step <= steps; step++) {
+        reader.clear();
+        load(reader, new File("testcases/" + pattern + "/" + step));
+        expected.add(reader.getOutermostCell().createMemento());
+      }
+
+      for (Supplier<Engine> factory : engines()) {
+        Universe universe = new Universe(factory.get());
+        String name = universe.getEngine().getClass().getSimpleName();
+        load(universe, new File("testcases/" + pattern + "/1"));
+        for (int step = 2; step <= steps; step++) {
+          universe.getTickSystem().tick();
+          assertEquals(expected.get(step - 1),
+              universe.getOutermostCell().createMemento(),
+              name + " at " + pattern + " step " + step);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testRandomSoup() {
+    List<Storable> reference = runSoup(new CellEngine(), 0, SOUP_GENERATIONS);
+    for (Supplier<Engine> factory : boundedEngines()) {
+      assertSameGenerations(reference,
+          runSoup(factory.get(), 0, SOUP_GENERATIONS));
+    }
+  }
+
+  /**
+   * Engines that read only the cells edited since they last stored the board
+   * still see every edit made between generations.
+   */
+  @Test
+  void testEditsBetweenTicks() {
+    List<Storable> reference = runEditedSoup(new CellEngine());
+    for (Supplier<Engine> factory : boundedEngines()) {
+      Engine engine = factory.get();
+      assertSameGenerations(reference, runEditedSoup(engine),
+          engine.getClass().getSimpleName());
+    }
+  }
+
+  @Test
+  void testCenteredSoup() {
+    List<Storable> reference = runSoup(new CellEngine(), CENTERED_SOUP_SIZE,
+        CENTERED_SOUP_GENERATIONS);
+    for (Supplier<Engine> factory : engines()) {
+      assertSameGenerations(reference, runSoup(factory.get(),
+          CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS));
+    }
+  }
+
+  @Test
+  void testOtherRules() {
+    for (String rulestring : RULES) {
+      Rule rule = Rule.parse(rulestring);
+      List<Storable> reference = runSoup(new CellEngine(), rule,
+          CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS);
+      for (Supplier<Engine> factory : engines()) {
+        assertSameGenerations(reference, runSoup(factory.get(), rule,
+            CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS));
+      }
+    }
+  }
+
+  /**
+   * B0 rules are fine on a bounded board: the whole board is born.
+   */
+  @Test
+  void testBirthOnZero() {
+    Rule rule = Rule.parse("B0123/S");
+    List<Storable> reference = runSoup(new CellEngine(), rule,
+        CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS);
+    for (Supplier<Engine> factory : boundedEngines()) {
+      Engine engine = factory.get();
+      if (engine.supports(rule)) {
+        assertSameGenerations(reference, runSoup(engine, rule,
+            CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS));
+      }
+    }
+  }
+
+  /**
+   * Every engine runs a packed board exactly like an object board.
+   */
+  @Test
+  void testPackedBoard() {
+    for (String rulestring : new String[] {"B3/S23", "B36/S23"}) {
+      Rule rule = Rule.parse(rulestring);
+      List<Storable> reference = runSoup(new CellEngine(), rule,
+          CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS);
+      for (Supplier<Engine> factory : engines()) {
+        assertSameGenerations(reference, runSoup(factory.get(), rule,
+            CENTERED_SOUP_SIZE, CENTERED_SOUP_GENERATIONS, true));
+      }
+    }
+    List<Storable> reference = runSoup(new CellEngine(), 0, SOUP_GENERATIONS);
+    for (Supplier<Engine> factory : boundedEngines()) {
+      assertSameGenerations(reference, runSoup(factory.get(), Rule.CONWAY, 0,
+          SOUP_GENERATIONS, true));
+    }
+  }
+
+  /**
+   * Every engine that supports a boundary runs a soup that fills the board,
+   * and so keeps hitting the edges, exactly like the {@link CellEngine}.
+   */
+  @Test
+  void testBoundaries() {
+    for (Boundary boundary : new Boundary[] {Boundary.TORUS,
+        Boundary.MIRROR}) {
+      List<Storable> reference = runSoup(new CellEngine(), Rule.CONWAY, 0,
+          SOUP_GENERATIONS, false, boundary);
+      for (Supplier<Engine> factory : engines()) {
+        Engine engine = factory.get();
+        if (engine.supports(boundary)) {
+          assertSameGenerations(reference, runSoup(engine, Rule.CONWAY, 0,
+              SOUP_GENERATIONS, false, boundary),
+              engine.getClass().getSimpleName() + " " + boundary);
+        }
+      }
+    }
+    List<Storable> reference = runSoup(new CellEngine(), Rule.CONWAY, 0,
+        SOUP_GENERATIONS, false, Boundary.TORUS);
+    for (Supplier<Engine> factory : boundedEngines()) {
+      Engine engine = factory.get();
+      if (engine.supports(Boundary.TORUS)) {
+        assertSameGenerations(reference, runSoup(engine, Rule.CONWAY, 0,
+            SOUP_GENERATIONS, true, Boundary.TORUS),
+            engine.getClass().getSimpleName() + " packed");
+      }
+    }
+  }
+
+  /**
+   * A glider crosses every edge of a torus and comes back where it started.
+   */
+  @Test
+  void testGliderOnTorus() {
+    // A glider moves one cell diagonally every four generations.
+    int[][] glider = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    for (Supplier<Engine> factory : boundedEngines()) {
+      Engine engine = factory.get();
+      if (!engine.supports(Boundary.TORUS)) {
+        continue;
+      }
+      Universe universe = new Universe(BLOCKS, engine);
+      String name = universe.getEngine().getClass().getSimpleName();
+      universe.setBoundary(Boundary.TORUS);
+      Board board = universe.getBoard();
+      for (int[] cell : glider) {
+        board.getResident(board.getWidth() - 3 + cell[0], cell[1])
+            .setAlive(true);
+      }
+      Storable start = universe.getOutermostCell().createMemento();
+      for (int generation = 0; generation < 4 * board.getWidth();
+          generation++) {
+        universe.getTickSystem().tick();
+      }
+      assertEquals(start, universe.getOutermostCell().createMemento(), name);
+    }
+  }
+
+  @Test
+  void testUnsupportedBoundary() {
+    Universe universe = new Universe(BLOCKS, new HashLifeEngine());
+    assertEquals(Boundary.OPEN, universe.getBoundary());
+    assertThrows(IllegalArgumentException.class,
+        () -> universe.setBoundary(Boundary.TORUS));
+    assertThrows(IllegalArgumentException.class,
+        () -> universe.setBoundary(Boundary.DEAD));
+    Universe bounded = new Universe(BLOCKS, new BitBoardEngine());
+    assertThrows(IllegalArgumentException.class,
+        () -> bounded.setBoundary(Boundary.OPEN));
+    Universe packed = new Universe(BLOCKS, new CellEngine(), true);
+    assertThrows(IllegalArgumentException.class,
+        () -> packed.setBoundary(Boundary.MIRROR));
+  }
+
+  /**
+   * A clipped sparse engine keeps nothing past the edges of the board: a
+   * glider that runs into the corner leaves only what's on the board.
+   */
+  @Test
+  void testClippedSparseEngine() {
+    int[][] glider = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    SparseEngine engine = new SparseEngine(true);
+    Universe universe = new Universe(BLOCKS, engine);
+    Board board = universe.getBoard();
+    for (int[] cell : glider) {
+      board.getResident(board.getWidth() - 6 + cell[0],
+          board.getHeight() - 6 + cell[1]).setAlive(true);
+    }
+    for (int generation = 0; generation < 32; generation++) {
+      universe.getTickSystem().tick();
+    }
+    int population = 0;
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        population += board.isAlive(x, y) ? 1 : 0;
+      }
+    }
+    assertTrue(population > 0);
+    assertEquals(population, engine.getPopulation());
+    assertEquals(1, engine.getChunkCount());
+  }
+
+  /**
+   * Clearing an open board also clears the cells that had flown off it.
+   */
+  @Test
+  void testClearForgetsCellsOffBoard() {
+    int[][] glider = {{1, 0}, {2, 1}, {0, 2}, {1, 2}, {2, 2}};
+    HashLifeEngine hashLife = new HashLifeEngine();
+    SparseEngine sparse = new SparseEngine();
+    Engine[] engines = {hashLife, sparse};
+    LongSupplier[] populations = {hashLife::getPopulation,
+        sparse::getPopulation};
+    for (int i = 0; i < engines.length; i++) {
+      Universe universe = new Universe(BLOCKS, engines[i]);
+      String name = engines[i].getClass().getSimpleName();
+      Board board = universe.getBoard();
+      for (int[] cell : glider) {
+        board.getResident(board.getWidth() - 3 + cell[0],
+            board.getHeight() - 3 + cell[1]).setAlive(true);
+      }
+      // Long enough for the glider to leave the board entirely.
+      for (int generation = 0; generation < 16; generation++) {
+        universe.getTickSystem().tick();
+      }
+      assertNull(board.liveBounds(), name);
+      assertEquals(glider.length, populations[i].getAsLong(), name);
+
+      universe.clear();
+      universe.getTickSystem().tick();
+      assertEquals(0, populations[i].getAsLong(), name);
+    }
+  }
+
+  static void assertSameGenerations(final List<Storable> expected,
+      final List<Storable> actual) {
+    assertSameGenerations(expected, actual, "");
+  }
+
+  static void assertSameGenerations(final List<Storable> expected,
+      final List<Storable> actual, final String name) {
+    for (int generation = 0; generation < expected.size(); generation++) {
+      assertEquals(expected.get(generation), actual.get(generation),
+          name + " generation " + generation);
+    }
+  }
+
+  /**
+   * @param engine
+   * @param size size of the random square at the center of the board, or 0
+   * to fill the whole board.
+   * @param generations
+   * @return a memento of every generation.
+   */
+  static List<Storable> runSoup(final Engine engine, final int size,
+      final int generations) {
+    return runSoup(engine, Rule.CONWAY, size, generations);
+  }
+
+  static List<Storable> runSoup(final Engine engine, final Rule rule,
+      final int size, final int generations) {
+    return runSoup(engine, rule, size, generations, false);
+  }
+
+  static List<Storable> runSoup(final Engine engine, final Rule rule,
+      final int size, final int generations, final boolean packed) {
+    return runSoup(engine, rule, size, generations, packed, Boundary.DEAD);
+  }
+
+  static List<Storable> runSoup(final Engine engine, final Rule rule,
+      final int size, final int generations, final boolean packed,
+      final Boundary boundary) {
+    Universe universe = new Universe(BLOCKS, engine, packed);
+    universe.setRule(rule);
+    if (boundary != Boundary.DEAD) {
+      // Unbounded engines start out with an open board, which a centered
+      // soup never tells apart from a dead-edged one.
+      universe.setBoundary(boundary);
+    }
+    Board board = universe.getBoard();
+    int width = size == 0 ? board.getWidth() : size;
+    int offset = (board.getWidth() - width) / 2;
+    Random random = new Random(10);
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        board.getResident(offset + x, offset + y)
+            .setAlive(random.nextInt(3) == 0);
+      }
+    }
+
+    List<Storable> mementos = new ArrayList<>();
+    for (int generation = 0; generation < generations; generation++) {
+      universe.getTickSystem().tick();
+      mementos.add(universe.getOutermostCell().createMemento());
+    }
+    return mementos;
+  }
+
+  /**
+   * @param engine
+   * @return a memento of every generation of a random soup, some of whose
+   * cells are toggled after every generation.
+   */
+  static List<Storable> runEditedSoup(final Engine engine) {
+    Universe universe = new Universe(BLOCKS, engine);
+    Board board = universe.getBoard();
+    Random random = new Random(20);
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        board.getResident(x, y).setAlive(random.nextInt(3) == 0);
+      }
+    }
+
+    List<Storable> mementos = new ArrayList<>();
+    for (int generation = 0; generation < SOUP_GENERATIONS; generation++) {
+      universe.getTickSystem().tick();
+      for (int i = 0; i < EDITS_PER_GENERATION; i++) {
+        universe.toggle(new Point(random.nextInt(board.getWidth()),
+            random.nextInt(board.getHeight())));
+      }
+      mementos.add(universe.getOutermostCell().createMemento());
+    }
+    return mementos;
+  }
+}
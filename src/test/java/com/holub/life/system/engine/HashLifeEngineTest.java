@@ -0,0 +1,85 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class HashLifeEngineTest {
+
+  /**
+   * Advancing 2^k generations in one call must give the same board as
+   * advancing one generation 2^k times.
+   */
+  @Test
+  void testStepPowerOfTwo() throws IOException {
+    final int log = 5;
+    HashLifeEngine single = new HashLifeEngine();
+    Universe universe = new Universe(single);
+    EngineTest.load(universe, new File("testcases/Penta_decathlon/1"));
+    single.load(universe.getBoard());
+    for (int i = 0; i < (1 << log); i++) {
+      single.step();
+    }
+
+    HashLifeEngine jump = new HashLifeEngine();
+    jump.load(universe.getBoard());
+    jump.stepPowerOfTwo(log);
+
+    single.store(universe.getBoard());
+    String expected = universe.getOutermostCell().createMemento().toString();
+    jump.store(universe.getBoard());
+    assertEquals(expected,
+        universe.getOutermostCell().createMemento().toString());
+  }
+
+  /**
+   * A glider leaves the board but keeps flying: after 2^20 generations it
+   * has moved 2^18 cells and still has five live cells.
+   */
+  @Test
+  void testGliderLeavesBoard() throws IOException {
+    HashLifeEngine engine = new HashLifeEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    engine.load(universe.getBoard());
+    engine.stepPowerOfTwo(20);
+    assertEquals(5, engine.getPopulation());
+  }
+
+  /**
+   * Advancing a universe many generations at once gives the same board as
+   * ticking it that many times.
+   */
+  @Test
+  void testAdvanceMatchesTicks() throws IOException {
+    final int generations = 77;
+    Universe ticked = new Universe(new HashLifeEngine());
+    Universe advanced = new Universe(new HashLifeEngine());
+    EngineTest.load(ticked, new File("testcases/Pulsar/1"));
+    EngineTest.load(advanced, new File("testcases/Pulsar/1"));
+    for (int i = 0; i < generations; i++) {
+      ticked.getTickSystem().tick();
+    }
+    advanced.advance(generations);
+    assertEquals(ticked.getOutermostCell().createMemento(),
+        advanced.getOutermostCell().createMemento());
+  }
+
+  /**
+   * Advancing goes through the engine's jumps: a trillion generations of a
+   * glider take no time.
+   */
+  @Test
+  void testAdvanceJumps() throws IOException {
+    final long generations = 1L << 40;
+    HashLifeEngine engine = new HashLifeEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    universe.advance(generations);
+    assertEquals(generations, universe.getGeneration());
+    assertEquals(5, engine.getPopulation());
+  }
+}
@@ -0,0 +1,73 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class NeighborCountEngineTest {
+
+  /**
+   * After the first generation, a blinker only has the cells that flip and
+   * their neighbors evaluated.
+   */
+  @Test
+  void testWorkFollowsChanges() throws IOException {
+    final int generations = 10;
+    final int maxEvaluated = 25;
+    NeighborCountEngine engine = new NeighborCountEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Blinker/1"));
+    Board board = universe.getBoard();
+    engine.load(board);
+    assertTrue(engine.step());
+    for (int i = 0; i < generations; i++) {
+      assertTrue(engine.step());
+      assertTrue(engine.getEvaluatedCount() <= maxEvaluated);
+    }
+  }
+
+  /**
+   * Edits made on the board between generations are picked up.
+   */
+  @Test
+  void testPicksUpEdits() throws IOException {
+    NeighborCountEngine engine = new NeighborCountEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Block/1"));
+    universe.getTickSystem().tick();
+    engine.step();
+    assertEquals(0, engine.getEvaluatedCount());
+    universe.clear();
+    universe.getTickSystem().tick();
+    assertFalse(engine.step());
+  }
+
+  /**
+   * Loading compares only the cells edited since the last generation with
+   * the board, so an unedited tick costs nothing but the changes.
+   */
+  @Test
+  void testLoadComparesOnlyEdits() throws IOException {
+    final int y = 40;
+    NeighborCountEngine engine = new NeighborCountEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Blinker/1"));
+    universe.getTickSystem().tick();
+    universe.getTickSystem().tick();
+    assertEquals(0, engine.getComparedCount());
+
+    for (int x = 40; x <= 42; x++) {
+      universe.toggle(new Point(x, y));
+    }
+    universe.getTickSystem().tick();
+    assertEquals(3, engine.getComparedCount());
+    assertEquals(6, engine.getPopulation());
+    assertTrue(universe.getBoard().isAlive(41, y - 1));
+  }
+}
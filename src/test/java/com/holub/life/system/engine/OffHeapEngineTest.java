@@ -0,0 +1,79 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Point;
+import com.holub.life.model.cell.Cell;
+import com.holub.life.model.cell.Neighborhood;
+import com.holub.tools.Storable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import org.junit.jupiter.api.Test;
+
+class OffHeapEngineTest {
+
+  /**
+   * A board wider than a Universe, with a glider crossing a word boundary,
+   * round-trips through a memento.
+   */
+  @Test
+  void testStandaloneGlider() throws IOException {
+    final int size = 4096;
+    final int generations = 4;
+    OffHeapEngine engine = new OffHeapEngine();
+    engine.resize(size, size);
+    Point corner = new Point(-60, -2000);
+    engine.transfer(read("testcases/Glider/1"), corner, Cell.LOAD);
+    for (int i = 0; i < generations; i++) {
+      assertTrue(engine.step());
+    }
+
+    Storable expected = read("testcases/Glider/1");
+    Storable actual = Neighborhood.createPacked().createMemento();
+    engine.transfer(actual, new Point(-61, -2001), Cell.STORE);
+    assertEquals(new HashSet<>(((Cell.Memento) expected).getLiveCells()),
+        new HashSet<>(((Cell.Memento) actual).getLiveCells()));
+  }
+
+  @Test
+  void testMappedFile() throws IOException {
+    File file = File.createTempFile("life", ".bits");
+    file.deleteOnExit();
+    OffHeapEngine engine = new OffHeapEngine(file);
+    engine.resize(100, 100);
+    engine.setAlive(50, 49, true);
+    engine.setAlive(50, 50, true);
+    engine.setAlive(50, 51, true);
+    assertTrue(engine.step());
+    assertTrue(engine.isAlive(49, 50));
+    assertTrue(engine.isAlive(51, 50));
+    assertFalse(engine.isAlive(50, 49));
+    assertEquals(2L * 2 * 100 * Long.BYTES, file.length());
+  }
+
+  /**
+   * A mapped engine run through a universe, which loads it on every tick,
+   * keeps its mappings and still computes the same generations.
+   */
+  @Test
+  void testMappedFileAcrossTicks() throws IOException {
+    File file = File.createTempFile("life", ".bits");
+    file.deleteOnExit();
+    EngineTest.assertSameGenerations(
+        EngineTest.runSoup(new CellEngine(), 0, EngineTest.SOUP_GENERATIONS),
+        EngineTest.runSoup(new OffHeapEngine(file), 0,
+            EngineTest.SOUP_GENERATIONS));
+  }
+
+  private static Storable read(final String name) throws IOException {
+    Storable memento = Neighborhood.createPacked().createMemento();
+    try (FileInputStream in = new FileInputStream(name)) {
+      memento.load(in);
+    }
+    return memento;
+  }
+}
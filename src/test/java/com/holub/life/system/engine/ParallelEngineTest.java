@@ -0,0 +1,63 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.holub.life.system.Universe;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ParallelEngineTest {
+
+  /**
+   * More threads than blocks in a row, so that adjacent blocks are figured
+   * at the same time as often as the scheduler allows.
+   */
+  static final int THREADS = 16;
+
+  static final int SOUPS = 24;
+
+  static final int GENERATIONS = 60;
+
+  /**
+   * @param universe
+   * @param seed
+   */
+  static void scatter(final Universe universe, final long seed) {
+    Board board = universe.getBoard();
+    Random random = new Random(seed);
+    for (int y = 0; y < board.getHeight(); y++) {
+      for (int x = 0; x < board.getWidth(); x++) {
+        // Sparse, so that many blocks are empty and every step looks at
+        // which of their neighbors are.
+        board.getResident(x, y).setAlive(random.nextInt(12) == 0);
+      }
+    }
+  }
+
+  /**
+   * Many threads figuring adjacent blocks at once still give exactly the
+   * serial engine's generations, on soups loaded behind the blocks' backs.
+   */
+  @Test
+  void testMatchesSerialUnderContention() {
+    for (boolean packed : new boolean[] {false, true}) {
+      for (int seed = 0; seed < SOUPS; seed++) {
+        Universe serial = new Universe(EngineTest.BLOCKS, new CellEngine(),
+            packed);
+        try (ParallelEngine engine = new ParallelEngine(THREADS)) {
+          Universe parallel = new Universe(EngineTest.BLOCKS, engine, packed);
+          scatter(serial, seed);
+          scatter(parallel, seed);
+          for (int generation = 0; generation < GENERATIONS; generation++) {
+            serial.getTickSystem().tick();
+            parallel.getTickSystem().tick();
+            assertEquals(serial.getOutermostCell().createMemento(),
+                parallel.getOutermostCell().createMemento(),
+                "seed " + seed + (packed ? " packed" : "") + " generation "
+                    + generation);
+          }
+        }
+      }
+    }
+  }
+}
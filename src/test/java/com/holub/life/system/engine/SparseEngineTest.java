@@ -0,0 +1,49 @@
+package com.holub.life.system.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.holub.life.model.Rule;
+import com.holub.life.system.Universe;
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+class SparseEngineTest {
+
+  /**
+   * A glider that has flown far off the board needs no more chunks than
+   * the few it currently touches.
+   */
+  @Test
+  void testMemoryFollowsPopulation() throws IOException {
+    final int generations = 4000;
+    final int maxChunks = 4;
+    SparseEngine engine = new SparseEngine();
+    Universe universe = new Universe(engine);
+    EngineTest.load(universe, new File("testcases/Glider/1"));
+    engine.load(universe.getBoard());
+    for (int i = 0; i < generations; i++) {
+      engine.step();
+    }
+    assertEquals(5, engine.getPopulation());
+    assertTrue(engine.getChunkCount() <= maxChunks);
+  }
+
+  @Test
+  void testEmptyUniverseHasNoChunks() {
+    SparseEngine engine = new SparseEngine();
+    Universe universe = new Universe(engine);
+    engine.load(universe.getBoard());
+    engine.step();
+    assertEquals(0, engine.getChunkCount());
+  }
+
+  @Test
+  void testRejectsBirthOnZero() {
+    Universe universe = new Universe(new SparseEngine());
+    assertThrows(IllegalArgumentException.class,
+        () -> universe.setRule(Rule.parse("B0/S8")));
+  }
+}